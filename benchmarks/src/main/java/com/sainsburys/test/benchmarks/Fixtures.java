@@ -0,0 +1,91 @@
+package com.sainsburys.test.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sainsburys.test.fetch.FetchedPage;
+import com.sainsburys.test.fetch.PageFetcher;
+
+/**
+ * This class will give the benchmarks the recorded html of a category page and its product detail pages, so nothing
+ * they measure depends on the network. The pages are held under the fixtures folder of the benchmark resources.
+ */
+public final class Fixtures {
+
+    /**
+     * The URL the recorded category page is scraped from. Its product links are relative, so they resolve to the
+     * detail pages recorded alongside it.
+     */
+    public static final String CATEGORY_URL = "http://fixtures.invalid/cat/berries.html";
+
+    public static final String CATEGORY_PAGE = "berries.html";
+
+    public static final String DETAIL_PAGE = "strawberries.html";
+
+    private static final String[] PAGES = { CATEGORY_PAGE, "strawberries.html", "blueberries.html",
+            "raspberries.html", "cherries.html", "mixed.html", "currants.html" };
+
+    private static final Map<String, byte[]> RECORDED_PAGES = new HashMap<>();
+
+    static {
+        for (String page : PAGES) {
+            RECORDED_PAGES.put(page, readBytes(page));
+        }
+    }
+
+    private Fixtures() {
+    }
+
+    /**
+     * Gets the recorded html of a page.
+     *
+     * @param page
+     *            The file name of the page, such as "berries.html"
+     * @return The html of the page
+     */
+    public static String html(String page) {
+        byte[] bytes = RECORDED_PAGES.get(page);
+        if (null == bytes) {
+            throw new IllegalArgumentException("There is no recorded page called " + page);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a fetcher that serves the recorded pages from memory, looking each one up by the last part of its URL.
+     *
+     * @return The fetcher
+     */
+    public static PageFetcher fetcher() {
+        return new PageFetcher() {
+            @Override
+            public FetchedPage fetch(URL url) throws IOException {
+                String path = url.getPath();
+                byte[] bytes = RECORDED_PAGES.get(path.substring(path.lastIndexOf('/') + 1));
+                if (null == bytes) {
+                    throw new FileNotFoundException("There is no recorded page for " + url);
+                }
+                return new FetchedPage(url, new ByteArrayInputStream(bytes), "UTF-8");
+            }
+        };
+    }
+
+    private static byte[] readBytes(String page) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + page)) {
+            if (null == in) {
+                throw new IllegalStateException("The recorded page " + page + " is missing from the benchmarks");
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
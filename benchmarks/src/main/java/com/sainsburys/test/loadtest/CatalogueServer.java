@@ -0,0 +1,260 @@
+package com.sainsburys.test.loadtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class will serve a made up catalogue over HTTP on the loopback address, for load testing the scraper without
+ * the real site. It serves a category page listing every product, and a detail page for each product, using the same
+ * markup as the real site: a <code>div.product</code> with a link to its detail page and a
+ * <code>p.pricePerUnit</code>, and detail pages with a Description <code>h3</code> and a <code>nutritionTable</code>.
+ * <p>
+ * The products are generated from their number, so the same catalogue is served every time. Every fifth product has no
+ * nutrition table, so isn't a food product. Each page is padded out to the size given, and each response can be held
+ * back by a fixed latency plus a random jitter to stand in for a real network.
+ */
+public class CatalogueServer implements Closeable {
+
+    /**
+     * The path of the category page listing every product.
+     */
+    public static final String CATEGORY_PATH = "/cat/catalogue.html";
+
+    private static final String PRODUCT_PATH = "/shop/";
+
+    private static final String PADDING = "<p>padding</p>";
+
+    private final int productCount;
+
+    private final int pageBytes;
+
+    private final long latencyMillis;
+
+    private final long jitterMillis;
+
+    private final LongAdder pagesServed = new LongAdder();
+
+    // The category page never changes, so is only generated once
+    private byte[] categoryPage;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * Creates a server for a catalogue of the size given, which isn't listening until started.
+     *
+     * @param productCount
+     *            The number of products listed on the category page
+     * @param pageBytes
+     *            The size each detail page is padded out to, which the category page is also padded out to if it is
+     *            smaller
+     * @param latencyMillis
+     *            The time each response is held back for before it is sent
+     * @param jitterMillis
+     *            The most extra time, picked at random for each response, that it is held back for on top of the
+     *            latency
+     */
+    public CatalogueServer(int productCount, int pageBytes, long latencyMillis, long jitterMillis) {
+        if (productCount < 0 || pageBytes < 0 || latencyMillis < 0 || jitterMillis < 0) {
+            throw new IllegalArgumentException("The size of the catalogue and its latency can't be negative");
+        }
+        this.productCount = productCount;
+        this.pageBytes = pageBytes;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * Starts listening on a free port of the loopback address. Each request is handled on its own virtual thread, so
+     * requests being held back don't hold up any others.
+     *
+     * @throws IOException
+     *             If the server couldn't be started
+     */
+    public void start() throws IOException {
+        if (null != server) {
+            throw new IllegalStateException("The server has already been started");
+        }
+        categoryPage = pad(createCategoryPage()).getBytes(StandardCharsets.UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext(CATEGORY_PATH, this::serveCategoryPage);
+        server.createContext(PRODUCT_PATH, this::serveProductPage);
+        server.start();
+    }
+
+    /**
+     * Gets the URL of the category page, for the scraper to be pointed at.
+     *
+     * @return The URL of the category page
+     */
+    public String getCategoryUrl() {
+        if (null == server) {
+            throw new IllegalStateException("The server hasn't been started");
+        }
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + CATEGORY_PATH;
+    }
+
+    public int getProductCount() {
+        return productCount;
+    }
+
+    /**
+     * Gets the number of pages served successfully since the server was started.
+     *
+     * @return The number of pages served
+     */
+    public long getPagesServed() {
+        return pagesServed.sum();
+    }
+
+    /**
+     * Stops the server straight away, dropping any requests still being handled.
+     */
+    @Override
+    public void close() {
+        if (null != server) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private void serveCategoryPage(HttpExchange exchange) throws IOException {
+        if (!CATEGORY_PATH.equals(exchange.getRequestURI().getPath())) {
+            sendNotFound(exchange);
+            return;
+        }
+        send(exchange, categoryPage);
+    }
+
+    private void serveProductPage(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        int index = -1;
+        if (path.startsWith(PRODUCT_PATH + "product-") && path.endsWith(".html")) {
+            try {
+                index = Integer.parseInt(path.substring(PRODUCT_PATH.length() + "product-".length(),
+                        path.length() - ".html".length()));
+            } catch (NumberFormatException e) {
+                // Not one of the products, so not found below
+            }
+        }
+        if (index < 0 || index >= productCount) {
+            sendNotFound(exchange);
+            return;
+        }
+        send(exchange, pad(createProductPage(index)).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void send(HttpExchange exchange, byte[] page) throws IOException {
+        try (exchange) {
+            holdBack();
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, page.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(page);
+            }
+            pagesServed.increment();
+        }
+    }
+
+    private void sendNotFound(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.sendResponseHeaders(404, -1);
+        }
+    }
+
+    private void holdBack() throws IOException {
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while holding back the response", e);
+            }
+        }
+    }
+
+    private String createCategoryPage() {
+        StringBuilder html = new StringBuilder(productCount * 700 + 200);
+        html.append("<html><head><title>Catalogue</title></head><body><div id=\"main\">")
+                .append("<ul class=\"productLister gridView\">");
+        for (int i = 0; i < productCount; i++) {
+            String price = formatPounds(getPricePence(i));
+            html.append("<li class=\"gridItem\"><div class=\"product \"><div class=\"productInner\">")
+                    .append("<div class=\"productInfoWrapper\"><div class=\"productInfo\"><h3><a href=\"../shop/product-")
+                    .append(i).append(".html\">").append(getName(i)).append("<img src=\"x.jpg\" alt=\"\" /></a></h3>")
+                    .append("</div></div><div class=\"addToTrolleytabBox\"><div class=\"pricingAndTrolleyOptions\">")
+                    .append("<div class=\"pricing\"><p class=\"pricePerUnit\">&pound;").append(price)
+                    .append("<abbr title=\"per\">/</abbr><abbr title=\"unit\"><span class=\"pricePerUnitUnit\">unit")
+                    .append("</span></abbr></p><p class=\"pricePerMeasure\">&pound;").append(price)
+                    .append("<abbr title=\"per\">/</abbr><abbr title=\"kilogram\">")
+                    .append("<span class=\"pricePerMeasureMeasure\">kg</span></abbr></p></div></div></div>")
+                    .append("</div></div></li>");
+        }
+        return html.append("</ul></div>").toString();
+    }
+
+    private String createProductPage(int index) {
+        StringBuilder html = new StringBuilder(1024);
+        html.append("<html><head><title>").append(getName(index)).append("</title></head><body>")
+                .append("<div class=\"section productContent\"><h3 class=\"productDataItemHeader\">Description</h3>")
+                .append("<div class=\"productText\"><p>by Sainsbury&#x27;s product ").append(index % 50)
+                .append("</p></div>");
+        if (0 != index % 5) {
+            html.append("<h3 class=\"productDataItemHeader\">Nutrition</h3><div class=\"productText\">")
+                    .append("<table class=\"nutritionTable\"><thead><tr class=\"tableTitleRow\">")
+                    .append("<th scope=\"col\">Typical Values</th><th scope=\"col\">Per 100g&nbsp;</th></tr></thead>")
+                    .append("<tbody><tr class=\"tableRow1\"><th scope=\"row\" class=\"rowHeader\" rowspan=\"2\">")
+                    .append("Energy</th><td class=\"tableRow1\">").append(getCalories(index) * 4)
+                    .append("kJ</td></tr><tr class=\"tableRow1\"><td class=\"tableRow1\">").append(getCalories(index))
+                    .append("kcal</td></tr><tr class=\"tableRow0\"><th scope=\"row\" class=\"rowHeader\">Fat</th>")
+                    .append("<td class=\"tableRow0\">&lt;0.5g</td></tr></tbody></table></div>");
+        }
+        return html.append("</div>").toString();
+    }
+
+    /**
+     * Pads a page out to the page size with a footer after its content, then ends it.
+     */
+    private String pad(String page) {
+        StringBuilder html = new StringBuilder(Math.max(page.length(), pageBytes) + 64).append(page)
+                .append("<div class=\"footer\">");
+        while (html.length() + PADDING.length() + "</div></body></html>".length() <= pageBytes) {
+            html.append(PADDING);
+        }
+        return html.append("</div></body></html>").toString();
+    }
+
+    private static String getName(int index) {
+        return "Sainsbury&#x27;s Product " + index;
+    }
+
+    private static long getPricePence(int index) {
+        return 50 + (index * 37L) % 1000;
+    }
+
+    private static int getCalories(int index) {
+        return 10 + index % 400;
+    }
+
+    private static String formatPounds(long pence) {
+        return pence / 100 + "." + (pence % 100 < 10 ? "0" : "") + pence % 100;
+    }
+
+}
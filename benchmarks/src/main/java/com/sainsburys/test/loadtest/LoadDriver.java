@@ -0,0 +1,296 @@
+package com.sainsburys.test.loadtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sainsburys.test.WebScraperApp;
+import com.sainsburys.test.metrics.PrometheusExporter;
+import com.sainsburys.test.metrics.Stage;
+import com.sainsburys.test.metrics.StageMetrics;
+import com.sainsburys.test.transform.OutputFormat;
+
+/**
+ * This class will load test the whole application, running {@link WebScraperApp#scrapeUrl(PrintStream)} over and over
+ * against a {@link CatalogueServer}, or against a URL given, with the output thrown away. It reports the throughput
+ * and the percentiles of the time taken by each scrape once every scrape has finished.
+ * <p>
+ * The options are given as pairs of a name and a value:
+ * <ul>
+ * <li>--products - the number of products in the catalogue served, 1000 by default</li>
+ * <li>--page-bytes - the size each page served is padded out to, 8192 by default</li>
+ * <li>--latency - the time in milliseconds each page served is held back for, 0 by default</li>
+ * <li>--jitter - the most extra time in milliseconds, picked at random, each page is held back for, 0 by default</li>
+ * <li>--scrapes - the number of scrapes timed, 20 by default</li>
+ * <li>--warmup - the number of scrapes run before any are timed, 2 by default</li>
+ * <li>--concurrency - the number of scrapes run at the same time, 1 by default</li>
+ * <li>--format - the output format written, json, ndjson or binary, json by default</li>
+ * <li>--url - a category page to scrape instead of the catalogue served</li>
+ * <li>--metrics-file - a file to write the metrics of each stage to in the Prometheus text format</li>
+ * </ul>
+ * The single option --serve only starts the catalogue server, printing its URL, so it can be scraped by hand.
+ * <p>
+ * The time taken by each stage of the scrapes, including the warm up, is reported after the results.
+ */
+public final class LoadDriver {
+
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    private int productCount = 1000;
+
+    private int pageBytes = 8192;
+
+    private long latencyMillis;
+
+    private long jitterMillis;
+
+    private int scrapes = 20;
+
+    private int warmupScrapes = 2;
+
+    private int concurrency = 1;
+
+    private OutputFormat outputFormat = OutputFormat.JSON;
+
+    private String url;
+
+    private Path metricsFile;
+
+    private boolean serveOnly;
+
+    private LoadDriver() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // For the same reason as WebScraperApp.main, before the catalogue server is created
+        if (null == System.getProperty("sun.net.httpserver.nodelay")) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
+        LoadDriver driver = new LoadDriver();
+        driver.parse(args);
+
+        if (null != driver.url) {
+            driver.run(driver.url, null).print(System.out);
+            driver.reportStages(System.out);
+            return;
+        }
+
+        try (CatalogueServer server = new CatalogueServer(driver.productCount, driver.pageBytes,
+                driver.latencyMillis, driver.jitterMillis)) {
+            server.start();
+            if (driver.serveOnly) {
+                System.out.println("Serving " + server.getProductCount() + " products at " + server.getCategoryUrl());
+                Thread.currentThread().join();
+            }
+            driver.run(server.getCategoryUrl(), server).print(System.out);
+            driver.reportStages(System.out);
+        }
+    }
+
+    /**
+     * Prints how long each stage of the scrapes took, writing the metrics to the metrics file too if one was given.
+     */
+    private void reportStages(PrintStream out) throws IOException {
+        out.println();
+        out.printf(Locale.ROOT, "%-18s %10s %8s %10s %10s %10s %12s%n", "Stage (ms)", "runs", "errors", "mean", "p50",
+                "p99", "KB");
+        for (Stage stage : Stage.values()) {
+            StageMetrics metrics = stage.getMetrics();
+            out.printf(Locale.ROOT, "%-18s %10d %8d %10.3f %10.3f %10.3f %12.1f%n", metrics.getName(),
+                    metrics.getCount(), metrics.getErrorCount(), metrics.getMeanMillis(), metrics.getMedianMillis(),
+                    metrics.get99thPercentileMillis(), metrics.getBytes() / 1024.0);
+        }
+
+        if (null != metricsFile) {
+            new PrometheusExporter().writeTo(metricsFile);
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if ("--serve".equals(args[i])) {
+                serveOnly = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("The option " + args[i] + " needs a value");
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+            case "--products":
+                productCount = Integer.parseInt(value);
+                break;
+            case "--page-bytes":
+                pageBytes = Integer.parseInt(value);
+                break;
+            case "--latency":
+                latencyMillis = Long.parseLong(value);
+                break;
+            case "--jitter":
+                jitterMillis = Long.parseLong(value);
+                break;
+            case "--scrapes":
+                scrapes = Integer.parseInt(value);
+                break;
+            case "--warmup":
+                warmupScrapes = Integer.parseInt(value);
+                break;
+            case "--concurrency":
+                concurrency = Integer.parseInt(value);
+                break;
+            case "--format":
+                outputFormat = OutputFormat.valueOf(value.toUpperCase(Locale.ROOT));
+                break;
+            case "--url":
+                url = value;
+                break;
+            case "--metrics-file":
+                metricsFile = Paths.get(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+            }
+        }
+        if (scrapes < 1 || warmupScrapes < 0 || concurrency < 1) {
+            throw new IllegalArgumentException("At least one scrape must be timed, with at least one at a time");
+        }
+    }
+
+    /**
+     * Runs the warm up scrapes one after another, then the timed scrapes spread over the number of threads given by
+     * the concurrency.
+     *
+     * @param categoryUrl
+     *            The URL of the category page to scrape
+     * @param server
+     *            The server being scraped, or null if it isn't one started by the driver
+     * @return The results of the timed scrapes
+     */
+    private Results run(String categoryUrl, CatalogueServer server) throws InterruptedException {
+        WebScraperApp app = new WebScraperApp(categoryUrl, outputFormat);
+        PrintStream discarded = new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+
+        for (int i = 0; i < warmupScrapes; i++) {
+            try {
+                app.scrapeUrl(discarded);
+            } catch (IOException e) {
+                throw new IllegalStateException("The warm up scrape failed, so nothing would be measured", e);
+            }
+        }
+
+        long pagesBefore = null != server ? server.getPagesServed() : 0;
+        long[] latencies = new long[scrapes];
+        AtomicInteger nextScrape = new AtomicInteger();
+        LongAdder failures = new LongAdder();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long started = System.nanoTime();
+        try {
+            List<Future<?>> running = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                running.add(workers.submit(() -> {
+                    for (int scrape = nextScrape.getAndIncrement(); scrape < scrapes; scrape = nextScrape
+                            .getAndIncrement()) {
+                        long scrapeStarted = System.nanoTime();
+                        try {
+                            app.scrapeUrl(discarded);
+                        } catch (IOException e) {
+                            failures.increment();
+                        }
+                        latencies[scrape] = System.nanoTime() - scrapeStarted;
+                    }
+                }));
+            }
+            for (Future<?> worker : running) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A scrape failed unexpectedly", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - started;
+
+        Arrays.sort(latencies);
+        return new Results(latencies, elapsed, failures.sum(), null != server ? server.getProductCount() : -1,
+                null != server ? server.getPagesServed() - pagesBefore : -1);
+    }
+
+    /**
+     * The results of the timed scrapes.
+     */
+    private final class Results {
+
+        private final long[] sortedLatencies;
+
+        private final long elapsedNanos;
+
+        private final long failures;
+
+        // The products in each scrape and the pages served, which are only known if the driver started the server
+        private final int productsPerScrape;
+
+        private final long pagesServed;
+
+        private Results(long[] sortedLatencies, long elapsedNanos, long failures, int productsPerScrape,
+                long pagesServed) {
+            this.sortedLatencies = sortedLatencies;
+            this.elapsedNanos = elapsedNanos;
+            this.failures = failures;
+            this.productsPerScrape = productsPerScrape;
+            this.pagesServed = pagesServed;
+        }
+
+        private void print(PrintStream out) {
+            double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+            out.printf(Locale.ROOT, "Scrapes:      %d timed, %d at a time, %d failed, as %s%n", sortedLatencies.length,
+                    concurrency, failures, outputFormat.name().toLowerCase(Locale.ROOT));
+            out.printf(Locale.ROOT, "Elapsed:      %.3f s%n", seconds);
+            out.printf(Locale.ROOT, "Throughput:   %.2f scrapes/s", sortedLatencies.length / seconds);
+            if (productsPerScrape >= 0) {
+                out.printf(Locale.ROOT, ", %.1f products/s, %.1f pages/s",
+                        (double) productsPerScrape * sortedLatencies.length / seconds, pagesServed / seconds);
+            }
+            out.println();
+
+            out.print("Latency (ms):");
+            for (double percentile : PERCENTILES) {
+                out.printf(Locale.ROOT, " p%s %.2f", formatPercentile(percentile), toMillis(percentile(percentile)));
+            }
+            out.printf(Locale.ROOT, " max %.2f%n", toMillis(sortedLatencies[sortedLatencies.length - 1]));
+        }
+
+        /**
+         * Gets a percentile of the latencies by the nearest rank.
+         */
+        private long percentile(double percentile) {
+            int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+            return sortedLatencies[Math.max(rank, 1) - 1];
+        }
+
+        private String formatPercentile(double percentile) {
+            return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+        }
+
+        private double toMillis(long nanos) {
+            return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+    }
+
+}
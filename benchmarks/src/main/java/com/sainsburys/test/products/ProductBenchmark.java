@@ -0,0 +1,71 @@
+package com.sainsburys.test.products;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sainsburys.test.scraper.NumericText;
+
+/**
+ * This class will benchmark creating the products from the values scraped for them, including parsing the price and
+ * working out the VAT on it. The values are held in fields rather than as constants so they can't be folded away.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProductBenchmark {
+
+    private String name = "Sainsbury's Strawberries 400g";
+
+    private String description = "by Sainsbury's strawberries";
+
+    private String price = "1.75";
+
+    private String scrapedPrice = "£1.75/unit";
+
+    private long pricePence = 175;
+
+    private int calories = 33;
+
+    @Benchmark
+    public Product newProductFromPrice() {
+        return new Product(name, description, price);
+    }
+
+    @Benchmark
+    public Product newProductFromPence() {
+        return new Product(name, description, pricePence);
+    }
+
+    @Benchmark
+    public FoodProduct newFoodProductFromPrice() {
+        return new FoodProduct(name, description, price, Integer.toString(calories));
+    }
+
+    @Benchmark
+    public FoodProduct newFoodProductFromPence() {
+        return new FoodProduct(name, description, pricePence, calories);
+    }
+
+    @Benchmark
+    public long calculateVat() {
+        return Product.calculateVat(pricePence);
+    }
+
+    @Benchmark
+    public long extractPence() {
+        return NumericText.extractPence(scrapedPrice);
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.sainsburys.test.scraper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sainsburys.test.benchmarks.Fixtures;
+import com.sainsburys.test.products.Product;
+
+/**
+ * This class will benchmark the scraper against the recorded pages, from pulling each value out of an element already
+ * parsed up to scraping the whole category page. It is in the same package as the scraper so the protected methods
+ * that scrape each value can be called directly.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScraperBenchmark {
+
+    private Scraper scraper;
+
+    private Element productElement;
+
+    private Document detailPage;
+
+    private URL detailPageUrl;
+
+    @Setup
+    public void setUp() throws IOException {
+        scraper = new Scraper(Fixtures.CATEGORY_URL, Fixtures.fetcher());
+
+        productElement = Jsoup.parse(Fixtures.html(Fixtures.CATEGORY_PAGE), Fixtures.CATEGORY_URL)
+                .select("div.product").first();
+        detailPage = Jsoup.parse(Fixtures.html(Fixtures.DETAIL_PAGE));
+        detailPageUrl = URI.create(Fixtures.CATEGORY_URL).resolve(scraper.getForwardLink(productElement)).toURL();
+    }
+
+    @Benchmark
+    public String getName() {
+        return scraper.getName(productElement);
+    }
+
+    @Benchmark
+    public String getForwardLink() {
+        return scraper.getForwardLink(productElement);
+    }
+
+    @Benchmark
+    public long getPricePence() {
+        return scraper.getPricePence(productElement);
+    }
+
+    @Benchmark
+    public String getDescription() {
+        return scraper.getDescription(detailPage);
+    }
+
+    @Benchmark
+    public int getCalories() {
+        return scraper.getCalories(detailPage);
+    }
+
+    @Benchmark
+    public ProductDetails getProductDetails() throws IOException {
+        return scraper.getProductDetails(detailPageUrl);
+    }
+
+    @Benchmark
+    public List<Product> scrapeWebPage() throws IOException {
+        return scraper.scrapeWebPage();
+    }
+
+}
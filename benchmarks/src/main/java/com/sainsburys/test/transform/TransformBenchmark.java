@@ -0,0 +1,110 @@
+package com.sainsburys.test.transform;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
+
+/**
+ * This class will benchmark turning catalogues of several sizes into output, both as a {@link JSONObject} built in
+ * memory and streamed through each {@link OutputFormat} to an output that throws the bytes away. Every third product
+ * isn't a food product, and the descriptions repeat as they do on the real pages.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransformBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    private int catalogueSize;
+
+    private final TransformToJson transformToJson = new TransformToJson();
+
+    private List<Product> products;
+
+    private ProductBatch batch;
+
+    @Setup
+    public void setUp() {
+        products = new ArrayList<>(catalogueSize);
+        batch = new ProductBatch(catalogueSize);
+        for (int i = 0; i < catalogueSize; i++) {
+            String name = "Sainsbury's Product " + i;
+            String description = "by Sainsbury's " + (i % 50);
+            long pricePence = 50 + (i * 37L) % 1000;
+            Product product = 0 == i % 3 ? new Product(name, description, pricePence)
+                    : new FoodProduct(name, description, pricePence, i % 400);
+            products.add(product);
+            batch.add(product);
+        }
+    }
+
+    @Benchmark
+    public JSONObject createJsonForProducts() {
+        return transformToJson.createJsonForProducts(products);
+    }
+
+    @Benchmark
+    public JSONObject createJsonForProductsInParallel() {
+        return transformToJson.createJsonForProductsInParallel(products);
+    }
+
+    @Benchmark
+    public JSONObject createJsonForBatch() {
+        return transformToJson.createJsonForProducts(batch);
+    }
+
+    @Benchmark
+    public void writeJson() throws IOException {
+        writeProducts(OutputFormat.JSON);
+    }
+
+    @Benchmark
+    public void writeNdjson() throws IOException {
+        writeProducts(OutputFormat.NDJSON);
+    }
+
+    @Benchmark
+    public void writeBinary() throws IOException {
+        writeProducts(OutputFormat.BINARY);
+    }
+
+    @Benchmark
+    public void writeJsonBatch() throws IOException {
+        try (ProductsWriter writer = OutputFormat.JSON.createWriter(OutputStream.nullOutputStream(),
+                StandardCharsets.UTF_8)) {
+            writer.writeProducts(batch);
+        }
+    }
+
+    private void writeProducts(OutputFormat format) throws IOException {
+        try (ProductsWriter writer = format.createWriter(OutputStream.nullOutputStream(), StandardCharsets.UTF_8)) {
+            for (Product product : products) {
+                writer.writeProduct(product);
+            }
+        }
+    }
+
+}
@@ -1,31 +1,257 @@
 package com.sainsburys.test;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import org.json.JSONObject;
-
-import com.sainsburys.test.products.Product;
+import com.sainsburys.test.batch.BatchScraper;
+import com.sainsburys.test.fetch.ConditionalCachingPageFetcher;
+import com.sainsburys.test.fetch.HttpClientPageFetcher;
+import com.sainsburys.test.fetch.PageFetcher;
+import com.sainsburys.test.metrics.JmxExporter;
+import com.sainsburys.test.metrics.PrometheusExporter;
+import com.sainsburys.test.scraper.ProductDetailsCache;
 import com.sainsburys.test.scraper.Scraper;
-import com.sainsburys.test.transform.TransformToJson;
+import com.sainsburys.test.service.ScrapeResultCache;
+import com.sainsburys.test.service.ScrapeService;
+import com.sainsburys.test.transform.OutputFormat;
+import com.sainsburys.test.transform.ProductsWriter;
 
 /**
  * This is the entry point for the Web Scraper application. It can take in urls via command line arguments, or use a
- * dummy url if non are given.
+ * dummy url if non are given. The products are written as a single JSON document, as JSON Lines if the
+ * <code>--ndjson</code> option is given, or in a compact binary format if the <code>--binary</code> option is given.
+ * The metrics of each stage of the scrape are registered with JMX whilst it runs, and are written in the Prometheus
+ * text format to the file given with the <code>--metrics-file</code> option once it has finished, or once the service
+ * has been stopped.
+ * <p>
+ * Given more than one url, or a file of them with the <code>--urls-file</code> option, the category pages are scraped
+ * together by a {@link BatchScraper}, at most the number given by the <code>--max-scrapes</code> option at a time, and
+ * written as one merged output, or as a file for each in the directory given with the <code>--output-dir</code>
+ * option.
+ * <p>
+ * Given the <code>--serve &lt;port&gt;</code> option, the application instead keeps running as a
+ * {@link ScrapeService}, scraping the category pages requested over HTTP, with at most the number of scrapes given by
+ * the <code>--max-scrapes</code> option running at the same time. The <code>--result-ttl &lt;seconds&gt;</code> option
+ * has it send back the products of a category page scraped in that time without scraping it again, and send them back
+ * for <code>--result-stale &lt;seconds&gt;</code> longer whilst they are scraped again in the background. The
+ * details of each product are shared between the scrapes, for up to the number of products given by the
+ * <code>--details-cache-size</code> option, each for the time given by the <code>--details-ttl &lt;seconds&gt;</code>
+ * option.
+ * <p>
+ * Given the <code>--http-cache-dir &lt;dir&gt;</code> option, the pages are fetched through a
+ * {@link ConditionalCachingPageFetcher} keeping them in that directory, so a page that hasn't changed since the last
+ * scrape, or the last run, isn't downloaded again. Each page is read to the end the first time it is fetched so that
+ * it can be cached, rather than the scraper stopping once it has found what it needs.
+ * <p>
+ * Given the <code>--detail-threads &lt;n&gt;</code> option, the product detail pages of a single category page are
+ * fetched that many at a time rather than one after another, the products still being written in the order they are
+ * listed.
  */
 public class WebScraperApp {
 
-    private String webPageUrl = "https://jsainsburyplc.github.io/serverside-test/site/www.sainsburys.co.uk/webapp/wcs/stores/servlet/gb/groceries/berries-cherries-currants6039.html";
+    private static final String DEFAULT_WEB_PAGE_URL = "https://jsainsburyplc.github.io/serverside-test/site/www.sainsburys.co.uk/webapp/wcs/stores/servlet/gb/groceries/berries-cherries-currants6039.html";
+
+    // The most scrapes run at the same time as a service or a batch, unless given with the --max-scrapes option
+    private static final int DEFAULT_MAX_SCRAPES = 4;
+
+    // How long a request to the service waits for a scrape to finish when the most are already running
+    private static final long ADMISSION_TIMEOUT_SECONDS = 5;
+
+    // The most category pages the products are cached for as a service, given the --result-ttl option
+    private static final int RESULT_CACHE_ENTRIES = 1024;
+
+    // The most products whose details are shared between the scrapes of the service, unless given
+    private static final int DEFAULT_DETAILS_CACHE_ENTRIES = 10_000;
+
+    // How long the details of a product are shared between the scrapes of the service, unless given
+    private static final long DEFAULT_DETAILS_TTL_SECONDS = 3600;
+
+    private String webPageUrl = DEFAULT_WEB_PAGE_URL;
+
+    private OutputFormat outputFormat = OutputFormat.JSON;
+
+    // The fetcher to get the pages with, or null for the scraper's own
+    private PageFetcher pageFetcher;
+
+    // The most product detail pages fetched at the same time, one fetching them in the order they are listed
+    private int detailFetchThreads = 1;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 0) {
-            WebScraperApp givenUrlApp = new WebScraperApp(args[0]);
-            givenUrlApp.scrapeUrl();
-        } else {
-            WebScraperApp defaultUrlApp = new WebScraperApp();
-            defaultUrlApp.scrapeUrl();
+        List<String> givenUrls = new ArrayList<>();
+        Path urlsFile = null;
+        Path outputDirectory = null;
+        OutputFormat givenOutputFormat = OutputFormat.JSON;
+        Path metricsFile = null;
+        int servePort = -1;
+        int maxScrapes = DEFAULT_MAX_SCRAPES;
+        long resultTtlSeconds = 0;
+        long resultStaleSeconds = -1;
+        Path httpCacheDirectory = null;
+        int detailsCacheEntries = DEFAULT_DETAILS_CACHE_ENTRIES;
+        long detailsTtlSeconds = DEFAULT_DETAILS_TTL_SECONDS;
+        int detailFetchThreads = 1;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--ndjson".equals(arg)) {
+                givenOutputFormat = OutputFormat.NDJSON;
+            } else if ("--binary".equals(arg)) {
+                givenOutputFormat = OutputFormat.BINARY;
+            } else if ("--metrics-file".equals(arg)) {
+                metricsFile = Paths.get(getValue(args, i++));
+            } else if ("--urls-file".equals(arg)) {
+                urlsFile = Paths.get(getValue(args, i++));
+            } else if ("--output-dir".equals(arg)) {
+                outputDirectory = Paths.get(getValue(args, i++));
+            } else if ("--serve".equals(arg)) {
+                servePort = Integer.parseInt(getValue(args, i++));
+            } else if ("--max-scrapes".equals(arg)) {
+                maxScrapes = Integer.parseInt(getValue(args, i++));
+            } else if ("--result-ttl".equals(arg)) {
+                resultTtlSeconds = Long.parseLong(getValue(args, i++));
+            } else if ("--result-stale".equals(arg)) {
+                resultStaleSeconds = Long.parseLong(getValue(args, i++));
+            } else if ("--details-cache-size".equals(arg)) {
+                detailsCacheEntries = Integer.parseInt(getValue(args, i++));
+            } else if ("--details-ttl".equals(arg)) {
+                detailsTtlSeconds = Long.parseLong(getValue(args, i++));
+            } else if ("--http-cache-dir".equals(arg)) {
+                httpCacheDirectory = Paths.get(getValue(args, i++));
+            } else if ("--detail-threads".equals(arg)) {
+                detailFetchThreads = Integer.parseInt(getValue(args, i++));
+                if (detailFetchThreads < 1) {
+                    throw new IllegalArgumentException("At least one thread must fetch the product detail pages");
+                }
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                givenUrls.add(arg);
+            }
+        }
+        if (null != urlsFile) {
+            givenUrls.addAll(readUrls(urlsFile));
+            if (givenUrls.isEmpty()) {
+                throw new IllegalArgumentException("No URLs were found in " + urlsFile);
+            }
         }
+        if (givenUrls.isEmpty()) {
+            givenUrls.add(DEFAULT_WEB_PAGE_URL);
+        }
+
+        PageFetcher givenPageFetcher = null == httpCacheDirectory ? HttpClientPageFetcher.shared()
+                : new ConditionalCachingPageFetcher(HttpClientPageFetcher.createHttpClient(), httpCacheDirectory);
 
+        JmxExporter.register();
+        if (servePort >= 0) {
+            // The JDK's HTTP server reads this when a server is created, and without it the headers and body of each
+            // response on a kept alive connection are held back by Nagle's algorithm, adding tens of milliseconds to
+            // each. It is JVM wide, so it is only set when serving, and not if it has been given on the command line.
+            if (null == System.getProperty("sun.net.httpserver.nodelay")) {
+                System.setProperty("sun.net.httpserver.nodelay", "true");
+            }
+            // Results are only cached if given a time to live, and are stale for as long again unless told otherwise
+            ScrapeResultCache resultCache = resultTtlSeconds > 0
+                    ? new ScrapeResultCache(RESULT_CACHE_ENTRIES, resultTtlSeconds,
+                            resultStaleSeconds >= 0 ? resultStaleSeconds : resultTtlSeconds, TimeUnit.SECONDS)
+                    : null;
+            ProductDetailsCache detailsCache = new ProductDetailsCache(detailsCacheEntries, detailsTtlSeconds,
+                    TimeUnit.SECONDS);
+            serve(servePort, maxScrapes, resultCache, detailsCache, givenPageFetcher, metricsFile);
+            return;
+        }
+        try {
+            if (givenUrls.size() > 1 || null != outputDirectory) {
+                BatchScraper batch = new BatchScraper(givenUrls, givenOutputFormat, maxScrapes, givenPageFetcher);
+                if (null != outputDirectory) {
+                    batch.scrapeToDirectory(outputDirectory);
+                } else {
+                    batch.scrapeMerged(System.out);
+                }
+            } else {
+                // Without a cache directory the scraper fetches the pages with its own
+                new WebScraperApp(givenUrls.get(0), givenOutputFormat,
+                        null != httpCacheDirectory ? givenPageFetcher : null, detailFetchThreads).scrapeUrl();
+            }
+        } finally {
+            // Written even if the scrape failed, as the metrics show which stage it failed in
+            if (null != metricsFile) {
+                new PrometheusExporter().writeTo(metricsFile);
+            }
+        }
+    }
+
+    /**
+     * Reads the URLs to scrape from a file, one to a line, skipping blank lines and those starting with a #.
+     */
+    private static List<String> readUrls(Path urlsFile) throws IOException {
+        List<String> urls = new ArrayList<>();
+        for (String line : Files.readAllLines(urlsFile, StandardCharsets.UTF_8)) {
+            String url = line.trim();
+            if (!url.isEmpty() && !url.startsWith("#")) {
+                urls.add(url);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Gets the value of the option at the index given, which is the next argument.
+     */
+    private static String getValue(String[] args, int index) {
+        if (index + 1 >= args.length) {
+            throw new IllegalArgumentException("The " + args[index] + " option needs a value");
+        }
+        return args[index + 1];
+    }
+
+    /**
+     * Runs the application as a service, scraping the category pages requested over HTTP until the JVM is stopped.
+     * 
+     * @param port
+     *            The port to listen on, or 0 for any free port
+     * @param maxScrapes
+     *            The most scrapes run at the same time
+     * @param resultCache
+     *            The cache of the products of each scrape, or null to scrape every request
+     * @param detailsCache
+     *            The cache of the details of each product, shared by every scrape
+     * @param pageFetcher
+     *            The fetcher to get the pages with
+     * @param metricsFile
+     *            The file to write the metrics to once the service has been stopped, or null if they aren't written
+     * @throws IOException
+     */
+    private static void serve(int port, int maxScrapes, ScrapeResultCache resultCache,
+            ProductDetailsCache detailsCache, PageFetcher pageFetcher, Path metricsFile) throws IOException {
+        ScrapeService service = new ScrapeService(pageFetcher, port, maxScrapes, ADMISSION_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS, resultCache, detailsCache);
+        service.start();
+        // The service only stops with the JVM, so the metrics are written once the scrapes running have been dropped
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.close();
+            if (null != metricsFile) {
+                try {
+                    new PrometheusExporter().writeTo(metricsFile);
+                } catch (IOException e) {
+                    System.err.println("The metrics couldn't be written to " + metricsFile + ": " + e.getMessage());
+                }
+            }
+        }));
+        System.err.println("Serving scrapes at " + service.getBaseUrl() + ScrapeService.SCRAPE_PATH + "?url=<url>");
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            service.close();
+        }
     }
 
     /**
@@ -46,20 +272,93 @@ public class WebScraperApp {
     }
 
     /**
-     * Will take the URL provide, create a scraper and pull out the relevant information before calling a transformer to
-     * transform the found content to JSON which is printed to the console.
+     * Constructor to create an instance of the application with the URL for the webpage to scrap and the format to
+     * write the products in.
+     * 
+     * @param webPageUrl
+     *            The new URL to scrape
+     * @param outputFormat
+     *            The format to write the products in
+     */
+    public WebScraperApp(String webPageUrl, OutputFormat outputFormat) {
+        this.webPageUrl = webPageUrl;
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * Constructor to create an instance of the application with the URL for the webpage to scrap, the format to write
+     * the products in and the fetcher to get the pages with.
+     * 
+     * @param webPageUrl
+     *            The new URL to scrape
+     * @param outputFormat
+     *            The format to write the products in
+     * @param pageFetcher
+     *            The fetcher to get the pages with, or null for the scraper's own
+     */
+    public WebScraperApp(String webPageUrl, OutputFormat outputFormat, PageFetcher pageFetcher) {
+        this.webPageUrl = webPageUrl;
+        this.outputFormat = outputFormat;
+        this.pageFetcher = pageFetcher;
+    }
+
+    /**
+     * Constructor to create an instance of the application with the URL for the webpage to scrap, the format to write
+     * the products in, the fetcher to get the pages with and the most product detail pages to fetch at the same time.
+     * 
+     * @param webPageUrl
+     *            The new URL to scrape
+     * @param outputFormat
+     *            The format to write the products in
+     * @param pageFetcher
+     *            The fetcher to get the pages with, or null for the scraper's own
+     * @param detailFetchThreads
+     *            The most product detail pages fetched at the same time, at least one
+     */
+    public WebScraperApp(String webPageUrl, OutputFormat outputFormat, PageFetcher pageFetcher,
+            int detailFetchThreads) {
+        this(webPageUrl, outputFormat, pageFetcher);
+        this.detailFetchThreads = detailFetchThreads;
+    }
+
+    /**
+     * Will take the URL provide, create a scraper and pull out the relevant information, writing each product found as
+     * JSON to the console as soon as it has been scraped, followed by the total pricing once every product has been.
+     * The products are written in the output format given, a single JSON document being ended with a line separator.
      * 
-     * @param url
-     *            The URL of the web page to scrape
      * @throws IOException
      */
     public void scrapeUrl() throws IOException {
-        Scraper scraper = new Scraper(webPageUrl);
-        List<Product> products = scraper.scrapeWebPage();
+        scrapeUrl(System.out);
+    }
 
-        TransformToJson transformer = new TransformToJson();
-        JSONObject json = transformer.createJsonForProducts(products);
-        System.out.println(json);
+    /**
+     * Will take the URL provide, create a scraper and pull out the relevant information, writing each product found to
+     * the stream given rather than the console. The stream is flushed but not closed once every product has been
+     * written.
+     * 
+     * @param out
+     *            The stream to write the products to
+     * @throws IOException
+     */
+    public void scrapeUrl(PrintStream out) throws IOException {
+        Scraper scraper;
+        if (detailFetchThreads > 1) {
+            scraper = new Scraper(webPageUrl, null != pageFetcher ? pageFetcher : HttpClientPageFetcher.shared(),
+                    detailFetchThreads);
+        } else {
+            scraper = null != pageFetcher ? new Scraper(webPageUrl, pageFetcher) : new Scraper(webPageUrl);
+        }
+
+        // The stream isn't closed once written to, only flushed when the products are finished
+        ProductsWriter products = outputFormat.createWriter(out, out.charset());
+        scraper.scrapeWebPage(products::writeProduct);
+        products.finish();
+        // Each line of JSON Lines is already ended, and the binary format has no lines
+        if (OutputFormat.JSON == outputFormat) {
+            out.print(System.lineSeparator());
+            out.flush();
+        }
     }
 
 }
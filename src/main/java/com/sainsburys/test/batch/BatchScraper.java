@@ -0,0 +1,269 @@
+package com.sainsburys.test.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.sainsburys.test.fetch.HttpClientPageFetcher;
+import com.sainsburys.test.fetch.PageFetcher;
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.scraper.ProductDetailsCache;
+import com.sainsburys.test.scraper.Scraper;
+import com.sainsburys.test.transform.OutputFormat;
+import com.sainsburys.test.transform.ProductsWriter;
+
+/**
+ * This class will scrape many category pages in one run, a bounded number at a time, with every page fetch on its own
+ * virtual thread. The details of each product are held for the whole run, so a product detail page linked from more
+ * than one category page is only fetched once, even when those category pages are scraped at the same time.
+ * <p>
+ * The products are written either as one merged output holding the products of every category page, or as one file
+ * for each category page. Either way they are written in the order the category pages were given, each as soon as it
+ * and every category page before it has been scraped. A category page that couldn't be scraped doesn't stop the
+ * others, and is reported once the rest have been written.
+ */
+public class BatchScraper {
+
+    // The most product detail pages held for a run, far more than the whole catalogue
+    private static final int DETAILS_CACHE_ENTRIES = 1_000_000;
+
+    // The details are only needed for the run, but mustn't expire during a long one
+    private static final long DETAILS_TIME_TO_LIVE_HOURS = 24;
+
+    private final List<String> categoryUrls;
+
+    private final OutputFormat outputFormat;
+
+    private final Semaphore admissions;
+
+    private final PageFetcher pageFetcher;
+
+    private final ProductDetailsCache detailsCache = new ProductDetailsCache(DETAILS_CACHE_ENTRIES,
+            DETAILS_TIME_TO_LIVE_HOURS, TimeUnit.HOURS);
+
+    /**
+     * Creates a batch that fetches the pages through a shared {@link HttpClientPageFetcher}.
+     *
+     * @param categoryUrls
+     *            The URLs of the category pages to scrape, any given more than once only being scraped once
+     * @param outputFormat
+     *            The format to write the products in
+     * @param maxConcurrentScrapes
+     *            The most category pages scraped at the same time
+     */
+    public BatchScraper(List<String> categoryUrls, OutputFormat outputFormat, int maxConcurrentScrapes) {
+        this(categoryUrls, outputFormat, maxConcurrentScrapes, HttpClientPageFetcher.shared());
+    }
+
+    /**
+     * Creates a batch that fetches the pages through the fetcher given.
+     *
+     * @param categoryUrls
+     *            The URLs of the category pages to scrape, any given more than once only being scraped once
+     * @param outputFormat
+     *            The format to write the products in
+     * @param maxConcurrentScrapes
+     *            The most category pages scraped at the same time
+     * @param pageFetcher
+     *            The fetcher used to get the html of each page
+     */
+    public BatchScraper(List<String> categoryUrls, OutputFormat outputFormat, int maxConcurrentScrapes,
+            PageFetcher pageFetcher) {
+        if (null == categoryUrls || categoryUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one category page is needed to scrape");
+        }
+        if (maxConcurrentScrapes < 1) {
+            throw new IllegalArgumentException("At least one category page must be scraped at a time");
+        }
+        if (null == pageFetcher) {
+            throw new IllegalArgumentException("A fetcher is needed to get the pages with");
+        }
+        this.categoryUrls = new ArrayList<>(new LinkedHashSet<>(categoryUrls));
+        this.outputFormat = outputFormat;
+        this.admissions = new Semaphore(maxConcurrentScrapes);
+        this.pageFetcher = pageFetcher;
+    }
+
+    /**
+     * Scrapes every category page, writing all of their products to the stream given as one output, with the totals
+     * covering every product written. The stream is flushed but not closed.
+     *
+     * @param out
+     *            The stream to write the products to
+     * @throws IOException
+     *             If any category page couldn't be scraped, once the products of the rest have been written
+     */
+    public void scrapeMerged(PrintStream out) throws IOException {
+        List<IOException> failures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<Product>>> categories = scrapeAll(executor);
+
+            ProductsWriter products = outputFormat.createWriter(out, out.charset());
+            for (int i = 0; i < categories.size(); i++) {
+                List<Product> categoryProducts = await(categories.get(i), categoryUrls.get(i), failures);
+                if (null != categoryProducts) {
+                    for (Product product : categoryProducts) {
+                        products.writeProduct(product);
+                    }
+                }
+            }
+            products.finish();
+            // Each line of JSON Lines is already ended, and the binary format has no lines
+            if (OutputFormat.JSON == outputFormat) {
+                out.print(System.lineSeparator());
+                out.flush();
+            }
+        }
+        throwFailures(failures);
+    }
+
+    /**
+     * Scrapes every category page, writing the products of each to its own file in the directory given. Each file is
+     * named after the position of its category page in the batch and the last part of its URL, so the files list in
+     * the order the category pages were given. No file is written for a category page that couldn't be scraped.
+     *
+     * @param directory
+     *            The directory to write the files to, which is created if it doesn't exist
+     * @return The files written, in the order of their category pages
+     * @throws IOException
+     *             If any category page couldn't be scraped or written, once the rest have been written
+     */
+    public List<Path> scrapeToDirectory(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<IOException> failures = new ArrayList<>();
+        List<Path> written = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<Product>>> categories = scrapeAll(executor);
+
+            for (int i = 0; i < categories.size(); i++) {
+                List<Product> categoryProducts = await(categories.get(i), categoryUrls.get(i), failures);
+                if (null == categoryProducts) {
+                    continue;
+                }
+                Path file = directory.resolve(getFileName(i));
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                    ProductsWriter products = outputFormat.createWriter(out, StandardCharsets.UTF_8);
+                    for (Product product : categoryProducts) {
+                        products.writeProduct(product);
+                    }
+                    products.finish();
+                    written.add(file);
+                } catch (IOException e) {
+                    failures.add(new IOException(categoryUrls.get(i) + " couldn't be written to " + file + ": "
+                            + e.getMessage(), e));
+                }
+            }
+        }
+        throwFailures(failures);
+        return written;
+    }
+
+    /**
+     * Gets the cache holding the details of every product scraped in the batch, whose misses are the product detail
+     * pages fetched.
+     *
+     * @return The details cache of the batch
+     */
+    public ProductDetailsCache getDetailsCache() {
+        return detailsCache;
+    }
+
+    /**
+     * Starts the scrape of every category page, each on its own virtual thread once it has been admitted.
+     */
+    private List<Future<List<Product>>> scrapeAll(ExecutorService executor) {
+        List<Future<List<Product>>> categories = new ArrayList<>(categoryUrls.size());
+        for (String categoryUrl : categoryUrls) {
+            categories.add(executor.submit(() -> {
+                admissions.acquire();
+                try {
+                    return new Scraper(categoryUrl, pageFetcher, executor, detailsCache).scrapeWebPage();
+                } finally {
+                    admissions.release();
+                }
+            }));
+        }
+        return categories;
+    }
+
+    /**
+     * Waits for the scrape of a category page, adding why it failed to the failures if it did.
+     *
+     * @return The products of the category page, or null if it couldn't be scraped
+     */
+    private static List<Product> await(Future<List<Product>> category, String categoryUrl,
+            List<IOException> failures) throws IOException {
+        try {
+            return category.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted whilst waiting for " + categoryUrl + " to be scraped", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            failures.add(new IOException(categoryUrl + " couldn't be scraped: " + cause.getMessage(), cause));
+            return null;
+        }
+    }
+
+    /**
+     * Throws a single exception for every category page that failed, holding the others as suppressed.
+     */
+    private void throwFailures(List<IOException> failures) throws IOException {
+        if (failures.isEmpty()) {
+            return;
+        }
+        IOException failure = new IOException(failures.size() + " of " + categoryUrls.size()
+                + " category pages failed, the first being " + failures.get(0).getMessage(), failures.get(0));
+        for (int i = 1; i < failures.size(); i++) {
+            failure.addSuppressed(failures.get(i));
+        }
+        throw failure;
+    }
+
+    /**
+     * Gets the name of the file for the category page at the index given, from its position and the last part of its
+     * URL without any extension.
+     */
+    String getFileName(int index) {
+        String path = categoryUrls.get(index).replaceAll("[?#].*$", "").replaceAll("/+$", "");
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int extension = name.lastIndexOf('.');
+        if (extension > 0) {
+            name = name.substring(0, extension);
+        }
+        name = name.replaceAll("[^A-Za-z0-9_-]", "_");
+
+        int width = Integer.toString(categoryUrls.size()).length();
+        return String.format(Locale.ROOT, "%0" + width + "d", index + 1) + (name.isEmpty() ? "" : "-" + name) + "."
+                + getFileExtension();
+    }
+
+    private String getFileExtension() {
+        switch (outputFormat) {
+        case NDJSON:
+            return "ndjson";
+        case BINARY:
+            return "bin";
+        default:
+            return "json";
+        }
+    }
+
+}
@@ -0,0 +1,341 @@
+package com.sainsburys.test.fetch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Fetches web pages in the same way as {@link HttpClientPageFetcher}, keeping a copy of each page on disk along with
+ * the ETag and Last-Modified validators the server gave for it. When a page is fetched again the validators are sent
+ * back as If-None-Match and If-Modified-Since, and if the server responds that the page is not modified the copy on
+ * disk is read instead, so an unchanged page costs a request but none of its body is transferred.
+ * <p>
+ * Each page is held in a single file named after a hash of its URL, holding the validators followed by the body, which
+ * is held decompressed if the server gzipped it. A new copy is written to a temporary file and moved into place once complete, so a page fetched at the same time by
+ * another thread, or another run, never sees a partly written copy.
+ * <p>
+ * A page is only cached once all of it has been read, so the first time a page is fetched the rest of it is read when
+ * it is closed, even if the scraper had already found what it needed and stopped early. Caching a page costs a full
+ * download the first time, which is made back by every later fetch of it that isn't modified.
+ */
+public class ConditionalCachingPageFetcher extends HttpClientPageFetcher {
+
+    private static final int NOT_MODIFIED = 304;
+
+    // Written at the start of each cached file, so files in an older or unknown format are ignored
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path cacheDirectory;
+
+    /**
+     * Creates a fetcher that keeps the pages it fetches in the directory given, creating it if needed.
+     *
+     * @param httpClient
+     *            The client to fetch the pages with
+     * @param cacheDirectory
+     *            The directory to keep the fetched pages in
+     * @throws IOException
+     *             If the directory can't be created
+     */
+    public ConditionalCachingPageFetcher(HttpClient httpClient, Path cacheDirectory) throws IOException {
+        super(httpClient);
+        this.cacheDirectory = Files.createDirectories(cacheDirectory);
+    }
+
+    @Override
+    public FetchedPage fetch(URL url) throws IOException {
+        Path cachedFile = cacheDirectory.resolve(getCachedFileName(url));
+        CachedPage cached = openCachedPage(cachedFile);
+
+        HttpResponse<InputStream> response;
+        try {
+            HttpRequest.Builder request = createRequest(url);
+            if (null != cached && null != cached.etag) {
+                request.header("If-None-Match", cached.etag);
+            }
+            if (null != cached && null != cached.lastModified) {
+                request.header("If-Modified-Since", cached.lastModified);
+            }
+            response = send(request.build(), BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            if (null != cached) {
+                cached.body.close();
+            }
+            throw e;
+        }
+
+        if (null != cached) {
+            if (NOT_MODIFIED == response.statusCode()) {
+                response.body().close();
+                return new FetchedPage(url, cached.body, cached.charset);
+            }
+            cached.body.close();
+        }
+        checkSuccessful(response, url);
+
+        String charset = getCharset(response.headers().firstValue("Content-Type").orElse(null));
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+
+        if (null == etag && null == lastModified) {
+            // Without any validators the page can't be checked for changes, so an older copy is no use
+            Files.deleteIfExists(cachedFile);
+            return new FetchedPage(url, getBody(response), charset);
+        }
+
+        return new FetchedPage(url, new CachingInputStream(getBody(response), cachedFile,
+                new CachedPage(etag, lastModified, charset, null)), charset);
+    }
+
+    /**
+     * Gets the name of the file a page is cached in, which is a hash of its URL so that it is safe to use on any file
+     * system.
+     *
+     * @param url
+     *            The URL of the web page
+     * @return The name of the cached file
+     */
+    protected static String getCachedFileName(URL url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder fileName = new StringBuilder(hash.length * 2 + ".page".length());
+            for (byte hashByte : hash) {
+                fileName.append(Character.forDigit((hashByte >> 4) & 0xF, 16))
+                        .append(Character.forDigit(hashByte & 0xF, 16));
+            }
+            return fileName.append(".page").toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Opens the copy of a page held on disk, reading its validators and leaving the stream at the start of its body.
+     *
+     * @param cachedFile
+     *            The file the page is cached in
+     * @return The cached page, or null if there isn't a readable copy
+     */
+    private static CachedPage openCachedPage(Path cachedFile) {
+        if (!Files.isRegularFile(cachedFile)) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cachedFile)));
+            if (FORMAT_VERSION != in.readInt()) {
+                in.close();
+                return null;
+            }
+            return new CachedPage(emptyToNull(in.readUTF()), emptyToNull(in.readUTF()), emptyToNull(in.readUTF()),
+                    in);
+        } catch (IOException e) {
+            // A copy that has been removed or can't be read is fetched again in full
+            closeQuietly(in);
+            return null;
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return null == value ? "" : value;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (null != in) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Nothing more can be done with a stream that can't be closed
+            }
+        }
+    }
+
+    /**
+     * The validators and character set of a page held on disk, with its body when read back.
+     */
+    private static final class CachedPage {
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final String charset;
+
+        private final InputStream body;
+
+        private CachedPage(String etag, String lastModified, String charset, InputStream body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.charset = charset;
+            this.body = body;
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface BodyRead {
+
+        int read() throws IOException;
+
+    }
+
+    /**
+     * Copies the body of a page to a temporary file as it is read, moving it into the cache once the body is closed.
+     * If the page is closed before all of it has been read, such as once the scraper has found what it needs, the rest
+     * is read into the copy first so that it is complete. A failure writing the copy only stops the page being cached,
+     * it doesn't fail the fetch.
+     */
+    private static final class CachingInputStream extends FilterInputStream {
+
+        private final Path cachedFile;
+
+        private Path tempFile;
+
+        private DataOutputStream copy;
+
+        private boolean closed;
+
+        private CachingInputStream(InputStream body, Path cachedFile, CachedPage page) {
+            super(body);
+            this.cachedFile = cachedFile;
+            try {
+                tempFile = Files.createTempFile(cachedFile.getParent(), cachedFile.getFileName().toString(), ".tmp");
+                copy = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)));
+                copy.writeInt(FORMAT_VERSION);
+                copy.writeUTF(nullToEmpty(page.etag));
+                copy.writeUTF(nullToEmpty(page.lastModified));
+                copy.writeUTF(nullToEmpty(page.charset));
+            } catch (IOException e) {
+                abandonCopy();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = readBody(() -> super.read());
+            if (read >= 0 && null != copy) {
+                try {
+                    copy.write(read);
+                } catch (IOException e) {
+                    abandonCopy();
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = readBody(() -> super.read(buffer, offset, length));
+            if (read > 0 && null != copy) {
+                try {
+                    copy.write(buffer, offset, read);
+                } catch (IOException e) {
+                    abandonCopy();
+                }
+            }
+            return read;
+        }
+
+        /**
+         * Reads from the body, throwing away the copy if the read fails so that a page with a gap in it is never
+         * cached.
+         */
+        private int readBody(BodyRead bodyRead) throws IOException {
+            try {
+                return bodyRead.read();
+            } catch (IOException e) {
+                abandonCopy();
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long length) throws IOException {
+            // Skipped bytes are still needed in the copy, so they are read rather than skipped
+            byte[] buffer = new byte[(int) Math.min(8192, Math.max(length, 0))];
+            long skipped = 0;
+            while (skipped < length) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, length - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                if (null != copy) {
+                    byte[] buffer = new byte[8192];
+                    while (null != copy && read(buffer, 0, buffer.length) >= 0) {
+                        // Reads the rest of the body into the copy
+                    }
+                }
+                if (null != copy) {
+                    copy.close();
+                    copy = null;
+                    Files.move(tempFile, cachedFile, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                abandonCopy();
+            } finally {
+                super.close();
+            }
+        }
+
+        private void abandonCopy() {
+            try {
+                if (null != copy) {
+                    copy.close();
+                }
+            } catch (IOException e) {
+                // The copy is being thrown away, so a failure to close it doesn't matter
+            }
+            copy = null;
+
+            try {
+                if (null != tempFile) {
+                    Files.deleteIfExists(tempFile);
+                }
+            } catch (IOException e) {
+                // Left for the next run to overwrite
+            }
+        }
+
+    }
+
+}
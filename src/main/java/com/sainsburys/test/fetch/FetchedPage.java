@@ -0,0 +1,47 @@
+package com.sainsburys.test.fetch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * This class will hold the response of a web page that has been fetched, with the body left as a stream so it can be
+ * parsed as it is read.
+ */
+public class FetchedPage implements Closeable {
+
+    private final URL url;
+
+    private final InputStream body;
+
+    // The character set given by the server, or null if it is to be detected from the start of the html
+    private final String charset;
+
+    public FetchedPage(URL url, InputStream body, String charset) {
+        this.url = url;
+        this.body = body;
+        this.charset = charset;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    public String getCharset() {
+        return charset;
+    }
+
+    /**
+     * Closes the body of the page, releasing the connection it was read from.
+     */
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+
+}
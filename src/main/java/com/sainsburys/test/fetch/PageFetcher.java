@@ -0,0 +1,23 @@
+package com.sainsburys.test.fetch;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Fetches the raw html of a web page so that it can be parsed by the scraper. Implementations must be safe to share
+ * between threads, as a single fetcher is used for every page a scraper fetches.
+ */
+public interface PageFetcher {
+
+    /**
+     * Fetches the web page at the given URL.
+     * 
+     * @param url
+     *            The URL of the web page to fetch
+     * @return The fetched page, which must be closed once its body has been read
+     * @throws IOException
+     *             If the page could not be fetched, or the server did not respond with a successful status
+     */
+    FetchedPage fetch(URL url) throws IOException;
+
+}
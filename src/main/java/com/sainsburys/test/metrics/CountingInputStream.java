@@ -0,0 +1,52 @@
+package com.sainsburys.test.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class will count the bytes read through it, both for the stream itself and towards a running total shared with
+ * other streams.
+ */
+public class CountingInputStream extends FilterInputStream {
+
+    private final LongAdder total;
+
+    private long count;
+
+    CountingInputStream(InputStream in, LongAdder total) {
+        super(in);
+        this.total = total;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            count++;
+            total.increment();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            count += read;
+            total.add(read);
+        }
+        return read;
+    }
+
+    /**
+     * Gets the number of bytes read through this stream, which is only safe to call from the thread reading it.
+     *
+     * @return The number of bytes read
+     */
+    public long getCount() {
+        return count;
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.sainsburys.test.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class will register the metrics of every {@link Stage} of a scrape with the platform MBean server, so they can
+ * be watched with JConsole or any other JMX client under <code>com.sainsburys.test:type=ScrapeStage</code>.
+ */
+public final class JmxExporter {
+
+    private static final String DOMAIN = "com.sainsburys.test";
+
+    private JmxExporter() {
+    }
+
+    /**
+     * Registers the metrics of every stage, leaving any already registered as they are.
+     */
+    public static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Stage stage : Stage.values()) {
+            try {
+                server.registerMBean(stage.getMetrics(), getObjectName(stage));
+            } catch (InstanceAlreadyExistsException e) {
+                // Already registered by an earlier call
+            } catch (JMException e) {
+                throw new IllegalStateException("The metrics of " + stage + " couldn't be registered", e);
+            }
+        }
+    }
+
+    /**
+     * Gets the name the metrics of a stage are registered under.
+     *
+     * @param stage
+     *            The stage
+     * @return The name of its metrics
+     * @throws JMException
+     *             If the name isn't a valid object name
+     */
+    public static ObjectName getObjectName(Stage stage) throws JMException {
+        return new ObjectName(DOMAIN + ":type=ScrapeStage,name=" + stage.getMetrics().getName());
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.sainsburys.test.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for the fetch of a page by the scraper. Its duration is the time taken for the response to
+ * start arriving, and it is committed once the page has been read, so it also holds the bytes read from the page.
+ * <p>
+ * The values are only set once {@link #shouldCommit()} says the event will be recorded, so the event costs next to
+ * nothing whilst Flight Recorder isn't recording it.
+ */
+@Name("com.sainsburys.test.PageFetch")
+@Label("Page Fetch")
+@Category({ "Scraper", "Fetch" })
+@Description("The fetch of a category page or product detail page")
+@StackTrace(false)
+public class PageFetchEvent extends jdk.jfr.Event {
+
+    @Label("URL")
+    private String url;
+
+    @Label("Stage")
+    @Description("The stage of the scrape the page was fetched for")
+    private String stage;
+
+    @Label("Bytes")
+    @Description("The bytes read from the page, which stops early once a product detail page has been scraped")
+    @DataAmount
+    private long bytes;
+
+    @Label("Succeeded")
+    private boolean succeeded;
+
+    @Label("Failure")
+    @Description("Why the page couldn't be fetched, holding the HTTP status if the server responded with an error")
+    private String failure;
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public void setSucceeded(boolean succeeded) {
+        this.succeeded = succeeded;
+    }
+
+    public void setFailure(String failure) {
+        this.failure = failure;
+    }
+
+}
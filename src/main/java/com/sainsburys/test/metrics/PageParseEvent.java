@@ -0,0 +1,42 @@
+package com.sainsburys.test.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for the parse of a page by the scraper, which is parsed as it is read, so its duration
+ * includes reading the rest of the page after its response started arriving.
+ */
+@Name("com.sainsburys.test.PageParse")
+@Label("Page Parse")
+@Category({ "Scraper", "Parse" })
+@Description("The parse of a category page or product detail page")
+@StackTrace(false)
+public class PageParseEvent extends jdk.jfr.Event {
+
+    @Label("URL")
+    private String url;
+
+    @Label("Stage")
+    @Description("The stage of the scrape the page was parsed for")
+    private String stage;
+
+    @Label("Succeeded")
+    private boolean succeeded;
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public void setSucceeded(boolean succeeded) {
+        this.succeeded = succeeded;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.sainsburys.test.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for a single product being turned into JSON or written out. There is one of these for every
+ * product, so it is worth leaving out of a continuous recording with a threshold unless the products are being looked
+ * at.
+ */
+@Name("com.sainsburys.test.ProductSerialized")
+@Label("Product Serialized")
+@Category({ "Scraper", "Serialization" })
+@Description("A product turned into JSON or written in an output format")
+@StackTrace(false)
+public class ProductSerializedEvent extends jdk.jfr.Event {
+
+    @Label("Product")
+    private String product;
+
+    @Label("Format")
+    @Description("What the product was turned into, the name of an output format or JSONObject")
+    private String format;
+
+    @Label("Food Product")
+    private boolean foodProduct;
+
+    public void setProduct(String product) {
+        this.product = product;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public void setFoodProduct(boolean foodProduct) {
+        this.foodProduct = foodProduct;
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.sainsburys.test.metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class will write the metrics of every {@link Stage} of a scrape in the Prometheus text format, either to a
+ * writer, such as the body of a response to a scrape by Prometheus, or to a file for the node exporter's textfile
+ * collector to pick up.
+ * <p>
+ * Each stage is told apart by a <code>stage</code> label on the metrics:
+ * <ul>
+ * <li><code>scraper_stage_duration_seconds</code> - a histogram of the time taken by each run that succeeded</li>
+ * <li><code>scraper_stage_bytes_total</code> - a counter of the bytes read or written</li>
+ * <li><code>scraper_stage_errors_total</code> - a counter of the runs that failed</li>
+ * <li><code>scraper_stage_in_flight</code> - a gauge of the runs going on right now</li>
+ * </ul>
+ */
+public class PrometheusExporter {
+
+    /**
+     * The content type of the text format written, for serving it over HTTP.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Writes the metrics of every stage.
+     *
+     * @param out
+     *            The writer to write the metrics to, which is left open
+     * @throws IOException
+     *             If the metrics couldn't be written
+     */
+    public void write(Writer out) throws IOException {
+        StringBuilder text = new StringBuilder(8192);
+
+        text.append("# HELP scraper_stage_duration_seconds The time taken by each run of a stage of a scrape.\n")
+                .append("# TYPE scraper_stage_duration_seconds histogram\n");
+        for (Stage stage : Stage.values()) {
+            appendHistogram(text, stage.getMetrics());
+        }
+
+        text.append("# HELP scraper_stage_bytes_total The bytes read or written by a stage of a scrape.\n")
+                .append("# TYPE scraper_stage_bytes_total counter\n");
+        for (Stage stage : Stage.values()) {
+            appendSample(text, "scraper_stage_bytes_total", stage.getMetrics(), stage.getMetrics().getBytes());
+        }
+
+        text.append("# HELP scraper_stage_errors_total The runs of a stage of a scrape that failed.\n")
+                .append("# TYPE scraper_stage_errors_total counter\n");
+        for (Stage stage : Stage.values()) {
+            appendSample(text, "scraper_stage_errors_total", stage.getMetrics(), stage.getMetrics().getErrorCount());
+        }
+
+        text.append("# HELP scraper_stage_in_flight The runs of a stage of a scrape going on right now.\n")
+                .append("# TYPE scraper_stage_in_flight gauge\n");
+        for (Stage stage : Stage.values()) {
+            appendSample(text, "scraper_stage_in_flight", stage.getMetrics(), stage.getMetrics().getInFlight());
+        }
+
+        out.write(text.toString());
+    }
+
+    /**
+     * Writes the metrics of every stage to a file, replacing it in one step so that nothing reading it sees it half
+     * written.
+     *
+     * @param file
+     *            The file to write the metrics to
+     * @throws IOException
+     *             If the metrics couldn't be written
+     */
+    public void writeTo(Path file) throws IOException {
+        StringWriter text = new StringWriter();
+        write(text);
+
+        Path absoluteFile = file.toAbsolutePath();
+        Path written = Files.createTempFile(absoluteFile.getParent(), absoluteFile.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(written, text.toString(), StandardCharsets.UTF_8);
+            Files.move(written, absoluteFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(written);
+        }
+    }
+
+    private static void appendHistogram(StringBuilder text, StageMetrics metrics) {
+        long[] counts = metrics.getBucketCounts();
+        long cumulative = 0;
+        for (int i = 0; i < StageMetrics.BUCKET_COUNT; i++) {
+            cumulative += counts[i];
+            text.append("scraper_stage_duration_seconds_bucket{stage=\"").append(metrics.getName()).append("\",le=\"")
+                    .append(StageMetrics.getBucketUpperBoundNanos(i) / NANOS_PER_SECOND).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        cumulative += counts[StageMetrics.BUCKET_COUNT];
+        text.append("scraper_stage_duration_seconds_bucket{stage=\"").append(metrics.getName())
+                .append("\",le=\"+Inf\"} ").append(cumulative).append('\n');
+        text.append("scraper_stage_duration_seconds_sum{stage=\"").append(metrics.getName()).append("\"} ")
+                .append(metrics.getTotalNanos() / NANOS_PER_SECOND).append('\n');
+        // The count is taken from the buckets, so it always matches the +Inf bucket even whilst runs are being counted
+        text.append("scraper_stage_duration_seconds_count{stage=\"").append(metrics.getName()).append("\"} ")
+                .append(cumulative).append('\n');
+    }
+
+    private static void appendSample(StringBuilder text, String metricName, StageMetrics metrics, long value) {
+        text.append(metricName).append("{stage=\"").append(metrics.getName()).append("\"} ").append(value)
+                .append('\n');
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.sainsburys.test.metrics;
+
+/**
+ * The stages of a scrape that are measured, each with its own {@link StageMetrics} shared by every scrape in the
+ * application.
+ */
+public enum Stage {
+
+    /**
+     * Fetching the category page, up to its response starting to arrive. The bytes of the page are counted here.
+     */
+    LISTING_FETCH("listing_fetch"),
+
+    /**
+     * Reading and parsing the category page, which is parsed as it arrives, and handing on each product found.
+     */
+    LISTING_PARSE("listing_parse"),
+
+    /**
+     * Fetching a product detail page, up to its response starting to arrive. The bytes of the page are counted here.
+     */
+    DETAIL_FETCH("detail_fetch"),
+
+    /**
+     * Reading and parsing a product detail page until its description and calories have been found.
+     */
+    DETAIL_PARSE("detail_parse"),
+
+    /**
+     * Pulling the description or calories out of the part of a product detail page holding them.
+     */
+    FIELD_EXTRACTION("field_extraction"),
+
+    /**
+     * Turning the products into JSON or the binary format. The bytes written are counted here.
+     */
+    SERIALIZATION("serialization");
+
+    private final StageMetrics metrics;
+
+    Stage(String metricName) {
+        this.metrics = new StageMetrics(metricName);
+    }
+
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+}
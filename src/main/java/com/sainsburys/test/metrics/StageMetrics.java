@@ -0,0 +1,259 @@
+package com.sainsburys.test.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class will measure one stage of a scrape: how long each run of it takes, how many bytes it reads or writes,
+ * how many runs fail and how many are running right now. It is safe to update from any number of threads at once, as
+ * every value is held in a {@link LongAdder}, so the threads don't contend with each other.
+ * <p>
+ * The time taken by each run is counted in a histogram of {@value #BUCKET_COUNT} buckets that double in size, the first
+ * holding runs up to 65.5 microseconds and the last runs up to 34.4 seconds, with any longer counted in an overflow
+ * bucket. The bucket for a run is found from the leading zeros of its time, so recording it is a handful of
+ * instructions.
+ * <p>
+ * A run is timed by calling {@link #start()} and handing the value it returns to {@link #stop(long)} once the run is
+ * done, or to {@link #fail(long)} if it failed. Only the runs that stop are counted in the histogram.
+ */
+public class StageMetrics implements StageMetricsMXBean {
+
+    static final int BUCKET_COUNT = 20;
+
+    // The upper bound of the first bucket is 2^16 nanoseconds, with each bucket after it twice the one before
+    private static final int FIRST_BUCKET_SHIFT = 16;
+
+    private final String name;
+
+    // The last is the overflow bucket, for runs longer than the upper bound of every other bucket
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT + 1];
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder inFlight = new LongAdder();
+
+    public StageMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Starts timing a run of the stage, counting it as in flight until it stops or fails.
+     *
+     * @return The time the run started, to be handed to {@link #stop(long)} or {@link #fail(long)}
+     */
+    public long start() {
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Stops timing a run of the stage that succeeded, counting the time it took.
+     *
+     * @param started
+     *            The time the run started, as returned by {@link #start()}
+     */
+    public void stop(long started) {
+        long nanos = System.nanoTime() - started;
+        inFlight.decrement();
+        record(nanos);
+    }
+
+    /**
+     * Stops timing a run of the stage that failed, counting it as an error rather than counting the time it took.
+     *
+     * @param started
+     *            The time the run started, as returned by {@link #start()}
+     */
+    public void fail(long started) {
+        inFlight.decrement();
+        errors.increment();
+    }
+
+    /**
+     * Counts a run of the stage that took the time given.
+     *
+     * @param nanos
+     *            The time the run took in nanoseconds
+     */
+    public void record(long nanos) {
+        long positiveNanos = Math.max(nanos, 0);
+        buckets[bucketOf(positiveNanos)].increment();
+        totalNanos.add(positiveNanos);
+        maxNanos.accumulate(positiveNanos);
+    }
+
+    public void addBytes(long count) {
+        bytes.add(count);
+    }
+
+    /**
+     * Wraps a stream so that every byte read through it is counted against the stage.
+     *
+     * @param in
+     *            The stream to count the bytes of
+     * @return The counted stream, which also counts the bytes read through it alone
+     */
+    public CountingInputStream countBytes(InputStream in) {
+        return new CountingInputStream(in, bytes);
+    }
+
+    /**
+     * Wraps a stream so that every byte written through it is counted against the stage.
+     *
+     * @param out
+     *            The stream to count the bytes of
+     * @return The counted stream
+     */
+    public OutputStream countBytes(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytes.increment();
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                out.write(buffer, offset, length);
+                bytes.add(length);
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        return toMillis(totalNanos.sum());
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long count = getCount();
+        return 0 == count ? 0 : getTotalMillis() / count;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return toMillis(maxNanos.get());
+    }
+
+    @Override
+    public double getMedianMillis() {
+        return percentileMillis(50);
+    }
+
+    @Override
+    public double get99thPercentileMillis() {
+        return percentileMillis(99);
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Gets the number of runs counted in each bucket of the histogram, the last being the overflow bucket.
+     *
+     * @return The count of each bucket
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the longest run counted in a bucket of the histogram.
+     *
+     * @param bucket
+     *            The bucket, which can't be the overflow bucket
+     * @return The upper bound of the bucket in nanoseconds
+     */
+    public static long getBucketUpperBoundNanos(int bucket) {
+        if (bucket < 0 || bucket >= BUCKET_COUNT) {
+            throw new IllegalArgumentException("Bucket " + bucket + " has no upper bound");
+        }
+        return 1L << (FIRST_BUCKET_SHIFT + bucket);
+    }
+
+    /**
+     * Estimates a percentile of the time taken by the runs as the upper bound of the bucket it falls in, or the
+     * longest run if it falls in the overflow bucket.
+     */
+    private double percentileMillis(double percentile) {
+        long[] counts = getBucketCounts();
+        long count = 0;
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+        if (0 == count) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return toMillis(Math.min(getBucketUpperBoundNanos(i), maxNanos.get()));
+            }
+        }
+        return getMaxMillis();
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos <= 1L << FIRST_BUCKET_SHIFT) {
+            return 0;
+        }
+        return Math.min(Long.SIZE - Long.numberOfLeadingZeros(nanos - 1) - FIRST_BUCKET_SHIFT, BUCKET_COUNT);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+}
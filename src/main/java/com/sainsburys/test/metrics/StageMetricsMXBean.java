@@ -0,0 +1,39 @@
+package com.sainsburys.test.metrics;
+
+/**
+ * The view of the metrics of a stage of a scrape given through JMX. The times are in milliseconds, and the
+ * percentiles are estimated from the buckets of the histogram the runs are counted in.
+ */
+public interface StageMetricsMXBean {
+
+    String getName();
+
+    /**
+     * Gets the number of runs of the stage that succeeded.
+     *
+     * @return The number of runs
+     */
+    long getCount();
+
+    long getErrorCount();
+
+    long getBytes();
+
+    /**
+     * Gets the number of runs of the stage that have started but not yet stopped or failed.
+     *
+     * @return The number of runs in flight
+     */
+    long getInFlight();
+
+    double getTotalMillis();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getMedianMillis();
+
+    double get99thPercentileMillis();
+
+}
@@ -7,19 +7,43 @@ package com.sainsburys.test.products;
  */
 public class FoodProduct extends Product {
 
+    // The calories as text, only created from the number when asked for if the product was made with one
     private String calories;
 
+    // The calories as a number, or ProductBatch.NO_CALORIES if they are only held as text
+    private int caloriesValue = ProductBatch.NO_CALORIES;
+
     public FoodProduct(String name, String description, String price, String calories) {
         super(name, description, price);
         this.calories = calories;
     }
 
+    public FoodProduct(String name, String description, long pricePence, int calories) {
+        super(name, description, pricePence);
+        this.caloriesValue = calories;
+    }
+
     public String getCalories() {
+        if (null == calories && ProductBatch.NO_CALORIES != caloriesValue) {
+            // Any thread creating the text creates the same, so it doesn't matter if more than one does
+            calories = Integer.toString(caloriesValue);
+        }
         return calories;
     }
 
+    /**
+     * Gets the calories of the product as a number, if that is how they were given, so they can be written without
+     * creating the text of them.
+     *
+     * @return The calories, or {@link ProductBatch#NO_CALORIES} if they are only held as text
+     */
+    public int getCaloriesValue() {
+        return caloriesValue;
+    }
+
     public void setCalories(String calories) {
         this.calories = calories;
+        this.caloriesValue = ProductBatch.NO_CALORIES;
     }
 
 }
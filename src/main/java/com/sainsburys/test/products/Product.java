@@ -1,39 +1,111 @@
 package com.sainsburys.test.products;
 
-import java.text.DecimalFormat;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /**
- * This class will create an object to hold Product information that has been scrapped from the web page.
+ * This class will create an object to hold Product information that has been scrapped from the web page. The price
+ * and VAT are held as whole pence, so they are exact and can be totalled without any rounding drifting in.
  */
 public class Product {
 
+    // The VAT rate charged on the price of a product
+    private static final long VAT_PERCENT = 20;
+
+    // Prices with more digits than this are parsed the slow way, so the pence can't overflow
+    private static final int MAX_FAST_PRICE_DIGITS = 16;
+
     // Name of the product
     private String name;
 
     // Description of the product (first line if multiple)
     private String description;
 
-    // The price per unit of the product
-    private double price;
+    // The price per unit of the product in pence
+    private long pricePence;
 
-    // The VAT based off of the unit price
-    private double vat;
+    // The VAT based off of the unit price in pence
+    private long vatPence;
 
     public Product(String name, String description, String price) {
         this.name = name;
         this.description = description;
         if (null != price) {
-            this.price = Double.parseDouble(price);
-            calculateVat();
+            this.pricePence = parsePence(price);
+            this.vatPence = calculateVat(pricePence);
         }
     }
 
+    public Product(String name, String description, long pricePence) {
+        this.name = name;
+        this.description = description;
+        this.pricePence = pricePence;
+        this.vatPence = calculateVat(pricePence);
+    }
+
     /**
-     * Calculates the VAT on the product based off the price per unit found from the web page.
+     * Calculates the VAT on a product based off the price per unit found from the web page, rounded to the nearest
+     * penny.
+     *
+     * @param pricePence
+     *            The price per unit in pence
+     * @return The VAT in pence
      */
-    private void calculateVat() {
-        DecimalFormat df = new DecimalFormat("##.00");
-        vat = Double.parseDouble(df.format(price * 0.2));
+    static long calculateVat(long pricePence) {
+        long vat = Math.abs(pricePence) * VAT_PERCENT;
+        return (vat + 50) / 100 * Long.signum(pricePence);
+    }
+
+    /**
+     * Parses a price in pounds, such as "1.75", into pence by scanning its characters, rounding half up on the third
+     * decimal place if there is one. Anything other than plain digits with an optional decimal point is parsed as a
+     * double instead, which throws a {@link NumberFormatException} if it isn't a number at all.
+     *
+     * @param price
+     *            The price in pounds
+     * @return The price in pence
+     */
+    private static long parsePence(String price) {
+        int length = price.length();
+        long pence = 0;
+        int digits = 0;
+        // The number of decimal places read so far, or -1 until the decimal point is found
+        int decimals = -1;
+        boolean roundUp = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = price.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (decimals < 2) {
+                    pence = pence * 10 + (c - '0');
+                    digits++;
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                } else if (2 == decimals) {
+                    roundUp = c >= '5';
+                    decimals++;
+                }
+            } else if ('.' == c && decimals < 0) {
+                decimals = 0;
+            } else {
+                return parseUnusualPence(price);
+            }
+        }
+
+        if (0 == digits || digits > MAX_FAST_PRICE_DIGITS) {
+            return parseUnusualPence(price);
+        }
+
+        for (int i = Math.max(decimals, 0); i < 2; i++) {
+            pence *= 10;
+        }
+        return roundUp ? pence + 1 : pence;
+    }
+
+    private static long parseUnusualPence(String price) {
+        return BigDecimal.valueOf(Double.parseDouble(price)).movePointRight(2).setScale(0, RoundingMode.HALF_UP)
+                .longValueExact();
     }
 
     public String getName() {
@@ -53,15 +125,23 @@ public class Product {
     }
 
     public double getPrice() {
-        return price;
+        return pricePence / 100.0;
     }
 
     public void setPrice(double price) {
-        this.price = price;
+        this.pricePence = Math.round(price * 100);
+    }
+
+    public long getPricePence() {
+        return pricePence;
     }
 
     public double getVat() {
-        return vat;
+        return vatPence / 100.0;
+    }
+
+    public long getVatPence() {
+        return vatPence;
     }
 
 }
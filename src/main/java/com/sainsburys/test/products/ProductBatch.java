@@ -0,0 +1,254 @@
+package com.sainsburys.test.products;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class will hold a large number of products in columns of primitive arrays, rather than as a {@link Product}
+ * object each. The prices and VAT are held as pence, the calories as whole numbers, and the names and descriptions
+ * are stored once each in a table of strings that the products refer to by index, so products sharing the same
+ * description share the same string. Products are only created as objects when asked for with
+ * {@link #getProduct(int)}.
+ * <p>
+ * Whilst a batch is being filled it also holds a lookup from each distinct string to its index, costing a map entry
+ * for every name. Once it has been filled, {@link #trimToSize()} lets go of the lookup and any spare capacity, so only
+ * the columns and the table of strings are kept.
+ * <p>
+ * A batch is not safe to fill from more than one thread at a time.
+ */
+public class ProductBatch {
+
+    /**
+     * The calories held for a product that isn't a {@link FoodProduct}.
+     */
+    public static final int NO_CALORIES = -1;
+
+    // The index held for a name or description that is null
+    private static final int NO_STRING = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int size;
+
+    private int[] nameIndexes;
+
+    private int[] descriptionIndexes;
+
+    private long[] pricePence;
+
+    private long[] vatPence;
+
+    private int[] calories;
+
+    // Every distinct name and description, looked up by the index held for each product
+    private String[] strings = new String[DEFAULT_CAPACITY];
+
+    private int stringCount;
+
+    // Finds the index of a string already held whilst the batch is filled, or null once it has been trimmed
+    private Map<String, Integer> stringIndexes = new HashMap<>();
+
+    private long totalPricePence;
+
+    private long totalVatPence;
+
+    public ProductBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ProductBatch(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("The initial capacity can't be negative");
+        }
+        nameIndexes = new int[initialCapacity];
+        descriptionIndexes = new int[initialCapacity];
+        pricePence = new long[initialCapacity];
+        vatPence = new long[initialCapacity];
+        calories = new int[initialCapacity];
+    }
+
+    /**
+     * Adds a product to the end of the batch. A {@link FoodProduct} must have its calories as a whole number, or none
+     * at all.
+     *
+     * @param product
+     *            The product to add
+     */
+    public void add(Product product) {
+        int productCalories = product instanceof FoodProduct ? ((FoodProduct) product).getCaloriesValue() : NO_CALORIES;
+        if (NO_CALORIES == productCalories && product instanceof FoodProduct
+                && null != ((FoodProduct) product).getCalories()) {
+            try {
+                productCalories = Integer.parseInt(((FoodProduct) product).getCalories());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("The calories of " + product.getName() + " aren't a whole number",
+                        e);
+            }
+        }
+        add(product.getName(), product.getDescription(), product.getPricePence(), productCalories);
+    }
+
+    /**
+     * Adds a product to the end of the batch from the values scraped for it, without creating a {@link Product}.
+     *
+     * @param name
+     *            The name of the product
+     * @param description
+     *            The description of the product
+     * @param productPricePence
+     *            The price per unit of the product in pence
+     * @param productCalories
+     *            The calories of the product, or {@link #NO_CALORIES} if it isn't a food product
+     */
+    public void add(String name, String description, long productPricePence, int productCalories) {
+        if (size == pricePence.length) {
+            grow();
+        }
+
+        nameIndexes[size] = indexOf(name);
+        descriptionIndexes[size] = indexOf(description);
+        pricePence[size] = productPricePence;
+        vatPence[size] = Product.calculateVat(productPricePence);
+        calories[size] = productCalories < 0 ? NO_CALORIES : productCalories;
+        size++;
+
+        totalPricePence = totalPricePence + productPricePence;
+        totalVatPence = totalVatPence + vatPence[size - 1];
+    }
+
+    /**
+     * Lets go of everything only needed whilst filling the batch, which are the lookup of the strings already held and
+     * any capacity beyond the products added. Products can still be added afterwards, at the cost of building the
+     * lookup again.
+     */
+    public void trimToSize() {
+        stringIndexes = null;
+        strings = Arrays.copyOf(strings, stringCount);
+        nameIndexes = Arrays.copyOf(nameIndexes, size);
+        descriptionIndexes = Arrays.copyOf(descriptionIndexes, size);
+        pricePence = Arrays.copyOf(pricePence, size);
+        vatPence = Arrays.copyOf(vatPence, size);
+        calories = Arrays.copyOf(calories, size);
+    }
+
+    /**
+     * Gets the number of products in the batch.
+     *
+     * @return The number of products
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of distinct names and descriptions held for the products in the batch.
+     *
+     * @return The number of distinct strings
+     */
+    public int distinctStringCount() {
+        return stringCount;
+    }
+
+    public String getName(int index) {
+        checkIndex(index);
+        return stringAt(nameIndexes[index]);
+    }
+
+    public String getDescription(int index) {
+        checkIndex(index);
+        return stringAt(descriptionIndexes[index]);
+    }
+
+    public long getPricePence(int index) {
+        checkIndex(index);
+        return pricePence[index];
+    }
+
+    public long getVatPence(int index) {
+        checkIndex(index);
+        return vatPence[index];
+    }
+
+    /**
+     * Gets the calories of a product in the batch.
+     *
+     * @param index
+     *            The index of the product
+     * @return The calories, or {@link #NO_CALORIES} if the product isn't a food product
+     */
+    public int getCalories(int index) {
+        checkIndex(index);
+        return calories[index];
+    }
+
+    public boolean isFoodProduct(int index) {
+        return NO_CALORIES != getCalories(index);
+    }
+
+    /**
+     * Creates a {@link Product}, or a {@link FoodProduct} if it has calories, from the values held for a product in the
+     * batch.
+     *
+     * @param index
+     *            The index of the product
+     * @return The product created
+     */
+    public Product getProduct(int index) {
+        if (isFoodProduct(index)) {
+            return new FoodProduct(getName(index), getDescription(index), pricePence[index], calories[index]);
+        }
+        return new Product(getName(index), getDescription(index), pricePence[index]);
+    }
+
+    public long getTotalPricePence() {
+        return totalPricePence;
+    }
+
+    public long getTotalVatPence() {
+        return totalVatPence;
+    }
+
+    private int indexOf(String value) {
+        if (null == value) {
+            return NO_STRING;
+        }
+        if (null == stringIndexes) {
+            stringIndexes = new HashMap<>(Math.max(DEFAULT_CAPACITY, stringCount * 2));
+            for (int i = 0; i < stringCount; i++) {
+                stringIndexes.put(strings[i], i);
+            }
+        }
+        Integer index = stringIndexes.get(value);
+        if (null != index) {
+            return index;
+        }
+
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, Math.max(DEFAULT_CAPACITY, stringCount * 2));
+        }
+        strings[stringCount] = value;
+        stringIndexes.put(value, stringCount);
+        return stringCount++;
+    }
+
+    private String stringAt(int index) {
+        return NO_STRING == index ? null : strings[index];
+    }
+
+    private void grow() {
+        int capacity = Math.max(DEFAULT_CAPACITY, pricePence.length + (pricePence.length >> 1));
+        nameIndexes = Arrays.copyOf(nameIndexes, capacity);
+        descriptionIndexes = Arrays.copyOf(descriptionIndexes, capacity);
+        pricePence = Arrays.copyOf(pricePence, capacity);
+        vatPence = Arrays.copyOf(vatPence, capacity);
+        calories = Arrays.copyOf(calories, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside a batch of " + size + " products");
+        }
+    }
+
+}
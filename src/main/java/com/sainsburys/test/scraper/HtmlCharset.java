@@ -0,0 +1,104 @@
+package com.sainsburys.test.scraper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class will detect the character set of a html page the server didn't give one for, from the first bytes of the
+ * page, in the same way as a browser or Jsoup reading the whole page would. A byte order mark is used first, then the
+ * character set given by a meta tag, either <code>&lt;meta charset="..."&gt;</code> or the content type given by
+ * <code>&lt;meta http-equiv="Content-Type" content="...; charset=..."&gt;</code>. Only the start of the page is looked
+ * at, so it can still be parsed as it is read.
+ */
+public final class HtmlCharset {
+
+    /**
+     * The most bytes from the start of a page looked at for a meta tag, the same as Jsoup looks at.
+     */
+    public static final int PREFIX_BYTES = 5 * 1024;
+
+    // Matches the character set of either form of meta tag, as the content of the http-equiv form ends with it too
+    private static final Pattern META_CHARSET = Pattern
+            .compile("<meta\\s[^>]*?charset\\s*=\\s*[\"']?\\s*([a-z0-9._:-]+)", Pattern.CASE_INSENSITIVE);
+
+    private HtmlCharset() {
+    }
+
+    /**
+     * Detects the character set of a page from its first bytes, leaving the stream at the start of its html, after
+     * any byte order mark.
+     *
+     * @param in
+     *            The body of the page, which must support mark and reset
+     * @param fallback
+     *            The character set to use if the page doesn't give a supported one
+     * @return The character set of the page
+     * @throws IOException
+     *             If the start of the page couldn't be read
+     */
+    public static Charset detect(InputStream in, Charset fallback) throws IOException {
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("The start of the page must be able to be read again");
+        }
+        in.mark(PREFIX_BYTES);
+        byte[] prefix = in.readNBytes(PREFIX_BYTES);
+        in.reset();
+
+        if (startsWith(prefix, 0xEF, 0xBB, 0xBF)) {
+            in.skipNBytes(3);
+            return StandardCharsets.UTF_8;
+        }
+        if (startsWith(prefix, 0xFE, 0xFF)) {
+            in.skipNBytes(2);
+            return StandardCharsets.UTF_16BE;
+        }
+        if (startsWith(prefix, 0xFF, 0xFE)) {
+            in.skipNBytes(2);
+            return StandardCharsets.UTF_16LE;
+        }
+
+        // Every character set a meta tag can be read in maps ASCII to the same bytes as ISO-8859-1
+        Matcher meta = META_CHARSET.matcher(new String(prefix, StandardCharsets.ISO_8859_1));
+        if (meta.find()) {
+            Charset charset = forName(meta.group(1));
+            if (null != charset) {
+                return charset;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Gets the character set with the name given by a meta tag, ignoring those the tag couldn't have been read in.
+     */
+    private static Charset forName(String name) {
+        String upperName = name.toUpperCase(Locale.ROOT);
+        if (upperName.startsWith("UTF-16") || upperName.startsWith("UTF-32")) {
+            // A page read as ASCII can't be in these, so a server or editor got it wrong, as the html spec says
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean startsWith(byte[] prefix, int... bytes) {
+        if (prefix.length < bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if ((prefix[i] & 0xFF) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
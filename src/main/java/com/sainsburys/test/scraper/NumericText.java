@@ -0,0 +1,123 @@
+package com.sainsburys.test.scraper;
+
+/**
+ * This class will pull the first number out of some scraped text, such as "&pound;1.75/unit" or "52kcal", by scanning
+ * its characters once. Anything around the number is skipped, as are commas between its digits, and the value is given
+ * back as a primitive rather than as a cleaned up string that would need parsing again.
+ */
+public final class NumericText {
+
+    /**
+     * Returned when the text has no number in it, or one too large to be held.
+     */
+    public static final int NOT_FOUND = -1;
+
+    // Numbers with more digits than these can't be held without overflowing
+    private static final int MAX_PENCE_DIGITS = 16;
+
+    private static final int MAX_WHOLE_NUMBER_DIGITS = 9;
+
+    private NumericText() {
+    }
+
+    /**
+     * Finds the first amount of money in the text, in pounds, and gives it back in pence. Only the first two decimal
+     * places are kept, rounding half up on the third.
+     *
+     * @param text
+     *            The text holding the amount, such as "&pound;1.75/unit"
+     * @return The amount in pence, or {@link #NOT_FOUND} if there isn't one
+     */
+    public static long extractPence(CharSequence text) {
+        int length = text.length();
+        int i = skipToNumber(text, true);
+
+        long pence = 0;
+        int digits = 0;
+        // The number of decimal places read so far, or -1 until the decimal point is found
+        int decimals = -1;
+        boolean roundUp = false;
+
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (decimals < 2) {
+                    pence = pence * 10 + (c - '0');
+                    if (++digits > MAX_PENCE_DIGITS) {
+                        return NOT_FOUND;
+                    }
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                } else if (2 == decimals) {
+                    roundUp = c >= '5';
+                    decimals++;
+                }
+            } else if ('.' == c && decimals < 0 && isDigit(text, i + 1)) {
+                decimals = 0;
+            } else if (',' != c || decimals >= 0 || !isDigit(text, i + 1)) {
+                break;
+            }
+        }
+
+        if (0 == digits) {
+            return NOT_FOUND;
+        }
+        for (int scale = Math.max(decimals, 0); scale < 2; scale++) {
+            pence *= 10;
+        }
+        return roundUp ? pence + 1 : pence;
+    }
+
+    /**
+     * Finds the first whole number in the text.
+     *
+     * @param text
+     *            The text holding the number, such as "52kcal"
+     * @return The number, or {@link #NOT_FOUND} if there isn't one
+     */
+    public static int extractWholeNumber(CharSequence text) {
+        int length = text.length();
+        int i = skipToNumber(text, false);
+
+        int number = 0;
+        int digits = 0;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                number = number * 10 + (c - '0');
+                if (++digits > MAX_WHOLE_NUMBER_DIGITS) {
+                    return NOT_FOUND;
+                }
+            } else if (',' != c || !isDigit(text, i + 1)) {
+                break;
+            }
+        }
+
+        return 0 == digits ? NOT_FOUND : number;
+    }
+
+    /**
+     * Finds where the first number in the text starts, which may be a decimal point followed by a digit if decimals
+     * are allowed.
+     */
+    private static int skipToNumber(CharSequence text, boolean decimals) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if ((c >= '0' && c <= '9') || (decimals && '.' == c && isDigit(text, i + 1))) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isDigit(CharSequence text, int index) {
+        if (index >= text.length()) {
+            return false;
+        }
+        char c = text.charAt(index);
+        return c >= '0' && c <= '9';
+    }
+
+}
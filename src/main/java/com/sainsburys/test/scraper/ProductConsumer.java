@@ -0,0 +1,24 @@
+package com.sainsburys.test.scraper;
+
+import java.io.IOException;
+
+import com.sainsburys.test.products.Product;
+
+/**
+ * Is handed each product as it is scraped from a web page, so that it can be used, such as written out, without
+ * waiting for the rest of the products on the page.
+ */
+@FunctionalInterface
+public interface ProductConsumer {
+
+    /**
+     * Handles a product scraped from the web page.
+     * 
+     * @param product
+     *            The product scraped
+     * @throws IOException
+     *             If the product couldn't be handled, which stops the scrape
+     */
+    void accept(Product product) throws IOException;
+
+}
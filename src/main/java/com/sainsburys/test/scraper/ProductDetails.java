@@ -0,0 +1,27 @@
+package com.sainsburys.test.scraper;
+
+/**
+ * This class will hold the values scraped from a products further information page, which are not shown on the main
+ * web page. It cannot be changed once created, so it can safely be handed between threads.
+ */
+public final class ProductDetails {
+
+    private final String description;
+
+    // The calories in kcal, or NumericText.NOT_FOUND if the page has none
+    private final int calories;
+
+    public ProductDetails(String description, int calories) {
+        this.description = description;
+        this.calories = calories;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getCalories() {
+        return calories;
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.sainsburys.test.scraper;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * This class will hold the details scraped from each products further information page, keyed by the URL of that
+ * page, so that a product shared between web pages or scraped again is not fetched and parsed a second time. The cache
+ * is bounded, evicting the least recently used details once full, and details are only kept for the time given before
+ * they are fetched again. It can be shared between scrapers and threads, so it lasts for as long as the JVM does.
+ */
+public class ProductDetailsCache {
+
+    private final int maxEntries;
+
+    private final long timeToLiveNanos;
+
+    // Gives the current time in nanoseconds, which can be swapped out to test the expiry of details
+    private final LongSupplier nanoClock;
+
+    // Kept in access order, so the eldest entry is the least recently used
+    private final Map<String, CachedDetails> detailsByUrl;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    /**
+     * Creates a cache holding details for up to the number of pages given, each for the time given.
+     *
+     * @param maxEntries
+     *            The maximum number of product detail pages to hold details for
+     * @param timeToLive
+     *            How long the details of a page are held for before being fetched again
+     * @param unit
+     *            The unit of the time to live
+     */
+    public ProductDetailsCache(int maxEntries, long timeToLive, TimeUnit unit) {
+        this(maxEntries, timeToLive, unit, System::nanoTime);
+    }
+
+    ProductDetailsCache(int maxEntries, long timeToLive, TimeUnit unit, LongSupplier nanoClock) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The cache must be able to hold at least one product's details");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("The details must be held for some time to be cached");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.nanoClock = nanoClock;
+        this.detailsByUrl = new LinkedHashMap<String, CachedDetails>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedDetails> eldest) {
+                if (size() > ProductDetailsCache.this.maxEntries) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the details held for a products further information page, if they haven't expired.
+     *
+     * @param itemPageUrl
+     *            The URL of the products further information page
+     * @return The details held for the page, or null if they need to be fetched
+     */
+    public synchronized ProductDetails get(URL itemPageUrl) {
+        CachedDetails cached = getUnexpired(itemPageUrl);
+        if (null == cached) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return cached.details;
+    }
+
+    /**
+     * Looks again for the details of a page whose lookup has just missed, as another thread may have held them since.
+     * Details found turn that miss into a hit, so the misses stay the number of pages fetched.
+     *
+     * @param itemPageUrl
+     *            The URL of the products further information page
+     * @return The details held for the page, or null if they still need to be fetched
+     */
+    synchronized ProductDetails getAfterMiss(URL itemPageUrl) {
+        CachedDetails cached = getUnexpired(itemPageUrl);
+        if (null == cached) {
+            return null;
+        }
+        missCount--;
+        hitCount++;
+        return cached.details;
+    }
+
+    private CachedDetails getUnexpired(URL itemPageUrl) {
+        // The string form is used as URL equality resolves the host names
+        String key = itemPageUrl.toString();
+        CachedDetails cached = detailsByUrl.get(key);
+        if (null != cached && nanoClock.getAsLong() - cached.cachedAt >= timeToLiveNanos) {
+            detailsByUrl.remove(key);
+            cached = null;
+        }
+        return cached;
+    }
+
+    /**
+     * Holds the details scraped from a products further information page, replacing any held for it already.
+     *
+     * @param itemPageUrl
+     *            The URL of the products further information page
+     * @param details
+     *            The details scraped from the page
+     */
+    public synchronized void put(URL itemPageUrl, ProductDetails details) {
+        detailsByUrl.put(itemPageUrl.toString(), new CachedDetails(details, nanoClock.getAsLong()));
+    }
+
+    public synchronized int size() {
+        return detailsByUrl.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Gets the proportion of lookups that found details in the cache.
+     *
+     * @return The hit rate between 0 and 1, or 0 if there have been no lookups
+     */
+    public synchronized double getHitRate() {
+        long lookups = hitCount + missCount;
+        return 0 == lookups ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ProductDetailsCache[size=" + detailsByUrl.size() + ", hits=" + hitCount + ", misses=" + missCount
+                + ", evictions=" + evictionCount + "]";
+    }
+
+    private static final class CachedDetails {
+
+        private final ProductDetails details;
+
+        private final long cachedAt;
+
+        private CachedDetails(ProductDetails details, long cachedAt) {
+            this.details = details;
+            this.cachedAt = cachedAt;
+        }
+
+    }
+
+}
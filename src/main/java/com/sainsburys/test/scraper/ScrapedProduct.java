@@ -0,0 +1,65 @@
+package com.sainsburys.test.scraper;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+
+/**
+ * This class will hold the values scraped for a single product element and its further details page. It cannot be
+ * changed once created, so it can safely be handed between the threads scraping a web page.
+ */
+public final class ScrapedProduct {
+
+    private final String name;
+
+    private final String description;
+
+    // The price in pence, or NumericText.NOT_FOUND if none was scraped
+    private final long pricePence;
+
+    // The calories in kcal, or NumericText.NOT_FOUND if none were scraped
+    private final int calories;
+
+    public ScrapedProduct(String name, String description, long pricePence, int calories) {
+        this.name = name;
+        this.description = description;
+        this.pricePence = pricePence;
+        this.calories = calories;
+    }
+
+    /**
+     * Creates a product instance for the values that have been scrapped, a {@link FoodProduct} being created if
+     * calories were found.
+     * 
+     * @return The product, or null if no name was found for it
+     */
+    public Product toProduct() {
+        if (StringUtils.isNotBlank(name)) {
+            // A product without a price is given a price of 0
+            long price = NumericText.NOT_FOUND == pricePence ? 0 : pricePence;
+            if (NumericText.NOT_FOUND == calories) {
+                return new Product(name, description, price);
+            }
+            return new FoodProduct(name, description, price, calories);
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getPricePence() {
+        return pricePence;
+    }
+
+    public int getCalories() {
+        return calories;
+    }
+
+}
@@ -1,138 +1,849 @@
 package com.sainsburys.test.scraper;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.StringUtils;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
 import org.jsoup.select.Elements;
 
-import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.fetch.FetchedPage;
+import com.sainsburys.test.fetch.HttpClientPageFetcher;
+import com.sainsburys.test.fetch.PageFetcher;
+import com.sainsburys.test.metrics.CountingInputStream;
+import com.sainsburys.test.metrics.PageFetchEvent;
+import com.sainsburys.test.metrics.PageParseEvent;
+import com.sainsburys.test.metrics.Stage;
+import com.sainsburys.test.metrics.StageMetrics;
 import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
 
 /**
- * This class will perform the main scraping of a given web page to gather the necessary information.
+ * This class will perform the main scraping of a given web page to gather the necessary information. The values
+ * scraped for each product are returned rather than held on the instance, so a single scraper can be shared between
+ * threads.
  *
  */
 public class Scraper {
 
-    private URL webPageUrl;
+    // Shared by every scraper, so a product detail page wanted by more than one scrape at once is only read once
+    private static final SingleFlight<String, ProductDetails> DETAIL_PAGE_FLIGHTS = new SingleFlight<>();
 
-    private String name;
+    private final URL webPageUrl;
 
-    private String description;
+    // The number of product detail pages that can be fetched at the same time, 1 being one after another
+    private final int detailFetchThreads;
 
-    private String price;
+    // Runs the fetch of the web page and each product detail page when given, rather than a pool made per scrape
+    private final ExecutorService fetchExecutor;
 
-    private String calories;
+    // Fetches the html of each page, which is then parsed by Jsoup
+    private final PageFetcher pageFetcher;
+
+    // Holds the details already scraped from product detail pages when given, so they aren't fetched again
+    private final ProductDetailsCache detailsCache;
 
     public Scraper(String url) throws MalformedURLException {
+        this(url, 1);
+    }
+
+    /**
+     * Creates a scraper that will fetch and parse the product detail pages in parallel, using a worker pool bounded to
+     * the number of threads given. The products are still returned in the order they appear on the web page.
+     * 
+     * @param url
+     *            The URL of the page to be scrapped
+     * @param detailFetchThreads
+     *            The maximum number of product detail pages to fetch at the same time
+     * @throws MalformedURLException
+     */
+    public Scraper(String url, int detailFetchThreads) throws MalformedURLException {
+        this(url, HttpClientPageFetcher.shared(), detailFetchThreads);
+    }
+
+    /**
+     * Creates a scraper that will fetch each page through the fetcher given, fetching and parsing the product detail
+     * pages in parallel on a worker pool bounded to the number of threads given. The products are still returned in
+     * the order they appear on the web page.
+     * 
+     * @param url
+     *            The URL of the page to be scrapped
+     * @param pageFetcher
+     *            The fetcher used to get the html of each page
+     * @param detailFetchThreads
+     *            The maximum number of product detail pages to fetch at the same time
+     * @throws MalformedURLException
+     */
+    public Scraper(String url, PageFetcher pageFetcher, int detailFetchThreads) throws MalformedURLException {
+        this(url, detailFetchThreads, pageFetcher, null, null);
+        if (null == pageFetcher) {
+            throw new IllegalArgumentException("A fetcher is needed to get the pages with");
+        }
+        if (detailFetchThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed to fetch the product detail pages");
+        }
+    }
+
+    /**
+     * Creates a scraper that will run the fetch of the web page and of every product detail page as its own task on
+     * the executor given. Passing {@link Executors#newVirtualThreadPerTaskExecutor()} runs each fetch on its own virtual
+     * thread, so thousands of product detail pages can be in flight without sizing a thread pool. The executor is not
+     * shut down by the scraper, so it can be shared between scrapers.
+     * 
+     * @param url
+     *            The URL of the page to be scrapped
+     * @param fetchExecutor
+     *            The executor to run the page fetches on
+     * @throws MalformedURLException
+     */
+    public Scraper(String url, ExecutorService fetchExecutor) throws MalformedURLException {
+        this(url, HttpClientPageFetcher.shared(), fetchExecutor);
+    }
+
+    /**
+     * Creates a scraper that will fetch each page through the fetcher given, one after another.
+     * 
+     * @param url
+     *            The URL of the page to be scrapped
+     * @param pageFetcher
+     *            The fetcher used to get the html of each page
+     * @throws MalformedURLException
+     */
+    public Scraper(String url, PageFetcher pageFetcher) throws MalformedURLException {
+        this(url, 1, pageFetcher, null, null);
+        if (null == pageFetcher) {
+            throw new IllegalArgumentException("A fetcher is needed to get the pages with");
+        }
+    }
+
+    /**
+     * Creates a scraper that will fetch each page through the fetcher given, running each fetch as its own task on the
+     * executor given.
+     * 
+     * @param url
+     *            The URL of the page to be scrapped
+     * @param pageFetcher
+     *            The fetcher used to get the html of each page
+     * @param fetchExecutor
+     *            The executor to run the page fetches on
+     * @throws MalformedURLException
+     */
+    public Scraper(String url, PageFetcher pageFetcher, ExecutorService fetchExecutor) throws MalformedURLException {
+        this(url, 1, pageFetcher, fetchExecutor, null);
+        if (null == pageFetcher) {
+            throw new IllegalArgumentException("A fetcher is needed to get the pages with");
+        }
+        if (null == fetchExecutor) {
+            throw new IllegalArgumentException("An executor is needed to fetch the pages on");
+        }
+    }
+
+    /**
+     * Creates a scraper that will fetch each page through the fetcher given, looking up the details of each product in
+     * the cache given before fetching its detail page. The cache can be shared between scrapers, so that products
+     * found on more than one web page, or on a web page scraped again, are only fetched once.
+     * 
+     * @param url
+     *            The URL of the page to be scrapped
+     * @param pageFetcher
+     *            The fetcher used to get the html of each page
+     * @param fetchExecutor
+     *            The executor to run the page fetches on, or null to fetch them one after another
+     * @param detailsCache
+     *            The cache of details scraped from the product detail pages
+     * @throws MalformedURLException
+     */
+    public Scraper(String url, PageFetcher pageFetcher, ExecutorService fetchExecutor,
+            ProductDetailsCache detailsCache) throws MalformedURLException {
+        this(url, 1, pageFetcher, fetchExecutor, detailsCache);
+        if (null == pageFetcher) {
+            throw new IllegalArgumentException("A fetcher is needed to get the pages with");
+        }
+        if (null == detailsCache) {
+            throw new IllegalArgumentException("A cache is needed to hold the product details in");
+        }
+    }
+
+    private Scraper(String url, int detailFetchThreads, PageFetcher pageFetcher, ExecutorService fetchExecutor,
+            ProductDetailsCache detailsCache) throws MalformedURLException {
         try {
-            this.webPageUrl = new URL(url);
-        } catch (MalformedURLException e) {
+            this.webPageUrl = URI.create(url).toURL();
+        } catch (MalformedURLException | IllegalArgumentException e) {
             throw new MalformedURLException("The URL provided is malformed, Exitting program");
         }
+        this.detailFetchThreads = detailFetchThreads;
+        this.pageFetcher = pageFetcher;
+        this.fetchExecutor = fetchExecutor;
+        this.detailsCache = detailsCache;
     }
 
     /**
      * This method will take in a web page in the form of a URL and scrape the underlying html in order to pull out the
-     * key information for each of the products on the page.
+     * key information for each of the products on the page. The web page is parsed as it is read, so each product
+     * detail page starts being fetched as soon as its product has been found rather than once the whole page is loaded.
      * 
      * @param webPageUrl
      *            The URL of the page to be scrapped.
      * @throws IOException
      */
     public List<Product> scrapeWebPage() throws IOException {
-
         List<Product> productsFound = new ArrayList<>();
+        scrapeWebPage(productsFound::add);
+        return productsFound;
+    }
+
+    /**
+     * Scrapes the web page in the same way as {@link #scrapeWebPage()}, but holds the products found in a
+     * {@link ProductBatch} rather than as a list of objects. Each product is added to the batch as soon as it has been
+     * scraped, so only the columns of the batch are kept for the whole of a large catalogue.
+     * 
+     * @return The products found, in the order they appear on the web page
+     * @throws IOException
+     */
+    public ProductBatch scrapeWebPageToBatch() throws IOException {
+        ProductBatch batch = new ProductBatch();
+        scrapeWebPage(batch::add);
+        batch.trimToSize();
+        return batch;
+    }
+
+    /**
+     * Scrapes the web page in the same way as {@link #scrapeWebPage()}, handing each product to the consumer given in
+     * the order they appear on the web page as soon as it, and every product before it, has been scraped. Products are
+     * let go of once handed on, so the memory used doesn't grow with the number of products on the web page.
+     * 
+     * @param consumer
+     *            The consumer to hand each product to
+     * @throws IOException
+     *             If the web page couldn't be scraped, or the consumer failed to handle a product
+     */
+    public void scrapeWebPage(ProductConsumer consumer) throws IOException {
 
         try {
-            Document page;
+            if (null != fetchExecutor) {
+                // The web page is also read on the executor given, with each detail page submitted to it as found
+                handOnProducts(await(fetchExecutor.submit(() -> scrapeProductElementsAsRead(fetchExecutor, null))),
+                        consumer);
+                return;
+            }
 
-            // Creates a DOM object of the webpage for the given URL
-            page = Jsoup.connect(webPageUrl.toString()).get();
+            if (detailFetchThreads > 1) {
+                // Threads are only started by the pool as tasks are submitted, so a short page won't use them all
+                ExecutorService executor = Executors.newFixedThreadPool(detailFetchThreads);
+                try {
+                    handOnProducts(scrapeProductElementsAsRead(executor, null), consumer);
+                    return;
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+
+            handOnProducts(scrapeProductElementsAsRead(null, null), consumer);
+        } catch (IOException e) {
+            throw new IOException(e.getLocalizedMessage());
+        }
 
-            // Finds all elements in the DOM that have the 'product' class associated to them
-            Elements products = page.getElementsByClass("product");
+    }
 
-            for (Element product : products) {
+    /**
+     * Scrapes the web page in the same way as {@link #scrapeWebPage()}, but without blocking the calling thread. The
+     * products are given back in the order they appear on the web page once every product detail page has been read,
+     * and if any page can't be scraped the future fails straight away with the reason why.
+     * 
+     * @return The products scraped, once they all have been
+     */
+    public CompletableFuture<List<Product>> scrapeWebPageAsync() {
+        return scrapeAsync(null);
+    }
 
-                scrapeProductElement(product);
+    /**
+     * Publishes each product on the web page as soon as its detail page has been read, so that a subscriber can start
+     * on the first product whilst the rest are still being fetched. Products are published in the order their detail
+     * pages complete, rather than the order they appear on the web page. Each subscriber starts its own scrape of the
+     * web page.
+     * <p>
+     * Products are only fetched as fast as the subscriber requests them, beyond a buffer of
+     * {@link Flow#defaultBufferSize()} products, as a detail page that completes whilst the buffer is full waits for
+     * space before the next detail page is fetched on its thread. A subscriber that cancels stops any detail pages not
+     * yet started from being fetched.
+     * 
+     * @return The publisher of the products on the web page
+     */
+    public Flow.Publisher<Product> publishWebPage() {
+        return subscriber -> {
+            SubmissionPublisher<Product> publisher = new SubmissionPublisher<>();
+            publisher.subscribe(subscriber);
+
+            scrapeAsync(new ProductListener() {
+                @Override
+                public boolean isListening() {
+                    return publisher.hasSubscribers();
+                }
 
-                // Creates a product instance for the values that have just been scrapped
-                if (StringUtils.isNotBlank(name)) {
-                    if (StringUtils.isEmpty(calories)) {
-                        productsFound.add(new Product(name, description, price));
-                    } else {
-                        productsFound.add(new FoodProduct(name, description, price, calories));
+                @Override
+                public void productScraped(Product product) {
+                    publisher.submit(product);
+                }
+            }).whenComplete((products, failure) -> {
+                if (null != failure) {
+                    publisher.closeExceptionally(failure);
+                } else {
+                    publisher.close();
+                }
+            });
+        };
+    }
+
+    /**
+     * Scrapes the web page on the executor given to the scraper, or on a pool made for the scrape bounded to the
+     * number of detail fetch threads, without any thread waiting on another.
+     * 
+     * @param listener
+     *            The listener to give each product to as it is scraped, or null to collect them
+     * @return The products scraped in the order they appear on the web page, leaving out those given to the listener
+     */
+    private CompletableFuture<List<Product>> scrapeAsync(ProductListener listener) {
+        // The web page is read on one of the threads of the pool made for the scrape, which then goes on to fetch
+        // detail pages, so no more than the number of detail fetch threads are ever in flight
+        ExecutorService executor = null != fetchExecutor ? fetchExecutor
+                : Executors.newFixedThreadPool(detailFetchThreads);
+        CompletableFuture<List<Product>> scraped = new CompletableFuture<>();
+
+        supplyAsync(() -> scrapeProductElementsAsRead(executor, listener), executor)
+                .whenComplete((pendingProducts, failure) -> {
+                    if (null != failure) {
+                        scraped.completeExceptionally(failure);
+                        return;
+                    }
+
+                    for (CompletableFuture<Product> pendingProduct : pendingProducts) {
+                        pendingProduct.whenComplete((product, productFailure) -> {
+                            if (null != productFailure) {
+                                scraped.completeExceptionally(productFailure);
+                            }
+                        });
                     }
+                    CompletableFuture.allOf(pendingProducts.toArray(new CompletableFuture<?>[0]))
+                            .thenRun(() -> scraped.complete(joinProducts(pendingProducts)));
+                });
+
+        if (executor != fetchExecutor) {
+            scraped.whenComplete((products, failure) -> {
+                if (null != failure) {
+                    executor.shutdownNow();
+                } else {
+                    executor.shutdown();
                 }
+            });
+        }
+        return scraped;
+    }
 
-                // Sets the fields back to null for the next product found
-                name = null;
-                description = null;
-                price = null;
-                calories = null;
+    /**
+     * Reads the web page and finds all elements that have the 'product' class associated to them as the html is
+     * parsed. The name, price and forward link are taken from each product element once its closing tag has been
+     * read, and the scrape of its detail page is handed straight to the executor given, overlapping the rest of the
+     * web page being read. Without an executor, the detail pages are scraped one after another as each product is
+     * waited for, once the web page has been read.
+     * 
+     * @param executor
+     *            The executor to scrape the product detail pages on, or null to scrape them on this thread
+     * @param listener
+     *            The listener to give each product to as it is scraped, or null to only return them
+     * @return The pending products, in the order they appear on the web page
+     * @throws IOException
+     */
+    private List<CompletableFuture<Product>> scrapeProductElementsAsRead(ExecutorService executor,
+            ProductListener listener) throws IOException {
+        List<CompletableFuture<Product>> pendingProducts = new ArrayList<>();
+
+        readPage(webPageUrl, Stage.LISTING_FETCH, Stage.LISTING_PARSE, parser -> {
+            parseProductElements(parser, executor, listener, pendingProducts);
+            return null;
+        });
 
+        return pendingProducts;
+    }
+
+    /**
+     * Takes the name, price and forward link from each product element as the web page is parsed, handing the scrape
+     * of its detail page to the executor given, or deferring it until it is waited for without one.
+     * 
+     * @param parser
+     *            The parser reading the web page
+     * @param executor
+     *            The executor to scrape the product detail pages on, or null to scrape them on this thread
+     * @param listener
+     *            The listener to give each product to as it is scraped, or null to only return them
+     * @param pendingProducts
+     *            The pending products to add each product found to, in the order they appear on the web page
+     */
+    private void parseProductElements(StreamParser parser, ExecutorService executor, ProductListener listener,
+            List<CompletableFuture<Product>> pendingProducts) {
+        Iterator<Element> elements = parser.iterator();
+        while (elements.hasNext()) {
+            Element productElement = elements.next();
+            if (!productElement.hasClass("product")) {
+                continue;
+            }
+
+            // The element is only read here, as the parser carries on adding to the rest of the page, and the name and
+            // forward link are both taken from the one link to its details rather than selecting it for each
+            Element linkToDetails = getLinkToDetails(productElement);
+            String name = null != linkToDetails ? linkToDetails.text() : null;
+            String link = null != linkToDetails ? linkToDetails.attr("href") : null;
+            long pricePence = getPricePence(productElement);
+            productElement.remove();
+
+            if (StringUtils.isBlank(name)) {
+                // A product can't be created without a name, so there is no need to fetch its detail page
+                continue;
+            }
+
+            Callable<Product> scrape = () -> {
+                if (null == listener) {
+                    return scrapeProductDetails(name, link, pricePence).toProduct();
+                }
+                if (listener.isListening()) {
+                    Product product = scrapeProductDetails(name, link, pricePence).toProduct();
+                    if (null != product) {
+                        listener.productScraped(product);
+                    }
+                }
+                // Products given to the listener aren't held on to, so they can be collected once handled
+                return null;
+            };
+
+            if (null != executor) {
+                pendingProducts.add(supplyAsync(scrape, executor));
+            } else {
+                pendingProducts.add(new DeferredProduct(scrape));
+            }
+        }
+    }
+
+    /**
+     * Runs a task on the executor given, completing the future returned with its result or the reason it failed.
+     * 
+     * @param task
+     *            The task to run
+     * @param executor
+     *            The executor to run it on
+     * @return The future result of the task
+     */
+    private static <T> CompletableFuture<T> supplyAsync(Callable<T> task, Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> complete(result, task));
+        return result;
+    }
+
+    private static <T> void complete(CompletableFuture<T> result, Callable<T> task) {
+        try {
+            result.complete(task.call());
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Waits for each of the products to be scraped, handing them on in the order given regardless of the order in
+     * which their detail pages complete. Any product that couldn't be created from the values scraped is left out.
+     * 
+     * @param pendingProducts
+     *            The products being scraped
+     * @param consumer
+     *            The consumer to hand each product to
+     * @throws IOException
+     */
+    private static void handOnProducts(List<CompletableFuture<Product>> pendingProducts, ProductConsumer consumer)
+            throws IOException {
+        for (int i = 0; i < pendingProducts.size(); i++) {
+            CompletableFuture<Product> pendingProduct = pendingProducts.get(i);
+            if (pendingProduct instanceof DeferredProduct) {
+                ((DeferredProduct) pendingProduct).scrape();
+            }
+
+            Product productFound = await(pendingProduct);
+            // The product is no longer held once handed on, so it can be collected as soon as the consumer is done
+            pendingProducts.set(i, null);
+            if (null != productFound) {
+                consumer.accept(productFound);
+            }
+        }
+    }
+
+    /**
+     * Collects the products that have all been scraped, in the order given. Any product that couldn't be created from
+     * the values scraped is left out.
+     * 
+     * @param scrapedProducts
+     *            The products that have been scraped
+     * @return The products scraped
+     */
+    private static List<Product> joinProducts(List<CompletableFuture<Product>> scrapedProducts) {
+        List<Product> productsFound = new ArrayList<>();
+        for (CompletableFuture<Product> scrapedProduct : scrapedProducts) {
+            Product productFound = scrapedProduct.join();
+            if (null != productFound) {
+                productsFound.add(productFound);
             }
-        } catch (IOException e) {
-            throw new IOException(e.getLocalizedMessage());
         }
 
         return productsFound;
+    }
 
+    /**
+     * Waits for a task that is scraping a page to complete, passing on the reason it failed as an
+     * {@link IOException}.
+     * 
+     * @param pending
+     *            The task to wait for
+     * @return The result of the task
+     * @throws IOException
+     */
+    private static <T> T await(Future<T> pending) throws IOException {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted whilst scraping the web page");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getLocalizedMessage());
+        }
     }
 
     /**
-     * For each product element found, we need to scrape the relevant information, in this case being the name,
-     * description, price and number of calories (if applicable).
+     * For each product found, we need to scrape the rest of the relevant information from its further information
+     * page, in this case being the description and number of calories (if applicable).
+     * 
+     * @param name
+     *            The name of the product
+     * @param link
+     *            The relative URL path to the further product information page
+     * @param pricePence
+     *            The price per unit of the product in pence
+     * @return The values scraped for the product
+     * @throws IOException
+     */
+    protected ScrapedProduct scrapeProductDetails(String name, String link, long pricePence) throws IOException {
+        try {
+            // Creates a new url using the relative link retrieved from the name link
+            URL itemPageUrl = resolve(link);
+
+            // Reads the products further information page in order to get the additional information that wasn't
+            // present on the main page, unless it has already been read or is being read by another thread
+            ProductDetails details = null != detailsCache ? detailsCache.get(itemPageUrl) : null;
+            if (null == details) {
+                details = DETAIL_PAGE_FLIGHTS.load(itemPageUrl.toString(), () -> {
+                    // Another thread may have finished reading the page between the lookup above and this flight
+                    ProductDetails detailsHeld = null != detailsCache ? detailsCache.getAfterMiss(itemPageUrl) : null;
+                    if (null != detailsHeld) {
+                        return detailsHeld;
+                    }
+                    ProductDetails detailsRead = getProductDetails(itemPageUrl);
+                    if (null != detailsCache) {
+                        detailsCache.put(itemPageUrl, detailsRead);
+                    }
+                    return detailsRead;
+                });
+            }
+            return new ScrapedProduct(name, details.getDescription(), pricePence, details.getCalories());
+        } catch (IOException e) {
+            throw new IOException(e.getMessage());
+        }
+
+    }
+
+    /**
+     * Resolves a link found on the web page against the URL of the web page.
+     * 
+     * @param link
+     *            The link, which may be relative
+     * @return The URL the link points to
+     * @throws MalformedURLException
+     *             If the link isn't a valid URL
+     */
+    private URL resolve(String link) throws MalformedURLException {
+        try {
+            return webPageUrl.toURI().resolve(link).toURL();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new MalformedURLException("The link " + link + " on " + webPageUrl + " is malformed");
+        }
+    }
+
+    /**
+     * Reads the description and calories from a products further information page. Rather than building a DOM of the
+     * whole page, the html is parsed as it is read from the connection and reading stops as soon as both values have
+     * been found, so the rest of the page is never downloaded or parsed.
+     * 
+     * @param itemPageUrl
+     *            The URL of the products further information page
+     * @return The details found on the page
+     * @throws IOException
+     */
+    protected ProductDetails getProductDetails(URL itemPageUrl) throws IOException {
+        return readPage(itemPageUrl, Stage.DETAIL_FETCH, Stage.DETAIL_PARSE, this::parseProductDetails);
+    }
+
+    /**
+     * Reads the elements of a products further information page as it is parsed, until both the description and
+     * calories have been found or the page has ended.
+     * 
+     * @param parser
+     *            The parser reading the page
+     * @return The details found on the page
+     */
+    private ProductDetails parseProductDetails(StreamParser parser) {
+        StageMetrics extractionMetrics = Stage.FIELD_EXTRACTION.getMetrics();
+
+        Element descriptionHeader = null;
+        String description = null;
+        int calories = NumericText.NOT_FOUND;
+
+        // Elements are given back once their closing tag has been read, so each one is complete when checked
+        Iterator<Element> elements = parser.iterator();
+        while ((null == description || NumericText.NOT_FOUND == calories) && elements.hasNext()) {
+            Element element = elements.next();
+
+            if (null == descriptionHeader && element.is("h3:contains(Description)")) {
+                descriptionHeader = element;
+            } else if (null != descriptionHeader && null == description
+                    && element.previousElementSibling() == descriptionHeader) {
+                // The description is the element after the header, so both are now held by their parent
+                long extractionStarted = extractionMetrics.start();
+                try {
+                    description = getDescription(element.parent());
+                    extractionMetrics.stop(extractionStarted);
+                } catch (RuntimeException e) {
+                    extractionMetrics.fail(extractionStarted);
+                    throw e;
+                }
+            } else if (NumericText.NOT_FOUND == calories && element.hasClass("nutritionTable")) {
+                long extractionStarted = extractionMetrics.start();
+                try {
+                    calories = getCalories(element);
+                    extractionMetrics.stop(extractionStarted);
+                } catch (RuntimeException e) {
+                    extractionMetrics.fail(extractionStarted);
+                    throw e;
+                }
+            }
+        }
+
+        return new ProductDetails(description, calories);
+    }
+
+    /**
+     * Fetches a page and parses it as its html is read, handing the parser to the reader given. The fetch and the parse
+     * are each timed against their stage, with the bytes read from the page counted against the fetch, and each is
+     * recorded as a Flight Recorder event when those are being recorded.
      * 
-     * @param productElement
-     *            The html element of the product
      * @param url
-     *            The url of the page it was retrieved from
+     *            The URL of the page to read
+     * @param fetchStage
+     *            The stage fetching the page
+     * @param parseStage
+     *            The stage parsing the page
+     * @param reader
+     *            Reads what is wanted from the page as it is parsed
+     * @return What the reader found on the page
      * @throws IOException
      */
-    protected void scrapeProductElement(Element productElement) throws IOException {
-        String link = setNameAndGetForwardLink(productElement);
-        price = getPrice(productElement);
+    private <T> T readPage(URL url, Stage fetchStage, Stage parseStage, Function<StreamParser, T> reader)
+            throws IOException {
+        StageMetrics parseMetrics = parseStage.getMetrics();
+        PageFetchEvent fetchEvent = new PageFetchEvent();
+        PageParseEvent parseEvent = new PageParseEvent();
+
+        FetchedPage fetched = fetch(url, fetchStage, fetchEvent);
+        CountingInputStream body = fetchStage.getMetrics().countBytes(fetched.getBody());
+        IOException readFailure = null;
+        boolean parsed = false;
+        parseEvent.begin();
+        try (FetchedPage page = fetched; StreamParser parser = parse(page, body, url)) {
+            long parseStarted = parseMetrics.start();
+            try {
+                T result = reader.apply(parser);
+                parseMetrics.stop(parseStarted);
+                parsed = true;
+                return result;
+            } catch (RuntimeException e) {
+                parseMetrics.fail(parseStarted);
+                throw e;
+            }
+        } catch (UncheckedIOException e) {
+            readFailure = e.getCause();
+            throw readFailure;
+        } finally {
+            parseEvent.end();
+            if (parseEvent.shouldCommit()) {
+                parseEvent.setUrl(url.toString());
+                parseEvent.setStage(parseStage.getMetrics().getName());
+                parseEvent.setSucceeded(parsed);
+                parseEvent.commit();
+            }
+            commit(fetchEvent, url, fetchStage, body.getCount(), readFailure);
+        }
+    }
 
-        Document itemPage;
+    /**
+     * Fetches a page through the page fetcher, timing it against the stage given. The event is ended once the page
+     * has been fetched, but only committed here if the fetch failed, as the bytes of the page are yet to be read.
+     * 
+     * @param url
+     *            The URL of the page to fetch
+     * @param fetchStage
+     *            The stage fetching the page
+     * @param fetchEvent
+     *            The event recording the fetch
+     * @return The fetched page
+     * @throws IOException
+     */
+    private FetchedPage fetch(URL url, Stage fetchStage, PageFetchEvent fetchEvent) throws IOException {
+        StageMetrics fetchMetrics = fetchStage.getMetrics();
+        fetchEvent.begin();
+        long started = fetchMetrics.start();
         try {
-            // Creates a new url using the relative link retrieved from the name link
-            URL itemPageUrl = new URL(webPageUrl, link);
+            FetchedPage page = pageFetcher.fetch(url);
+            fetchMetrics.stop(started);
+            fetchEvent.end();
+            return page;
+        } catch (IOException | RuntimeException e) {
+            fetchMetrics.fail(started);
+            commit(fetchEvent, url, fetchStage, 0, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Commits the event recording the fetch of a page, only filling in its values if it is being recorded.
+     * 
+     * @param fetchEvent
+     *            The event recording the fetch
+     * @param url
+     *            The URL of the page fetched
+     * @param fetchStage
+     *            The stage fetching the page
+     * @param bytes
+     *            The bytes read from the page
+     * @param failure
+     *            Why the page couldn't be fetched or read, or null if it was
+     */
+    private static void commit(PageFetchEvent fetchEvent, URL url, Stage fetchStage, long bytes, Exception failure) {
+        if (fetchEvent.shouldCommit()) {
+            fetchEvent.setUrl(url.toString());
+            fetchEvent.setStage(fetchStage.getMetrics().getName());
+            fetchEvent.setBytes(bytes);
+            fetchEvent.setSucceeded(null == failure);
+            fetchEvent.setFailure(null != failure ? failure.toString() : null);
+            fetchEvent.commit();
+        }
+    }
 
-            // Creates a new DOM Document of the products further information page in order to get the
-            // additional information that wasn't present on the main page
-            itemPage = Jsoup.connect(itemPageUrl.toString()).get();
-            description = getDescription(itemPage);
-            calories = getCalories(itemPage);
+    /**
+     * Starts parsing a fetched page as its html is read, giving back each element once it is complete.
+     * 
+     * @param page
+     *            The fetched page
+     * @param body
+     *            The body of the page, counting the bytes read from it
+     * @param url
+     *            The URL of the page, used to resolve relative links
+     * @return The parser reading the page
+     */
+    private static StreamParser parse(FetchedPage page, InputStream body, URL url) {
+        try {
+            InputStream html = new BufferedInputStream(body);
+            return new StreamParser(Parser.htmlParser()).parse(new InputStreamReader(html, getCharset(page, html)),
+                    url.toString());
         } catch (IOException e) {
-            throw new IOException(e.getMessage());
+            throw new UncheckedIOException(e);
         }
+    }
 
+    /**
+     * Gets the character set to read a fetched page with. If the server didn't give one that is supported, it is
+     * detected from the start of the html, falling back to UTF-8 if the page doesn't give one either.
+     * 
+     * @param page
+     *            The fetched page
+     * @param html
+     *            The body of the page, which is left at the start of its html
+     * @return The character set of the page
+     * @throws IOException
+     *             If the start of the page couldn't be read
+     */
+    private static Charset getCharset(FetchedPage page, InputStream html) throws IOException {
+        if (null != page.getCharset()) {
+            try {
+                return Charset.forName(page.getCharset());
+            } catch (IllegalArgumentException e) {
+                // Falls through to detecting it for a character set that is unknown
+            }
+        }
+        return HtmlCharset.detect(html, StandardCharsets.UTF_8);
     }
 
     /**
-     * Parses a html element representing a product to pull out the name and the forwarding link to the products further
+     * Parses a html element representing a product to pull out the name of the product from the link to its further
      * details page.
      * 
      * @param productElement
      *            The html element from the DOM of a product
+     * @return The name of the product, or null if there is no link to its details
+     */
+    protected String getName(Element productElement) {
+        Element linkToDetails = getLinkToDetails(productElement);
+        return null != linkToDetails ? linkToDetails.text() : null;
+    }
+
+    /**
+     * Parses a html element representing a product to pull out the forwarding link to the products further details
+     * page.
+     * 
+     * @param productElement
+     *            The html element from the DOM of a product
      * @return The relative URl path to the further product information page
      */
-    protected String setNameAndGetForwardLink(Element productElement) {
-        Elements linksToDetails = productElement.select("a[href]");
-        if (!linksToDetails.isEmpty()) {
-            name = linksToDetails.get(0).text();
-            return linksToDetails.get(0).attr("href");
-        }
-        return null;
+    protected String getForwardLink(Element productElement) {
+        Element linkToDetails = getLinkToDetails(productElement);
+        return null != linkToDetails ? linkToDetails.attr("href") : null;
+    }
+
+    /**
+     * Parses a html element representing a product to pull out the link to its further details page, which gives
+     * both the name of the product and the forwarding link.
+     * 
+     * @param productElement
+     *            The html element from the DOM of a product
+     * @return The first link within the product, or null if there is no link to its details
+     */
+    protected Element getLinkToDetails(Element productElement) {
+        return productElement.select("a[href]").first();
     }
 
     /**
@@ -140,14 +851,14 @@ public class Scraper {
      * 
      * @param productElement
      *            The html DOM object for the product
-     * @return The price per unit of the product
+     * @return The price per unit of the product in pence, or {@link NumericText#NOT_FOUND} if not present
      */
-    protected String getPrice(Element productElement) {
+    protected long getPricePence(Element productElement) {
         Element pricing = productElement.select("p.pricePerUnit").first();
         if (null != pricing) {
-            return pricing.text().replaceAll("[^0-9.]", "");
+            return NumericText.extractPence(pricing.text());
         }
-        return null;
+        return NumericText.NOT_FOUND;
     }
 
     /**
@@ -155,10 +866,10 @@ public class Scraper {
      * information page. If there are multiple lines to the description, only the first line is returned.
      * 
      * @param itemPage
-     *            The html DOM of the products further product details page
+     *            The html DOM of the products further product details page, or the part of it holding the description
      * @return The description of the product
      */
-    protected String getDescription(Document itemPage) {
+    protected String getDescription(Element itemPage) {
 
         Element descElem = itemPage.select("h3:contains(Description)").first();
         if (null != descElem && !descElem.siblingElements().isEmpty()) {
@@ -173,23 +884,65 @@ public class Scraper {
      * further information page.
      * 
      * @param itemPage
-     *            The html DOM of the products further product details page
-     * @return The amount of calories for the product as plain numbers, or null if not present.
+     *            The html DOM of the products further product details page, or the part of it holding the nutrition
+     *            table
+     * @return The amount of calories for the product, or {@link NumericText#NOT_FOUND} if not present.
      */
-    protected String getCalories(Document itemPage) {
+    protected int getCalories(Element itemPage) {
 
         Elements nutritionTable = itemPage.getElementsByClass("nutritionTable");
 
         if (!nutritionTable.isEmpty()) {
             for (Element row : nutritionTable.first().select("th")) {
                 if (row.text().equals("Energy") && !row.parent().siblingElements().isEmpty()) {
-                    return row.parent().nextElementSibling().child(0).text().replaceAll("[^0-9]", "");
+                    return NumericText.extractWholeNumber(row.parent().nextElementSibling().child(0).text());
                 } else if (row.text().equals("Energy kcal") && !row.siblingElements().isEmpty()) {
-                    return row.nextElementSibling().text().replaceAll("[^0-9]", "");
+                    return NumericText.extractWholeNumber(row.nextElementSibling().text());
                 }
             }
         }
-        return null;
+        return NumericText.NOT_FOUND;
+    }
+
+    /**
+     * A product whose detail page is only scraped once it is waited for, on the thread waiting for it.
+     */
+    private static final class DeferredProduct extends CompletableFuture<Product> {
+
+        private final Callable<Product> scrape;
+
+        private DeferredProduct(Callable<Product> scrape) {
+            this.scrape = scrape;
+        }
+
+        private void scrape() {
+            if (!isDone()) {
+                Scraper.complete(this, scrape);
+            }
+        }
+
+    }
+
+    /**
+     * Is given each product as soon as it has been scraped, rather than once the whole web page has been.
+     */
+    private interface ProductListener {
+
+        /**
+         * Checks whether products are still wanted, so that detail pages aren't fetched once nothing is listening.
+         * 
+         * @return True if products are still wanted
+         */
+        boolean isListening();
+
+        /**
+         * Handles a product that has just been scraped, which may block until there is room for it.
+         * 
+         * @param product
+         *            The product scraped
+         */
+        void productScraped(Product product);
+
     }
 
 }
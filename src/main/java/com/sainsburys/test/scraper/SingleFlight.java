@@ -0,0 +1,93 @@
+package com.sainsburys.test.scraper;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * This class will make sure that only one load is in flight for each key at a time. Any thread asking for a key that is
+ * already being loaded waits for that load to finish and is given the same result, or the same failure, rather than
+ * starting a load of its own. Once a load has finished the key is forgotten, so the next request for it loads again.
+ *
+ * @param <K>
+ *            The type of the keys being loaded
+ * @param <V>
+ *            The type of the values loaded
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * Loads the value for a key, which may fail with an {@link IOException}.
+     *
+     * @param <V>
+     *            The type of the value loaded
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+
+        V load() throws IOException;
+
+    }
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the value for the key given, or waits for the load already in flight for it.
+     *
+     * @param key
+     *            The key of the value
+     * @param loader
+     *            Loads the value if there isn't a load in flight already
+     * @return The value loaded
+     * @throws IOException
+     *             If the load failed, whether it was run by this thread or another
+     */
+    public V load(K key, Loader<V> loader) throws IOException {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existingFlight = inFlight.putIfAbsent(key, flight);
+        if (null != existingFlight) {
+            return await(existingFlight);
+        }
+
+        try {
+            V value = loader.load();
+            flight.complete(value);
+            return value;
+        } catch (IOException | RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Gets the number of keys that are being loaded.
+     *
+     * @return The number of loads in flight
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> flight) throws IOException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted whilst waiting for a page being scraped by another thread");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+}
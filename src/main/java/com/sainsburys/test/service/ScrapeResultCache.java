@@ -0,0 +1,227 @@
+package com.sainsburys.test.service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import com.sainsburys.test.scraper.SingleFlight;
+
+/**
+ * This class will hold the products written for each scrape served, keyed by the category page and format, so a
+ * category page asked for again is sent back straight away rather than scraped again.
+ * <p>
+ * A result is fresh for the time given, and is sent back as it is. Once it is older than that it is stale, and is
+ * still sent back straight away for the stale window given, whilst a single refresh scrapes the page again in the
+ * background to replace it. Only a result older than both has to be waited for, with every request for it waiting on
+ * the same scrape. A failed refresh leaves the stale result in place, so the next request tries again. Failed scrapes
+ * are never held.
+ * <p>
+ * The cache is bounded, evicting the least recently used result once full.
+ */
+public class ScrapeResultCache {
+
+    private final int maxEntries;
+
+    private final long freshNanos;
+
+    private final long staleNanos;
+
+    // Runs the refreshes of stale results, so the request finding them doesn't wait
+    private final Executor refreshExecutor;
+
+    // Gives the current time in nanoseconds, which can be swapped out to test the expiry of results
+    private final LongSupplier nanoClock;
+
+    // Shares one scrape between every request waiting for a result that is missing or too old
+    private final SingleFlight<String, byte[]> loads = new SingleFlight<>();
+
+    // Kept in access order, so the eldest entry is the least recently used
+    private final Map<String, CachedResult> resultsByKey;
+
+    private long hitCount;
+
+    private long staleHitCount;
+
+    private long missCount;
+
+    private long refreshFailureCount;
+
+    /**
+     * Creates a cache holding up to the number of results given, refreshing stale results on virtual threads.
+     *
+     * @param maxEntries
+     *            The maximum number of results to hold
+     * @param freshFor
+     *            How long a result is sent back without being refreshed
+     * @param staleFor
+     *            How long a result is still sent back once it is no longer fresh, whilst it is refreshed
+     * @param unit
+     *            The unit of the times
+     */
+    public ScrapeResultCache(int maxEntries, long freshFor, long staleFor, TimeUnit unit) {
+        this(maxEntries, freshFor, staleFor, unit,
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("result-refresh-", 0).factory()),
+                System::nanoTime);
+    }
+
+    ScrapeResultCache(int maxEntries, long freshFor, long staleFor, TimeUnit unit, Executor refreshExecutor,
+            LongSupplier nanoClock) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The cache must be able to hold at least one result");
+        }
+        if (freshFor <= 0 || staleFor < 0) {
+            throw new IllegalArgumentException("A result must be fresh for some time, and can't be stale for less");
+        }
+        this.maxEntries = maxEntries;
+        this.freshNanos = unit.toNanos(freshFor);
+        this.staleNanos = unit.toNanos(staleFor);
+        this.refreshExecutor = refreshExecutor;
+        this.nanoClock = nanoClock;
+        this.resultsByKey = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > ScrapeResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Gets the result held for the key given, loading it if there isn't one or it is too old to send back, and
+     * refreshing it in the background if it is stale.
+     *
+     * @param key
+     *            The key of the result, which must include everything the result depends on
+     * @param loader
+     *            Scrapes the result again
+     * @return The result, which mustn't be changed
+     * @throws IOException
+     *             If there was no result to send back and it couldn't be loaded
+     */
+    public byte[] get(String key, SingleFlight.Loader<byte[]> loader) throws IOException {
+        CachedResult stale;
+        synchronized (this) {
+            CachedResult cached = resultsByKey.get(key);
+            long age = null != cached ? nanoClock.getAsLong() - cached.cachedAt : Long.MAX_VALUE;
+            if (age < freshNanos) {
+                hitCount++;
+                return cached.result;
+            }
+            if (null != cached && age - freshNanos < staleNanos) {
+                staleHitCount++;
+                if (cached.refreshing) {
+                    return cached.result;
+                }
+                cached.refreshing = true;
+                stale = cached;
+            } else {
+                missCount++;
+                stale = null;
+            }
+        }
+
+        if (null != stale) {
+            refresh(key, stale, loader);
+            return stale.result;
+        }
+        return loads.load(key, () -> {
+            // Another request may have finished loading the result between the lookup above and this load
+            byte[] loaded = getAfterMiss(key);
+            if (null != loaded) {
+                return loaded;
+            }
+            byte[] result = loader.load();
+            put(key, result);
+            return result;
+        });
+    }
+
+    /**
+     * Scrapes a stale result again in the background, replacing it once done, or leaving it to be refreshed by the
+     * next request if the scrape failed.
+     */
+    private void refresh(String key, CachedResult stale, SingleFlight.Loader<byte[]> loader) {
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    put(key, loads.load(key, loader));
+                } catch (IOException | RuntimeException e) {
+                    refreshFailed(stale);
+                }
+            });
+        } catch (RuntimeException e) {
+            // The refresh couldn't be started, so is left for the next request
+            refreshFailed(stale);
+        }
+    }
+
+    /**
+     * Looks again for a fresh result for a key whose lookup has just missed, turning that miss into a hit if found.
+     */
+    private synchronized byte[] getAfterMiss(String key) {
+        CachedResult cached = resultsByKey.get(key);
+        if (null == cached || nanoClock.getAsLong() - cached.cachedAt >= freshNanos) {
+            return null;
+        }
+        missCount--;
+        hitCount++;
+        return cached.result;
+    }
+
+    private synchronized void refreshFailed(CachedResult stale) {
+        refreshFailureCount++;
+        stale.refreshing = false;
+    }
+
+    private synchronized void put(String key, byte[] result) {
+        resultsByKey.put(key, new CachedResult(result, nanoClock.getAsLong()));
+    }
+
+    public synchronized int size() {
+        return resultsByKey.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getStaleHitCount() {
+        return staleHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getRefreshFailureCount() {
+        return refreshFailureCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ScrapeResultCache[size=" + resultsByKey.size() + ", hits=" + hitCount + ", staleHits=" + staleHitCount
+                + ", misses=" + missCount + ", refreshFailures=" + refreshFailureCount + "]";
+    }
+
+    private static final class CachedResult {
+
+        private final byte[] result;
+
+        private final long cachedAt;
+
+        // Whether a refresh of the result is running, guarded by the cache
+        private boolean refreshing;
+
+        private CachedResult(byte[] result, long cachedAt) {
+            this.result = result;
+            this.cachedAt = cachedAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,451 @@
+package com.sainsburys.test.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.sainsburys.test.fetch.HttpClientPageFetcher;
+import com.sainsburys.test.fetch.PageFetcher;
+import com.sainsburys.test.metrics.PrometheusExporter;
+import com.sainsburys.test.scraper.ProductDetailsCache;
+import com.sainsburys.test.scraper.Scraper;
+import com.sainsburys.test.transform.OutputFormat;
+import com.sainsburys.test.transform.ProductsWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class will serve scrapes over HTTP on the loopback address, so that many scrapes can be run by one JVM that
+ * has already loaded and compiled the scraper, rather than each paying for the start up of its own. The same page
+ * fetcher, with its pool of connections, and the same executor for the page fetches are shared by every scrape, as is
+ * one {@link ProductDetailsCache}, so a product detail page linked from many category pages, or scraped again by a
+ * later request, is only fetched once for as long as its details are held.
+ * <p>
+ * A scrape is requested with <code>GET /scrape?url=&lt;category page&gt;</code>, with an optional
+ * <code>format</code> of json, ndjson or binary, and the products are sent back once every one has been scraped. Only
+ * http and https category pages are scraped, any other URL being turned away as a bad request. The
+ * metrics of each stage, and the hits and misses of the details cache, are served in the Prometheus text format from
+ * <code>GET /metrics</code>.
+ * <p>
+ * Given a {@link ScrapeResultCache}, the products of a category page scraped already are sent back from it, whilst it
+ * is refreshed in the background once stale, so slow category pages don't hold up the requests for them.
+ * <p>
+ * Only a bounded number of scrapes are run at the same time. A request waits for the admission timeout for one of
+ * them to finish, and is turned away with a 503 if none did, rather than queueing without limit.
+ * <p>
+ * The responses on a kept alive connection are only sent without delay if the JVM wide
+ * <code>sun.net.httpserver.nodelay</code> property is set before the service is started, as
+ * {@link com.sainsburys.test.WebScraperApp#main(String[])} does.
+ */
+public class ScrapeService implements Closeable {
+
+    /**
+     * The path scrapes are requested from.
+     */
+    public static final String SCRAPE_PATH = "/scrape";
+
+    /**
+     * The path the metrics are served from.
+     */
+    public static final String METRICS_PATH = "/metrics";
+
+    // The most product detail pages held between scrapes, unless given a cache of their details
+    private static final int DEFAULT_DETAILS_CACHE_ENTRIES = 10_000;
+
+    // How long the details of a product are held between scrapes, unless given a cache of their details
+    private static final long DEFAULT_DETAILS_TIME_TO_LIVE_MINUTES = 60;
+
+    private final PageFetcher pageFetcher;
+
+    private final int port;
+
+    private final Semaphore admissions;
+
+    private final long admissionTimeoutNanos;
+
+    // Holds the products of each scrape to send back again, or null if every request is scraped
+    private final ScrapeResultCache resultCache;
+
+    // Holds the details of each product scraped, shared by every scrape
+    private final ProductDetailsCache detailsCache;
+
+    private HttpServer server;
+
+    // Runs each request to the service, and each page fetch of the scrapes, on its own virtual thread
+    private ExecutorService executor;
+
+    /**
+     * Creates a service that fetches the pages through a shared {@link HttpClientPageFetcher}, which isn't listening
+     * until started.
+     *
+     * @param port
+     *            The port to listen on, or 0 for any free port
+     * @param maxConcurrentScrapes
+     *            The most scrapes run at the same time
+     * @param admissionTimeout
+     *            How long a request waits for a scrape to finish when the most are already running
+     * @param unit
+     *            The unit of the admission timeout
+     */
+    public ScrapeService(int port, int maxConcurrentScrapes, long admissionTimeout, TimeUnit unit) {
+        this(HttpClientPageFetcher.shared(), port, maxConcurrentScrapes, admissionTimeout, unit, null);
+    }
+
+    /**
+     * Creates a service that fetches the pages through the fetcher given, which isn't listening until started.
+     *
+     * @param pageFetcher
+     *            The fetcher used to get the html of each page
+     * @param port
+     *            The port to listen on, or 0 for any free port
+     * @param maxConcurrentScrapes
+     *            The most scrapes run at the same time
+     * @param admissionTimeout
+     *            How long a request waits for a scrape to finish when the most are already running
+     * @param unit
+     *            The unit of the admission timeout
+     */
+    public ScrapeService(PageFetcher pageFetcher, int port, int maxConcurrentScrapes, long admissionTimeout,
+            TimeUnit unit) {
+        this(pageFetcher, port, maxConcurrentScrapes, admissionTimeout, unit, null);
+    }
+
+    /**
+     * Creates a service that fetches the pages through the fetcher given, sending back the products held in the cache
+     * given for a category page scraped already, which isn't listening until started.
+     *
+     * @param pageFetcher
+     *            The fetcher used to get the html of each page
+     * @param port
+     *            The port to listen on, or 0 for any free port
+     * @param maxConcurrentScrapes
+     *            The most scrapes run at the same time, including those refreshing the cache
+     * @param admissionTimeout
+     *            How long a request waits for a scrape to finish when the most are already running
+     * @param unit
+     *            The unit of the admission timeout
+     * @param resultCache
+     *            The cache of the products of each scrape, or null to scrape every request
+     */
+    public ScrapeService(PageFetcher pageFetcher, int port, int maxConcurrentScrapes, long admissionTimeout,
+            TimeUnit unit, ScrapeResultCache resultCache) {
+        this(pageFetcher, port, maxConcurrentScrapes, admissionTimeout, unit, resultCache,
+                new ProductDetailsCache(DEFAULT_DETAILS_CACHE_ENTRIES, DEFAULT_DETAILS_TIME_TO_LIVE_MINUTES,
+                        TimeUnit.MINUTES));
+    }
+
+    /**
+     * Creates a service that fetches the pages through the fetcher given, sending back the products held in the cache
+     * given for a category page scraped already and sharing the details cache given between every scrape, which isn't
+     * listening until started.
+     *
+     * @param pageFetcher
+     *            The fetcher used to get the html of each page
+     * @param port
+     *            The port to listen on, or 0 for any free port
+     * @param maxConcurrentScrapes
+     *            The most scrapes run at the same time, including those refreshing the cache
+     * @param admissionTimeout
+     *            How long a request waits for a scrape to finish when the most are already running
+     * @param unit
+     *            The unit of the admission timeout
+     * @param resultCache
+     *            The cache of the products of each scrape, or null to scrape every request
+     * @param detailsCache
+     *            The cache of the details of each product, shared by every scrape
+     */
+    public ScrapeService(PageFetcher pageFetcher, int port, int maxConcurrentScrapes, long admissionTimeout,
+            TimeUnit unit, ScrapeResultCache resultCache, ProductDetailsCache detailsCache) {
+        if (null == pageFetcher) {
+            throw new IllegalArgumentException("A fetcher is needed to get the pages with");
+        }
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("The port " + port + " isn't a valid port");
+        }
+        if (maxConcurrentScrapes < 1) {
+            throw new IllegalArgumentException("At least one scrape must be able to run at a time");
+        }
+        if (admissionTimeout < 0) {
+            throw new IllegalArgumentException("The admission timeout can't be negative");
+        }
+        if (null == detailsCache) {
+            throw new IllegalArgumentException("A cache is needed to share the details of products between scrapes");
+        }
+        this.pageFetcher = pageFetcher;
+        this.port = port;
+        this.admissions = new Semaphore(maxConcurrentScrapes);
+        this.admissionTimeoutNanos = unit.toNanos(admissionTimeout);
+        this.resultCache = resultCache;
+        this.detailsCache = detailsCache;
+    }
+
+    /**
+     * Starts listening on the loopback address.
+     *
+     * @throws IOException
+     *             If the service couldn't be started
+     */
+    public void start() throws IOException {
+        if (null != server) {
+            throw new IllegalStateException("The service has already been started");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext(SCRAPE_PATH, this::serveScrape);
+        server.createContext(METRICS_PATH, this::serveMetrics);
+        server.start();
+    }
+
+    /**
+     * Gets the URL the service is listening on, without a path.
+     *
+     * @return The URL of the service
+     */
+    public String getBaseUrl() {
+        if (null == server) {
+            throw new IllegalStateException("The service hasn't been started");
+        }
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the cache of the details of each product, shared by every scrape.
+     *
+     * @return The details cache of the service
+     */
+    public ProductDetailsCache getDetailsCache() {
+        return detailsCache;
+    }
+
+    /**
+     * Stops the service, giving the scrapes running a second to finish before they are dropped.
+     */
+    @Override
+    public void close() {
+        if (null != server) {
+            server.stop(1);
+            executor.shutdownNow();
+        }
+    }
+
+    private void serveScrape(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!SCRAPE_PATH.equals(exchange.getRequestURI().getPath())) {
+                sendText(exchange, 404, "Not found");
+                return;
+            }
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendText(exchange, 405, "Only GET is supported");
+                return;
+            }
+
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String url = query.get("url");
+            if (null == url || url.isEmpty()) {
+                sendText(exchange, 400, "The url of the category page to scrape is needed");
+                return;
+            }
+            OutputFormat format;
+            try {
+                format = OutputFormat.valueOf(query.getOrDefault("format", "json").toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, "The format must be json, ndjson or binary");
+                return;
+            }
+
+            if (!isHttpUrl(url)) {
+                sendText(exchange, 400, "Only http and https category pages can be scraped");
+                return;
+            }
+
+            Scraper scraper;
+            try {
+                scraper = new Scraper(url, pageFetcher, executor, detailsCache);
+            } catch (MalformedURLException e) {
+                sendText(exchange, 400, "The url isn't valid: " + e.getMessage());
+                return;
+            }
+
+            byte[] products;
+            try {
+                products = null != resultCache
+                        ? resultCache.get(format.name() + " " + url, () -> admitAndScrape(scraper, format))
+                        : admitAndScrape(scraper, format);
+            } catch (IOException e) {
+                // A scrape turned away whilst other requests were waiting on it is handed to them wrapped
+                if (e instanceof NotAdmittedException || e.getCause() instanceof NotAdmittedException) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    sendText(exchange, 503, "Too many scrapes are already running");
+                } else {
+                    sendText(exchange, 502, "The category page couldn't be scraped: " + e.getMessage());
+                }
+                return;
+            }
+            send(exchange, 200, getContentType(format), products);
+        }
+    }
+
+    private void serveMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!METRICS_PATH.equals(exchange.getRequestURI().getPath())) {
+                sendText(exchange, 404, "Not found");
+                return;
+            }
+            ByteArrayOutputStream metrics = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(metrics, StandardCharsets.UTF_8)) {
+                new PrometheusExporter().write(writer);
+                writeDetailsCacheMetrics(writer);
+            }
+            send(exchange, 200, PrometheusExporter.CONTENT_TYPE, metrics.toByteArray());
+        }
+    }
+
+    /**
+     * Writes the lookups of the details cache in the Prometheus text format, after the metrics of each stage.
+     */
+    private void writeDetailsCacheMetrics(Writer out) throws IOException {
+        StringBuilder text = new StringBuilder(512);
+        text.append("# HELP scraper_details_cache_hits_total The products whose details were held by the cache.\n")
+                .append("# TYPE scraper_details_cache_hits_total counter\n")
+                .append("scraper_details_cache_hits_total ").append(detailsCache.getHitCount()).append('\n');
+        text.append("# HELP scraper_details_cache_misses_total The products whose detail page had to be fetched.\n")
+                .append("# TYPE scraper_details_cache_misses_total counter\n")
+                .append("scraper_details_cache_misses_total ").append(detailsCache.getMissCount()).append('\n');
+        text.append("# HELP scraper_details_cache_evictions_total The details dropped to make room for others.\n")
+                .append("# TYPE scraper_details_cache_evictions_total counter\n")
+                .append("scraper_details_cache_evictions_total ").append(detailsCache.getEvictionCount())
+                .append('\n');
+        text.append("# HELP scraper_details_cache_entries The product detail pages whose details are held.\n")
+                .append("# TYPE scraper_details_cache_entries gauge\n")
+                .append("scraper_details_cache_entries ").append(detailsCache.size()).append('\n');
+        out.write(text.toString());
+    }
+
+    /**
+     * Waits for the admission timeout for a scrape to be allowed to run, which must be released once it has.
+     *
+     * @return Whether the scrape can run
+     */
+    private boolean admit() throws IOException {
+        try {
+            return admissions.tryAcquire(admissionTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a scrape to finish", e);
+        }
+    }
+
+    /**
+     * Scrapes a category page once the scrape has been admitted, writing its products in the format given.
+     *
+     * @param scraper
+     *            The scraper of the category page
+     * @param format
+     *            The format to write the products in
+     * @return The products written
+     * @throws IOException
+     *             If the category page couldn't be scraped, or the scrape wasn't admitted in time
+     */
+    private byte[] admitAndScrape(Scraper scraper, OutputFormat format) throws IOException {
+        if (!admit()) {
+            throw new NotAdmittedException();
+        }
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            ProductsWriter products = format.createWriter(buffer, StandardCharsets.UTF_8);
+            scraper.scrapeWebPage(products::writeProduct);
+            products.finish();
+            return buffer.toByteArray();
+        } finally {
+            admissions.release();
+        }
+    }
+
+    /**
+     * Checks that a URL is a http or https one with a host, as the pages of any other can't be fetched.
+     */
+    private static boolean isHttpUrl(String url) {
+        try {
+            URI uri = new URI(url);
+            return ("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme()))
+                    && null != uri.getHost();
+        } catch (URISyntaxException e) {
+            return false;
+        }
+    }
+
+    private static String getContentType(OutputFormat format) {
+        switch (format) {
+        case NDJSON:
+            return "application/x-ndjson; charset=UTF-8";
+        case BINARY:
+            return "application/octet-stream";
+        default:
+            return "application/json; charset=UTF-8";
+        }
+    }
+
+    /**
+     * Splits the query of a request into its parameters, keeping the first value of any given more than once.
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (null == rawQuery) {
+            return parameters;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            parameters.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, "text/plain; charset=UTF-8", (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        // A length of -1 is how an empty body is sent, as 0 would send it in chunks
+        exchange.sendResponseHeaders(status, body.length > 0 ? body.length : -1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Thrown when a scrape couldn't be admitted before the admission timeout.
+     */
+    private static final class NotAdmittedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private NotAdmittedException() {
+            super("Too many scrapes are already running");
+        }
+
+    }
+
+}
@@ -0,0 +1,219 @@
+package com.sainsburys.test.transform;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
+
+/**
+ * This class will read back the products written by a {@link BinaryProductsWriter}, one at a time or all at once into
+ * a {@link ProductBatch}, followed by their totals.
+ */
+public class BinaryProductsReader implements Closeable {
+
+    // Far longer than any name or description, so a corrupt length fails rather than asking for gigabytes
+    static final int MAX_STRING_BYTES = 16 * 1024 * 1024;
+
+    private final DataInputStream in;
+
+    // Every string read so far, by its number
+    private final List<String> strings = new ArrayList<>();
+
+    private boolean started;
+
+    private boolean finished;
+
+    private long totalPricePence;
+
+    private long totalVatPence;
+
+    // The values of the last product read
+    private String name;
+
+    private String description;
+
+    private long pricePence;
+
+    private int calories;
+
+    public BinaryProductsReader(InputStream in) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+    }
+
+    /**
+     * Reads the next product.
+     *
+     * @return The product, a {@link FoodProduct} if it has calories, or null once every product has been read
+     * @throws IOException
+     *             If the products couldn't be read, or weren't written by a {@link BinaryProductsWriter}
+     */
+    public Product readProduct() throws IOException {
+        if (!readNextProduct()) {
+            return null;
+        }
+        if (ProductBatch.NO_CALORIES != calories) {
+            return new FoodProduct(name, description, pricePence, calories);
+        }
+        return new Product(name, description, pricePence);
+    }
+
+    /**
+     * Reads every product that is left into a batch, without creating an object for each.
+     *
+     * @return The batch of products read
+     * @throws IOException
+     *             If the products couldn't be read, or weren't written by a {@link BinaryProductsWriter}
+     */
+    public ProductBatch readBatch() throws IOException {
+        ProductBatch batch = new ProductBatch();
+        while (readNextProduct()) {
+            batch.add(name, description, pricePence, calories);
+        }
+        batch.trimToSize();
+        return batch;
+    }
+
+    /**
+     * Gets the total price of the products, which is only known once every product has been read.
+     *
+     * @return The total price in pence
+     */
+    public long getTotalPricePence() {
+        checkFinished();
+        return totalPricePence;
+    }
+
+    /**
+     * Gets the total VAT of the products, which is only known once every product has been read.
+     *
+     * @return The total VAT in pence
+     */
+    public long getTotalVatPence() {
+        checkFinished();
+        return totalVatPence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads records until the next product has been read, learning any strings written before it.
+     *
+     * @return True if a product was read, or false once the totals have been
+     */
+    private boolean readNextProduct() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (!started) {
+            readHeader();
+        }
+
+        while (true) {
+            int tag = in.read();
+            switch (tag) {
+            case BinaryProductsWriter.STRING_TAG:
+                int length = readLength();
+                // Read in chunks rather than all allocated up front, so a length past the end of the stream is cheap
+                byte[] bytes = in.readNBytes(length);
+                if (bytes.length < length) {
+                    throw new EOFException("A string ended " + (length - bytes.length) + " bytes early");
+                }
+                strings.add(new String(bytes, StandardCharsets.UTF_8));
+                break;
+            case BinaryProductsWriter.PRODUCT_TAG:
+                int flags = (int) readVarint();
+                name = 0 != (flags & BinaryProductsWriter.HAS_NAME) ? readString() : null;
+                description = 0 != (flags & BinaryProductsWriter.HAS_DESCRIPTION) ? readString() : null;
+                pricePence = readSignedVarint();
+                calories = 0 != (flags & BinaryProductsWriter.HAS_CALORIES) ? readCalories() : ProductBatch.NO_CALORIES;
+                return true;
+            case BinaryProductsWriter.TOTAL_TAG:
+                totalPricePence = readSignedVarint();
+                totalVatPence = readSignedVarint();
+                finished = true;
+                return false;
+            case -1:
+                throw new EOFException("The products ended before their totals");
+            default:
+                throw new IOException("Unknown record " + tag + " in the products");
+            }
+        }
+    }
+
+    private void readHeader() throws IOException {
+        byte[] magic = new byte[BinaryProductsWriter.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(BinaryProductsWriter.MAGIC, magic)) {
+            throw new IOException("The products weren't written by a BinaryProductsWriter");
+        }
+        int version = in.readUnsignedByte();
+        if (BinaryProductsWriter.VERSION != version) {
+            throw new IOException("Version " + version + " of the products can't be read");
+        }
+        started = true;
+    }
+
+    private String readString() throws IOException {
+        long number = readVarint();
+        if (number < 0) {
+            throw new IOException("String " + Long.toUnsignedString(number) + " can't be a string number");
+        }
+        if (number >= strings.size()) {
+            throw new IOException("String " + number + " is used before it is written");
+        }
+        return strings.get((int) number);
+    }
+
+    private int readLength() throws IOException {
+        long length = readVarint();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("A string of " + Long.toUnsignedString(length) + " bytes is too long");
+        }
+        return (int) length;
+    }
+
+    private int readCalories() throws IOException {
+        long productCalories = readVarint();
+        if (productCalories < 0 || productCalories > Integer.MAX_VALUE) {
+            throw new IOException(Long.toUnsignedString(productCalories) + " calories is too many");
+        }
+        return (int) productCalories;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (0 == (b & 0x80)) {
+                return value;
+            }
+        }
+        throw new IOException("A varint is longer than ten bytes");
+    }
+
+    private long readSignedVarint() throws IOException {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private void checkFinished() {
+        if (!finished) {
+            throw new IllegalStateException("The totals are only known once every product has been read");
+        }
+    }
+
+}
@@ -0,0 +1,233 @@
+package com.sainsburys.test.transform;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
+
+/**
+ * This class will write products in a compact binary format, for handing the products scraped to another program
+ * rather than to a person. It holds the same values as the JSON, but prices are written as whole pence and each name
+ * and description is only written once however many products share it. The products are read back with a
+ * {@link BinaryProductsReader}.
+ * <p>
+ * The format starts with the four bytes "SBPR" and a version byte, followed by records that each start with a tag
+ * byte:
+ * <ul>
+ * <li>{@value #STRING_TAG} - a string: its length in bytes as a varint, then the string as UTF-8. Strings are numbered
+ * from 0 in the order they are written, and are written just before the first product that uses them.</li>
+ * <li>{@value #PRODUCT_TAG} - a product: a varint of flags saying which values follow, then the number of the name
+ * string, the number of the description string, the price in pence as a zigzag varint and the calories as a varint.
+ * Only the values flagged are written, so a product without a description or calories takes no space for them.</li>
+ * <li>{@value #TOTAL_TAG} - the totals, which are always the last record: the gross price and VAT in pence as zigzag
+ * varints.</li>
+ * </ul>
+ * The VAT of each product is worked out from its price when read, so isn't written.
+ */
+public class BinaryProductsWriter implements ProductsWriter {
+
+    static final byte[] MAGIC = { 'S', 'B', 'P', 'R' };
+
+    static final int VERSION = 1;
+
+    static final int STRING_TAG = 1;
+
+    static final int PRODUCT_TAG = 2;
+
+    static final int TOTAL_TAG = 3;
+
+    static final int HAS_NAME = 1;
+
+    static final int HAS_DESCRIPTION = 1 << 1;
+
+    static final int HAS_CALORIES = 1 << 2;
+
+    private final OutputStream out;
+
+    // The number given to each string already written
+    private final Map<String, Integer> stringNumbers = new HashMap<>();
+
+    private long totalPricePence;
+
+    private long totalVatPence;
+
+    private boolean started;
+
+    private boolean finished;
+
+    public BinaryProductsWriter(OutputStream out) {
+        this.out = new BufferedOutputStream(out);
+    }
+
+    /**
+     * Writes a product, along with any of its strings that haven't been written yet, adding its price to the running
+     * totals.
+     *
+     * @param product
+     *            The product to write
+     * @throws IOException
+     *             If the product couldn't be written
+     */
+    @Override
+    public void writeProduct(Product product) throws IOException {
+        int calories = ProductBatch.NO_CALORIES;
+        if (product instanceof FoodProduct) {
+            FoodProduct foodProduct = (FoodProduct) product;
+            calories = foodProduct.getCaloriesValue();
+            if (ProductBatch.NO_CALORIES == calories && null != foodProduct.getCalories()) {
+                calories = parseCalories(product.getName(), foodProduct.getCalories());
+            }
+        }
+        writeProduct(product.getName(), product.getDescription(), product.getPricePence(), calories);
+
+        totalPricePence = totalPricePence + product.getPricePence();
+        totalVatPence = totalVatPence + product.getVatPence();
+    }
+
+    /**
+     * Writes every product in a batch, in order, adding their prices to the running totals.
+     *
+     * @param batch
+     *            The batch of products to write
+     * @throws IOException
+     *             If the products couldn't be written
+     */
+    @Override
+    public void writeProducts(ProductBatch batch) throws IOException {
+        for (int i = 0; i < batch.size(); i++) {
+            writeProduct(batch.getName(i), batch.getDescription(i), batch.getPricePence(i), batch.getCalories(i));
+
+            totalPricePence = totalPricePence + batch.getPricePence(i);
+            totalVatPence = totalVatPence + batch.getVatPence(i);
+        }
+    }
+
+    /**
+     * Writes the totals as the last record, flushing everything to the underlying stream. Nothing more can be written
+     * once finished.
+     *
+     * @throws IOException
+     *             If the totals couldn't be written
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        start();
+        finished = true;
+
+        out.write(TOTAL_TAG);
+        writeSignedVarint(totalPricePence);
+        writeSignedVarint(totalVatPence);
+        out.flush();
+    }
+
+    /**
+     * Finishes the output if it hasn't been already, then closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeProduct(String name, String description, long pricePence, int calories) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("The products have already been finished");
+        }
+        start();
+
+        // The strings are written before the product, so the reader already knows them when it reads the product
+        int nameNumber = writeString(name);
+        int descriptionNumber = writeString(description);
+
+        int flags = (null != name ? HAS_NAME : 0) | (null != description ? HAS_DESCRIPTION : 0)
+                | (ProductBatch.NO_CALORIES != calories ? HAS_CALORIES : 0);
+        out.write(PRODUCT_TAG);
+        writeVarint(flags);
+        if (null != name) {
+            writeVarint(nameNumber);
+        }
+        if (null != description) {
+            writeVarint(descriptionNumber);
+        }
+        writeSignedVarint(pricePence);
+        if (ProductBatch.NO_CALORIES != calories) {
+            writeVarint(calories);
+        }
+    }
+
+    private void start() throws IOException {
+        if (!started) {
+            started = true;
+            out.write(MAGIC);
+            out.write(VERSION);
+        }
+    }
+
+    /**
+     * Writes a string if it hasn't been written already.
+     *
+     * @return The number of the string, or -1 for null
+     */
+    private int writeString(String value) throws IOException {
+        if (null == value) {
+            return -1;
+        }
+        Integer number = stringNumbers.get(value);
+        if (null != number) {
+            return number;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(STRING_TAG);
+        writeVarint(bytes.length);
+        out.write(bytes);
+
+        int newNumber = stringNumbers.size();
+        stringNumbers.put(value, newNumber);
+        return newNumber;
+    }
+
+    /**
+     * Writes a number that is never negative seven bits at a time, lowest first, with the top bit of each byte set if
+     * more follow.
+     */
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Writes a number that may be negative as a varint, zigzag encoded so that small negative numbers stay small.
+     */
+    private void writeSignedVarint(long value) throws IOException {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private static int parseCalories(String name, String calories) {
+        try {
+            int value = Integer.parseInt(calories);
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Thrown below
+        }
+        throw new IllegalArgumentException("The calories of " + name + " aren't a whole number");
+    }
+
+}
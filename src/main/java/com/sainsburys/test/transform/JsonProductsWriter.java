@@ -0,0 +1,111 @@
+package com.sainsburys.test.transform;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
+
+/**
+ * This class will write the JSON for products one at a time as they are given, rather than building the JSON for every
+ * product in memory first. Each product is written into the result array straight away, and the total pricing is
+ * written once the writer is finished, giving the same JSON as {@link TransformToJson#createJsonForProducts}. The JSON
+ * is encoded by a {@link ProductJsonEncoder}, so no objects are built for each product beyond its own buffer.
+ */
+public class JsonProductsWriter implements ProductsWriter {
+
+    private final Writer out;
+
+    // Encodes each product into a buffer that is reused for the next
+    private final ProductJsonEncoder encoder = new ProductJsonEncoder();
+
+    private long totalPricePence;
+
+    private long totalVatPence;
+
+    private int productsWritten;
+
+    private boolean finished;
+
+    public JsonProductsWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes a product into the result array, adding its price to the running totals.
+     *
+     * @param product
+     *            The product to write
+     * @throws IOException
+     *             If the JSON couldn't be written
+     */
+    @Override
+    public void writeProduct(Product product) throws IOException {
+        startProduct();
+        encoder.encodeProduct(product).writeTo(out);
+
+        totalPricePence = totalPricePence + product.getPricePence();
+        totalVatPence = totalVatPence + product.getVatPence();
+    }
+
+    /**
+     * Writes every product in a batch into the result array, in order, adding their prices to the running totals.
+     *
+     * @param batch
+     *            The batch of products to write
+     * @throws IOException
+     *             If the JSON couldn't be written
+     */
+    @Override
+    public void writeProducts(ProductBatch batch) throws IOException {
+        for (int i = 0; i < batch.size(); i++) {
+            startProduct();
+            encoder.encodeProduct(batch, i).writeTo(out);
+
+            totalPricePence = totalPricePence + batch.getPricePence(i);
+            totalVatPence = totalVatPence + batch.getVatPence(i);
+        }
+    }
+
+    private void startProduct() {
+        if (finished) {
+            throw new IllegalStateException("The JSON has already been finished");
+        }
+        encoder.append(0 == productsWritten ? "{\"result\":[" : ",");
+        productsWritten++;
+    }
+
+    /**
+     * Closes the result array and writes the total pricing of the products written, flushing the JSON to the
+     * underlying writer. Nothing more can be written once finished.
+     *
+     * @throws IOException
+     *             If the JSON couldn't be written
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        if (0 == productsWritten) {
+            encoder.append("{\"result\":[");
+        }
+        encoder.append("],\"total\":").encodeTotal(totalPricePence, totalVatPence).append('}').writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Finishes the JSON if it hasn't been already, then closes the underlying writer.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+}
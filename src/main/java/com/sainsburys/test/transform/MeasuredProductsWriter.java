@@ -0,0 +1,80 @@
+package com.sainsburys.test.transform;
+
+import java.io.IOException;
+
+import com.sainsburys.test.metrics.ProductSerializedEvent;
+import com.sainsburys.test.metrics.StageMetrics;
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
+
+/**
+ * This class will time each call to another products writer, counting it against the metrics of a stage. Each product
+ * written on its own is also recorded as a {@link ProductSerializedEvent} when Flight Recorder is recording them, whilst
+ * a batch is only measured as a whole.
+ */
+class MeasuredProductsWriter implements ProductsWriter {
+
+    private final ProductsWriter writer;
+
+    private final StageMetrics metrics;
+
+    private final String format;
+
+    MeasuredProductsWriter(ProductsWriter writer, StageMetrics metrics, String format) {
+        this.writer = writer;
+        this.metrics = metrics;
+        this.format = format;
+    }
+
+    @Override
+    public void writeProduct(Product product) throws IOException {
+        ProductSerializedEvent event = new ProductSerializedEvent();
+        event.begin();
+        long started = metrics.start();
+        try {
+            writer.writeProduct(product);
+            metrics.stop(started);
+        } catch (IOException | RuntimeException e) {
+            metrics.fail(started);
+            throw e;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.setProduct(product.getName());
+            event.setFormat(format);
+            event.setFoodProduct(product instanceof FoodProduct);
+            event.commit();
+        }
+    }
+
+    @Override
+    public void writeProducts(ProductBatch batch) throws IOException {
+        long started = metrics.start();
+        try {
+            writer.writeProducts(batch);
+            metrics.stop(started);
+        } catch (IOException | RuntimeException e) {
+            metrics.fail(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        long started = metrics.start();
+        try {
+            writer.finish();
+            metrics.stop(started);
+        } catch (IOException | RuntimeException e) {
+            metrics.fail(started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.sainsburys.test.transform;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
+
+/**
+ * This class will write products as JSON Lines (NDJSON), rather than as a single JSON document. Each product is written
+ * as a JSON object on its own line, with the same fields as {@link TransformToJson#createProductJson}, and once the
+ * writer is finished a last line is written holding the total pricing as <code>{"total":{...}}</code>. Every line is
+ * a complete JSON value, so a consumer can process each one as soon as it is read, or split the output between
+ * several consumers at any line break.
+ */
+public class NdjsonProductsWriter implements ProductsWriter {
+
+    // JSON Lines are always separated by a line feed, whatever the platform
+    private static final char LINE_SEPARATOR = '\n';
+
+    private final Writer out;
+
+    // Encodes each product into a buffer that is reused for the next
+    private final ProductJsonEncoder encoder = new ProductJsonEncoder();
+
+    private long totalPricePence;
+
+    private long totalVatPence;
+
+    private boolean finished;
+
+    public NdjsonProductsWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes a product as a line of JSON, adding its price to the running totals.
+     *
+     * @param product
+     *            The product to write
+     * @throws IOException
+     *             If the JSON couldn't be written
+     */
+    @Override
+    public void writeProduct(Product product) throws IOException {
+        checkNotFinished();
+        encoder.encodeProduct(product).append(LINE_SEPARATOR).writeTo(out);
+
+        totalPricePence = totalPricePence + product.getPricePence();
+        totalVatPence = totalVatPence + product.getVatPence();
+    }
+
+    /**
+     * Writes every product in a batch as a line of JSON each, in order, adding their prices to the running totals.
+     *
+     * @param batch
+     *            The batch of products to write
+     * @throws IOException
+     *             If the JSON couldn't be written
+     */
+    @Override
+    public void writeProducts(ProductBatch batch) throws IOException {
+        checkNotFinished();
+        for (int i = 0; i < batch.size(); i++) {
+            encoder.encodeProduct(batch, i).append(LINE_SEPARATOR).writeTo(out);
+
+            totalPricePence = totalPricePence + batch.getPricePence(i);
+            totalVatPence = totalVatPence + batch.getVatPence(i);
+        }
+    }
+
+    /**
+     * Writes the total pricing of the products written as the last line, flushing the JSON to the underlying writer.
+     * Nothing more can be written once finished.
+     *
+     * @throws IOException
+     *             If the JSON couldn't be written
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        encoder.append("{\"total\":").encodeTotal(totalPricePence, totalVatPence).append('}').append(LINE_SEPARATOR)
+                .writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Finishes the JSON if it hasn't been already, then closes the underlying writer.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("The JSON has already been finished");
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.sainsburys.test.transform;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import com.sainsburys.test.metrics.Stage;
+import com.sainsburys.test.metrics.StageMetrics;
+
+/**
+ * The formats the products scraped can be written out in.
+ */
+public enum OutputFormat {
+
+    /**
+     * A single JSON document holding an array of the products and their total pricing.
+     */
+    JSON {
+        @Override
+        ProductsWriter createUnmeasuredWriter(OutputStream out, Charset charset) {
+            return new JsonProductsWriter(new BufferedWriter(new OutputStreamWriter(out, charset)));
+        }
+    },
+
+    /**
+     * JSON Lines, with each product as a JSON object on its own line followed by a line holding the total pricing.
+     */
+    NDJSON {
+        @Override
+        ProductsWriter createUnmeasuredWriter(OutputStream out, Charset charset) {
+            return new NdjsonProductsWriter(new BufferedWriter(new OutputStreamWriter(out, charset)));
+        }
+    },
+
+    /**
+     * The compact binary format of {@link BinaryProductsWriter}, for handing the products to another program.
+     */
+    BINARY {
+        @Override
+        ProductsWriter createUnmeasuredWriter(OutputStream out, Charset charset) {
+            return new BinaryProductsWriter(out);
+        }
+    };
+
+    /**
+     * Creates a writer to write products to the stream given in this format. The time taken by each call to the writer
+     * and the bytes it writes are counted against {@link Stage#SERIALIZATION}.
+     *
+     * @param out
+     *            The stream to write the products to
+     * @param charset
+     *            The charset to encode any text written with
+     * @return The products writer
+     */
+    public ProductsWriter createWriter(OutputStream out, Charset charset) {
+        StageMetrics metrics = Stage.SERIALIZATION.getMetrics();
+        return new MeasuredProductsWriter(createUnmeasuredWriter(metrics.countBytes(out), charset), metrics,
+                name().toLowerCase(Locale.ROOT));
+    }
+
+    abstract ProductsWriter createUnmeasuredWriter(OutputStream out, Charset charset);
+
+}
@@ -0,0 +1,314 @@
+package com.sainsburys.test.transform;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
+
+/**
+ * This class will encode products and their total pricing as JSON straight into a buffer that is reused for every
+ * product, rather than building a {@link org.json.JSONObject} and formatting each price with
+ * {@link String#format(String, Object...)}. The JSON is exactly the same as that produced by {@link TransformToJson},
+ * including the order of the keys and the way strings are escaped, so the two can be swapped without any change to
+ * the output.
+ * <p>
+ * An encoder is not safe to share between threads.
+ */
+public class ProductJsonEncoder {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Money is only formatted by hand if the default locale formats it in the same way as the plain digits used here
+    private final boolean plainLocale;
+
+    private char[] buffer = new char[256];
+
+    private int length;
+
+    public ProductJsonEncoder() {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+        plainLocale = '.' == symbols.getDecimalSeparator() && '0' == symbols.getZeroDigit()
+                && '-' == symbols.getMinusSign();
+    }
+
+    /**
+     * Encodes a product into the buffer as a JSON object. The keys are written in the order given by
+     * {@link org.json.JSONObject}, and any that have no value are left out in the same way.
+     *
+     * @param product
+     *            The product to encode
+     * @return This encoder
+     */
+    public ProductJsonEncoder encodeProduct(Product product) {
+        append('{');
+        boolean first = true;
+        if (product instanceof FoodProduct) {
+            int calories = ((FoodProduct) product).getCaloriesValue();
+            if (ProductBatch.NO_CALORIES != calories) {
+                appendCalories(calories);
+                first = false;
+            } else {
+                first = appendField(first, "kcal_per_100g", ((FoodProduct) product).getCalories());
+            }
+        }
+        first = appendField(first, "description", product.getDescription());
+        first = appendField(first, "title", product.getName());
+        appendSeparator(first);
+        appendKey("unit_price");
+        appendMoney(product.getPricePence());
+        append('}');
+        return this;
+    }
+
+    /**
+     * Encodes a product held in a batch into the buffer as a JSON object, in the same way as
+     * {@link #encodeProduct(Product)} but without creating the product.
+     *
+     * @param batch
+     *            The batch holding the product
+     * @param index
+     *            The index of the product in the batch
+     * @return This encoder
+     */
+    public ProductJsonEncoder encodeProduct(ProductBatch batch, int index) {
+        append('{');
+        boolean first = true;
+        if (batch.isFoodProduct(index)) {
+            appendCalories(batch.getCalories(index));
+            first = false;
+        }
+        first = appendField(first, "description", batch.getDescription(index));
+        first = appendField(first, "title", batch.getName(index));
+        appendSeparator(first);
+        appendKey("unit_price");
+        appendMoney(batch.getPricePence(index));
+        append('}');
+        return this;
+    }
+
+    /**
+     * Adds the calories of a product as the first field of its object, written as a string straight from the number.
+     */
+    private void appendCalories(int calories) {
+        appendKey("kcal_per_100g");
+        append('"');
+        appendDigits(calories);
+        append('"');
+    }
+
+    /**
+     * Encodes the total pricing of the products into the buffer as a JSON object.
+     *
+     * @param grossPence
+     *            The total price of the products in pence
+     * @param vatPence
+     *            The total VAT of the products in pence
+     * @return This encoder
+     */
+    public ProductJsonEncoder encodeTotal(long grossPence, long vatPence) {
+        append("{\"gross\":");
+        appendMoney(grossPence);
+        append(",\"vat\":");
+        appendMoney(vatPence);
+        append('}');
+        return this;
+    }
+
+    /**
+     * Adds raw JSON, such as the punctuation between the products, to the buffer as it is.
+     *
+     * @param json
+     *            The JSON to add
+     * @return This encoder
+     */
+    public ProductJsonEncoder append(String json) {
+        int jsonLength = json.length();
+        ensureCapacity(jsonLength);
+        json.getChars(0, jsonLength, buffer, length);
+        length += jsonLength;
+        return this;
+    }
+
+    public ProductJsonEncoder append(char json) {
+        ensureCapacity(1);
+        buffer[length++] = json;
+        return this;
+    }
+
+    /**
+     * Writes everything in the buffer to the writer given, emptying the buffer so it can be used again.
+     *
+     * @param out
+     *            The writer to write the JSON to
+     * @throws IOException
+     */
+    public void writeTo(Writer out) throws IOException {
+        out.write(buffer, 0, length);
+        length = 0;
+    }
+
+    /**
+     * Takes everything in the buffer as a string, emptying the buffer so it can be used again.
+     *
+     * @return The JSON in the buffer
+     */
+    public String takeJson() {
+        String json = new String(buffer, 0, length);
+        length = 0;
+        return json;
+    }
+
+    private boolean appendField(boolean first, String key, String value) {
+        if (null == value) {
+            return first;
+        }
+        appendSeparator(first);
+        appendKey(key);
+        appendQuoted(value);
+        return false;
+    }
+
+    private void appendSeparator(boolean first) {
+        if (!first) {
+            append(',');
+        }
+    }
+
+    private void appendKey(String key) {
+        append('"');
+        append(key);
+        append("\":");
+    }
+
+    /**
+     * Adds a string to the buffer as a quoted JSON string, escaping it in a single pass in the same way as
+     * {@link org.json.JSONObject#quote(String)}. As well as the characters JSON requires to be escaped, every '/' is
+     * escaped so that "&lt;/script&gt;" can't appear in the output, and any other control characters are written as
+     * unicode escapes.
+     *
+     * @param value
+     *            The string to add
+     */
+    private void appendQuoted(String value) {
+        int valueLength = value.length();
+        // Every character could become a six character unicode escape, so the buffer is grown once up front
+        ensureCapacity(valueLength * 6 + 2);
+
+        char[] out = buffer;
+        int position = length;
+        out[position++] = '"';
+
+        for (int i = 0; i < valueLength; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+            case '"':
+            case '/':
+                out[position++] = '\\';
+                out[position++] = c;
+                break;
+            case '\b':
+                out[position++] = '\\';
+                out[position++] = 'b';
+                break;
+            case '\t':
+                out[position++] = '\\';
+                out[position++] = 't';
+                break;
+            case '\n':
+                out[position++] = '\\';
+                out[position++] = 'n';
+                break;
+            case '\f':
+                out[position++] = '\\';
+                out[position++] = 'f';
+                break;
+            case '\r':
+                out[position++] = '\\';
+                out[position++] = 'r';
+                break;
+            default:
+                if (c < 0x20) {
+                    out[position++] = '\\';
+                    out[position++] = 'u';
+                    out[position++] = HEX_DIGITS[(c >> 12) & 0xF];
+                    out[position++] = HEX_DIGITS[(c >> 8) & 0xF];
+                    out[position++] = HEX_DIGITS[(c >> 4) & 0xF];
+                    out[position++] = HEX_DIGITS[c & 0xF];
+                } else {
+                    out[position++] = c;
+                }
+            }
+        }
+
+        out[position++] = '"';
+        length = position;
+    }
+
+    /**
+     * Adds an amount of money to the buffer as a quoted string in pounds with two decimal places, in the same way as
+     * {@code String.format("%.2f", pounds)}. The pence are written digit by digit, unless the locale would format them
+     * differently.
+     *
+     * @param pence
+     *            The amount of money in pence
+     */
+    protected void appendMoney(long pence) {
+        append('"');
+
+        if (!plainLocale) {
+            append(String.format("%.2f", pence / 100.0));
+        } else {
+            if (pence < 0) {
+                append('-');
+            }
+            appendPence(pence);
+        }
+
+        append('"');
+    }
+
+    private void appendPence(long pence) {
+        // Negated in pounds and pence separately, so the smallest long can't overflow
+        long pounds = Math.abs(pence / 100);
+        int penceOnly = (int) Math.abs(pence % 100);
+
+        appendDigits(pounds);
+        ensureCapacity(3);
+        buffer[length++] = '.';
+        buffer[length++] = (char) ('0' + penceOnly / 10);
+        buffer[length++] = (char) ('0' + penceOnly % 10);
+    }
+
+    private void appendDigits(long number) {
+        ensureCapacity(20);
+        if (0 == number) {
+            buffer[length++] = '0';
+            return;
+        }
+
+        int start = length;
+        while (number > 0) {
+            buffer[length++] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        // The digits were written lowest first, so are put the right way round
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            char digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+}
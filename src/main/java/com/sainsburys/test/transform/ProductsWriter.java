@@ -0,0 +1,44 @@
+package com.sainsburys.test.transform;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
+
+/**
+ * Writes products out one at a time as they are given, followed by the total pricing of every product written once
+ * finished.
+ */
+public interface ProductsWriter extends Closeable {
+
+    /**
+     * Writes a product, adding its price to the running totals.
+     *
+     * @param product
+     *            The product to write
+     * @throws IOException
+     *             If the product couldn't be written
+     */
+    void writeProduct(Product product) throws IOException;
+
+    /**
+     * Writes every product in a batch, in order, adding their prices to the running totals.
+     *
+     * @param batch
+     *            The batch of products to write
+     * @throws IOException
+     *             If the products couldn't be written
+     */
+    void writeProducts(ProductBatch batch) throws IOException;
+
+    /**
+     * Writes the total pricing of the products written, flushing everything to the underlying writer. Nothing more can
+     * be written once finished.
+     *
+     * @throws IOException
+     *             If the totals couldn't be written
+     */
+    void finish() throws IOException;
+
+}
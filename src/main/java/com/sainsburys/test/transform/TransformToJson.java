@@ -1,20 +1,36 @@
 package com.sainsburys.test.transform;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.sainsburys.test.metrics.ProductSerializedEvent;
+import com.sainsburys.test.metrics.Stage;
+import com.sainsburys.test.metrics.StageMetrics;
 import com.sainsburys.test.products.FoodProduct;
 import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
 
+/**
+ * This class will turn the products scraped from a web page into JSON. It holds no state between calls, so a single
+ * instance can be shared between threads and reused, and the products can be split across cores with
+ * {@link #createJsonForProductsInParallel(List)}. The time taken to create the JSON for each list of products is
+ * counted against {@link Stage#SERIALIZATION}, and each product turned into JSON is recorded as a
+ * {@link ProductSerializedEvent} when Flight Recorder is recording them.
+ */
 public class TransformToJson {
 
-    private double totalPrice;
+    // Lists of products at or below this size are turned into JSON on a single thread rather than split further
+    private static final int PARALLEL_THRESHOLD = 256;
 
-    private double totalVat;
+    // The format given to the Flight Recorder event for each product turned into JSON
+    private static final String JSON_OBJECT_FORMAT = "JSONObject";
 
     /**
      * Given a list of products scraped from a webpage, this will turn those products into JSON with the resulting
@@ -25,20 +41,88 @@ public class TransformToJson {
      * @return The {@link JSONObject} holding the information
      */
     public JSONObject createJsonForProducts(List<Product> products) {
-        List<JSONObject> jsonProductObjects = new ArrayList<>();
+        StageMetrics metrics = Stage.SERIALIZATION.getMetrics();
+        long started = metrics.start();
+        try {
+            JSONObject[] productJson = new JSONObject[products.size()];
+            Totals totals = createProductJson(products, productJson, 0, products.size());
+            JSONObject result = createResultJson(productJson, totals);
+            metrics.stop(started);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.fail(started);
+            throw e;
+        }
+    }
+
+    /**
+     * Turns products into JSON in the same way as {@link #createJsonForProducts(List)}, but splits the products across
+     * the cores of the machine with fork/join. Each part creates the JSON for its own products and keeps its own
+     * totals, which are added together as the parts are joined, and the products are kept in the order given.
+     * 
+     * @param products
+     *            The list of products scraped
+     * @return The {@link JSONObject} holding the information
+     */
+    public JSONObject createJsonForProductsInParallel(List<Product> products) {
+        StageMetrics metrics = Stage.SERIALIZATION.getMetrics();
+        long started = metrics.start();
+        try {
+            JSONObject[] productJson = new JSONObject[products.size()];
+            Totals totals = ForkJoinPool.commonPool()
+                    .invoke(new ProductJsonTask(this, products, productJson, 0, products.size()));
+            JSONObject result = createResultJson(productJson, totals);
+            metrics.stop(started);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.fail(started);
+            throw e;
+        }
+    }
+
+    /**
+     * Creates the JSON for a range of the products, putting each product's JSON at the same index as the product.
+     * 
+     * @return The totals of the products whose JSON was created
+     */
+    private Totals createProductJson(List<Product> products, JSONObject[] productJson, int from, int to) {
+        Totals totals = new Totals();
+        for (int i = from; i < to; i++) {
+            Product product = products.get(i);
+            ProductSerializedEvent event = new ProductSerializedEvent();
+            event.begin();
+            productJson[i] = createProductJson(product);
+            event.end();
+            if (event.shouldCommit()) {
+                event.setProduct(product.getName());
+                event.setFormat(JSON_OBJECT_FORMAT);
+                event.setFoodProduct(product instanceof FoodProduct);
+                event.commit();
+            }
+            // Only products successfully turned to JSON are added to the totals
+            if (null != productJson[i]) {
+                totals.add(product);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Puts the JSON created for each product into a single JSONObject with the total pricing.
+     */
+    private JSONObject createResultJson(JSONObject[] productJson, Totals productTotals) {
         JSONObject result = new JSONObject();
 
-        // Creates a separate JSONObject for each product found and adds it to a list of JSONObjects to be turned into a
-        // JSONArray
-        for (Product product : products) {
-            JSONObject productJson = createProductJson(product);
-            if (null != productJson) {
-                jsonProductObjects.add(productJson);
+        // Products that couldn't be turned to JSON are left out of the JSONArray
+        List<JSONObject> jsonProductObjects = new ArrayList<>(productJson.length);
+        for (JSONObject json : productJson) {
+            if (null != json) {
+                jsonProductObjects.add(json);
             }
         }
 
         // Creates a JSONObject to hold the total pricing
-        JSONObject totals = createTotalJson();
+        JSONObject totals = createTotalJson(productTotals.pricePence, productTotals.vatPence);
 
         JSONArray productsJson;
 
@@ -62,6 +146,29 @@ public class TransformToJson {
         return result;
     }
 
+    /**
+     * Given a batch of products scraped from a webpage, this will turn those products into JSON with the resulting
+     * pricing of all products, in the same way as {@link #createJsonForProducts(List)}. Each product is only created as
+     * an object while its JSON is being created.
+     * 
+     * @param batch
+     *            The batch of products scraped
+     * @return The {@link JSONObject} holding the information
+     */
+    public JSONObject createJsonForProducts(ProductBatch batch) {
+        return createJsonForProducts(new AbstractList<Product>() {
+            @Override
+            public Product get(int index) {
+                return batch.getProduct(index);
+            }
+
+            @Override
+            public int size() {
+                return batch.size();
+            }
+        });
+    }
+
     /**
      * Creates the {@link JSONObject} that will have the information of a given product object.
      * 
@@ -78,10 +185,6 @@ public class TransformToJson {
             }
             jsonProduct.put("unit_price", String.format("%.2f", product.getPrice()));
             jsonProduct.put("description", product.getDescription());
-
-            // If everything is added to the JSONObject successfully add the prices to the running totals
-            totalPrice = totalPrice + product.getPrice();
-            totalVat = totalVat + product.getVat();
         } catch (JSONException e) {
             System.out.println("Caught a JSON Exception whilst creating " + product.getName()
                     + " and has therefore been ommited from the results");
@@ -94,14 +197,18 @@ public class TransformToJson {
     /**
      * Creates the {@link JSONObject} that holds the final pricing figures for the products successfully turned to JSON.
      * 
+     * @param totalPricePence
+     *            The total price of the products in pence
+     * @param totalVatPence
+     *            The total VAT of the products in pence
      * @return The {@link JSONObject} holding the total price information
      */
-    protected JSONObject createTotalJson() {
+    protected JSONObject createTotalJson(long totalPricePence, long totalVatPence) {
         JSONObject totals = new JSONObject();
 
         try {
-            totals.put("gross", String.format("%.2f", totalPrice));
-            totals.put("vat", String.format("%.2f", totalVat));
+            totals.put("gross", String.format("%.2f", totalPricePence / 100.0));
+            totals.put("vat", String.format("%.2f", totalVatPence / 100.0));
         } catch (JSONException e) {
             System.out.println(
                     "Caught a JSON Exception whilst creating the totals and a blank JSONObject has been returned");
@@ -111,4 +218,70 @@ public class TransformToJson {
         return totals;
     }
 
+    /**
+     * The total price and VAT of some of the products, kept in pence. Totals kept for separate parts of the products
+     * can be added together in any grouping and give the same result.
+     */
+    private static final class Totals {
+
+        private long pricePence;
+
+        private long vatPence;
+
+        private void add(Product product) {
+            pricePence = pricePence + product.getPricePence();
+            vatPence = vatPence + product.getVatPence();
+        }
+
+        private Totals merge(Totals other) {
+            pricePence = pricePence + other.pricePence;
+            vatPence = vatPence + other.vatPence;
+            return this;
+        }
+
+    }
+
+    /**
+     * Creates the JSON for a range of the products, splitting the range in half until it is small enough to be worth
+     * doing on a single thread.
+     */
+    private static final class ProductJsonTask extends RecursiveTask<Totals> {
+
+        private static final long serialVersionUID = 1L;
+
+        // A task is only ever run in this JVM, so the products and their JSON are never serialized with it
+        private final transient TransformToJson transformer;
+
+        private final transient List<Product> products;
+
+        private final transient JSONObject[] productJson;
+
+        private final int from;
+
+        private final int to;
+
+        private ProductJsonTask(TransformToJson transformer, List<Product> products, JSONObject[] productJson, int from,
+                int to) {
+            this.transformer = transformer;
+            this.products = products;
+            this.productJson = productJson;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                return transformer.createProductJson(products, productJson, from, to);
+            }
+
+            int middle = (from + to) >>> 1;
+            ProductJsonTask firstHalf = new ProductJsonTask(transformer, products, productJson, from, middle);
+            firstHalf.fork();
+            Totals secondHalfTotals = new ProductJsonTask(transformer, products, productJson, middle, to).compute();
+            return firstHalf.join().merge(secondHalfTotals);
+        }
+
+    }
+
 }
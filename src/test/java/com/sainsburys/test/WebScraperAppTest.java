@@ -1,16 +1,33 @@
 package com.sainsburys.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
 import org.junit.Test;
 
+import com.sainsburys.test.fetch.ConditionalCachingPageFetcher;
+import com.sainsburys.test.fetch.HttpClientPageFetcher;
+import com.sainsburys.test.fetch.PageFetcher;
 import com.sainsburys.test.products.Product;
+import com.sainsburys.test.scraper.ProductConsumer;
 import com.sainsburys.test.scraper.Scraper;
+import com.sainsburys.test.transform.BinaryProductsReader;
+import com.sainsburys.test.transform.OutputFormat;
 
+import mockit.Delegate;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 
 public class WebScraperAppTest {
 
@@ -20,18 +37,14 @@ public class WebScraperAppTest {
     @Test
     public void testMain_noArgs_defaultUrlUsed(@Mocked Scraper scraper) throws IOException {
 
-        new Expectations() {
+        WebScraperApp.main(new String[0]);
+
+        new Verifications() {
             {
                 new Scraper(
                         "https://jsainsburyplc.github.io/serverside-test/site/www.sainsburys.co.uk/webapp/wcs/stores/servlet/gb/groceries/berries-cherries-currants6039.html");
-                result = scraper;
-
-                scraper.scrapeWebPage();
-                result = new ArrayList<>();
             }
         };
-
-        WebScraperApp.main(new String[0]);
     }
 
     /**
@@ -43,17 +56,21 @@ public class WebScraperAppTest {
         String[] urls = new String[1];
         urls[0] = "http://www.google.com";
 
-        new Expectations() {
+        WebScraperApp.main(urls);
+
+        new Verifications() {
             {
                 new Scraper("http://www.google.com");
-                result = scraper;
-
-                scraper.scrapeWebPage();
-                result = new ArrayList<>();
             }
         };
+    }
 
-        WebScraperApp.main(urls);
+    /**
+     * Tests that an {@link IllegalArgumentException} is thrown when an option that isn't known is given.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMain_unknownOption_illegalArgumentExceptionThrown(@Mocked Scraper scraper) throws IOException {
+        WebScraperApp.main(new String[] { "--xml", "http://www.google.com" });
     }
 
     /**
@@ -69,17 +86,263 @@ public class WebScraperAppTest {
         WebScraperApp giveUrlApp = new WebScraperApp("http://www.google.com");
 
         new Expectations() {
+            {
+                scraper.scrapeWebPage((ProductConsumer) any);
+                result = new Delegate<Void>() {
+                    @SuppressWarnings("unused")
+                    void scrapeWebPage(ProductConsumer consumer) throws IOException {
+                        for (Product product : products) {
+                            consumer.accept(product);
+                        }
+                    }
+                };
+            }
+        };
+
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        PrintStream systemOut = System.out;
+        System.setOut(new PrintStream(console, true, StandardCharsets.UTF_8));
+        try {
+            giveUrlApp.scrapeUrl();
+        } finally {
+            System.setOut(systemOut);
+        }
+
+        Assert.assertThat("The JSON written to the console is incorrect",
+                console.toString(StandardCharsets.UTF_8).trim(), CoreMatchers.is(
+                        "{\"result\":[{\"description\":\"description\",\"title\":\"name\",\"unit_price\":\"10.00\"}],"
+                                + "\"total\":{\"gross\":\"10.00\",\"vat\":\"2.00\"}}"));
+
+        new Verifications() {
+            {
+                new Scraper("http://www.google.com");
+            }
+        };
+
+    }
+
+    /**
+     * Tests that when a stream is given, the products are written to it rather than to the console.
+     */
+    @Test
+    public void testScrapeUrl_streamGiven_productsWrittenToStream(@Mocked Scraper scraper) throws IOException {
+
+        new Expectations() {
+            {
+                scraper.scrapeWebPage((ProductConsumer) any);
+                result = new Delegate<Void>() {
+                    @SuppressWarnings("unused")
+                    void scrapeWebPage(ProductConsumer consumer) throws IOException {
+                        consumer.accept(new Product("name", "description", "10.00"));
+                    }
+                };
+            }
+        };
+
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        PrintStream systemOut = System.out;
+        System.setOut(new PrintStream(console, true, StandardCharsets.UTF_8));
+        try {
+            new WebScraperApp("http://www.google.com", OutputFormat.NDJSON)
+                    .scrapeUrl(new PrintStream(stream, false, StandardCharsets.UTF_8));
+        } finally {
+            System.setOut(systemOut);
+        }
+
+        Assert.assertThat("The JSON Lines written to the stream are incorrect",
+                stream.toString(StandardCharsets.UTF_8), CoreMatchers.is(
+                        "{\"description\":\"description\",\"title\":\"name\",\"unit_price\":\"10.00\"}\n"
+                        + "{\"total\":{\"gross\":\"10.00\",\"vat\":\"2.00\"}}\n"));
+        Assert.assertThat("Nothing should be written to the console", console.size(), CoreMatchers.is(0));
+    }
+
+    /**
+     * Tests that when the ndjson option is given, each product is written to the console on its own line followed by
+     * a line holding the totals.
+     */
+    @Test
+    public void testMain_ndjsonOptionGiven_jsonLinesWritten(@Mocked Scraper scraper) throws IOException {
+
+        new Expectations() {
+            {
+                scraper.scrapeWebPage((ProductConsumer) any);
+                result = new Delegate<Void>() {
+                    @SuppressWarnings("unused")
+                    void scrapeWebPage(ProductConsumer consumer) throws IOException {
+                        consumer.accept(new Product("name", "description", "10.00"));
+                        consumer.accept(new Product("other", null, "2.50"));
+                    }
+                };
+            }
+        };
+
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        PrintStream systemOut = System.out;
+        System.setOut(new PrintStream(console, true, StandardCharsets.UTF_8));
+        try {
+            WebScraperApp.main(new String[] { "--ndjson", "http://www.google.com" });
+        } finally {
+            System.setOut(systemOut);
+        }
+
+        Assert.assertThat("The JSON Lines written to the console are incorrect",
+                console.toString(StandardCharsets.UTF_8), CoreMatchers.is(
+                        "{\"description\":\"description\",\"title\":\"name\",\"unit_price\":\"10.00\"}\n"
+                        + "{\"title\":\"other\",\"unit_price\":\"2.50\"}\n"
+                        + "{\"total\":{\"gross\":\"12.50\",\"vat\":\"2.50\"}}\n"));
+
+        new Verifications() {
+            {
+                new Scraper("http://www.google.com");
+            }
+        };
+    }
+
+    /**
+     * Tests that when the binary option is given, the products written to the console can be read back with a
+     * {@link BinaryProductsReader}.
+     */
+    @Test
+    public void testMain_binaryOptionGiven_binaryProductsWritten(@Mocked Scraper scraper) throws IOException {
+
+        new Expectations() {
+            {
+                scraper.scrapeWebPage((ProductConsumer) any);
+                result = new Delegate<Void>() {
+                    @SuppressWarnings("unused")
+                    void scrapeWebPage(ProductConsumer consumer) throws IOException {
+                        consumer.accept(new Product("name", "description", "10.00"));
+                    }
+                };
+            }
+        };
+
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        PrintStream systemOut = System.out;
+        System.setOut(new PrintStream(console, true, StandardCharsets.UTF_8));
+        try {
+            WebScraperApp.main(new String[] { "--binary", "http://www.google.com" });
+        } finally {
+            System.setOut(systemOut);
+        }
+
+        BinaryProductsReader reader = new BinaryProductsReader(new ByteArrayInputStream(console.toByteArray()));
+        Assert.assertThat("The product written to the console is incorrect", reader.readProduct().getName(),
+                CoreMatchers.is("name"));
+        Assert.assertThat("There should only be one product written", reader.readProduct(), CoreMatchers.nullValue());
+        Assert.assertThat("The total price written is incorrect", reader.getTotalPricePence(), CoreMatchers.is(1000L));
+    }
+
+    /**
+     * Tests that when the metrics file option is given, the metrics of the scrape are written to the file in the
+     * Prometheus text format.
+     */
+    @Test
+    public void testMain_metricsFileGiven_metricsWritten(@Mocked Scraper scraper) throws IOException {
+        Path metricsFile = Files.createTempFile("metrics", ".prom");
+        PrintStream systemOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+        try {
+            WebScraperApp.main(new String[] { "--metrics-file", metricsFile.toString(), "http://www.google.com" });
+
+            Assert.assertThat("The metrics should be written to the file",
+                    Files.readString(metricsFile, StandardCharsets.UTF_8),
+                    CoreMatchers.containsString("scraper_stage_duration_seconds_count{stage=\"serialization\"}"));
+        } finally {
+            System.setOut(systemOut);
+            Files.deleteIfExists(metricsFile);
+        }
+
+        new Verifications() {
             {
                 new Scraper("http://www.google.com");
-                result = scraper;
+            }
+        };
+    }
+
+    /**
+     * Tests that an {@link IllegalArgumentException} is thrown when the metrics file option is given without a file.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMain_metricsFileMissing_illegalArgumentExceptionThrown(@Mocked Scraper scraper)
+            throws IOException {
+        WebScraperApp.main(new String[] { "http://www.google.com", "--metrics-file" });
+    }
+
+    /**
+     * Tests that given a directory to cache the pages in, the scraper fetches them through a
+     * {@link ConditionalCachingPageFetcher} keeping them there.
+     */
+    @Test
+    public void testMain_httpCacheDirGiven_cachingFetcherUsed(@Mocked Scraper scraper) throws IOException {
+        Path cacheDirectory = Files.createTempDirectory("pages");
+        PrintStream systemOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+        try {
+            WebScraperApp.main(new String[] { "--http-cache-dir", cacheDirectory.toString(), "http://www.google.com" });
+        } finally {
+            System.setOut(systemOut);
+            Files.delete(cacheDirectory);
+        }
+
+        new Verifications() {
+            {
+                new Scraper("http://www.google.com", (PageFetcher) withInstanceOf(ConditionalCachingPageFetcher.class));
+            }
+        };
+    }
+
+    /**
+     * Tests that given a number of threads to fetch the product detail pages with, the scraper fetches that many at
+     * the same time with its own fetcher.
+     */
+    @Test
+    public void testMain_detailThreadsGiven_boundedScraperUsed(@Mocked Scraper scraper) throws IOException {
+        PrintStream systemOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+        try {
+            WebScraperApp.main(new String[] { "--detail-threads", "8", "http://www.google.com" });
+        } finally {
+            System.setOut(systemOut);
+        }
 
-                scraper.scrapeWebPage();
-                result = products;
+        new Verifications() {
+            {
+                new Scraper("http://www.google.com", HttpClientPageFetcher.shared(), 8);
             }
         };
+    }
 
-        giveUrlApp.scrapeUrl();
+    /**
+     * Tests that an {@link IllegalArgumentException} is thrown when fewer than one thread is given to fetch the
+     * product detail pages with.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMain_detailThreadsZero_illegalArgumentExceptionThrown() throws IOException {
+        WebScraperApp.main(new String[] { "--detail-threads", "0", "http://www.google.com" });
+    }
 
+    /**
+     * Tests that an {@link IllegalArgumentException} is thrown when the serve option is given without a port.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMain_servePortMissing_illegalArgumentExceptionThrown() throws IOException {
+        WebScraperApp.main(new String[] { "--serve" });
+    }
+
+    /**
+     * Tests that an {@link IllegalArgumentException} is thrown when the file of URLs given holds none.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMain_urlsFileEmpty_illegalArgumentExceptionThrown() throws IOException {
+        Path urlsFile = Files.createTempFile("urls", ".txt");
+        try {
+            Files.write(urlsFile, Arrays.asList("# No categories tonight", ""), StandardCharsets.UTF_8);
+            WebScraperApp.main(new String[] { "--urls-file", urlsFile.toString() });
+        } finally {
+            Files.delete(urlsFile);
+        }
     }
 
 }
@@ -0,0 +1,172 @@
+package com.sainsburys.test.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sainsburys.test.fetch.FetchedPage;
+import com.sainsburys.test.fetch.PageFetcher;
+import com.sainsburys.test.transform.OutputFormat;
+
+/**
+ * Unit tests for the {@link BatchScraper} class, serving pages from memory rather than over the network.
+ */
+public class BatchScraperTest {
+
+    private static final String BERRIES_URL = "http://www.google.com/berries/berries.html";
+
+    private static final String CHERRIES_URL = "http://www.google.com/cherries/cherries.html";
+
+    private static final String SHARED_DETAIL_URL = "http://www.google.com/shop/shared.html";
+
+    private Map<String, String> pages;
+
+    private Map<String, AtomicInteger> fetches;
+
+    @Before
+    public void before() {
+        pages = new HashMap<>();
+        pages.put(BERRIES_URL, listing(productElement("../shop/strawberries.html", "Strawberries", "1.75")
+                + productElement("../shop/shared.html", "Shared", "2.00")));
+        pages.put(CHERRIES_URL, listing(productElement("../shop/shared.html", "Shared", "2.00")
+                + productElement("../shop/cherries.html", "Cherries", "2.50")));
+        pages.put("http://www.google.com/shop/strawberries.html", detailPage("Strawberries"));
+        pages.put(SHARED_DETAIL_URL, detailPage("Shared"));
+        pages.put("http://www.google.com/shop/cherries.html", detailPage("Cherries"));
+        fetches = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Tests that the products of every category page are written as one output, in the order the category pages were
+     * given, with a product detail page linked from both only fetched once.
+     */
+    @Test
+    public void testScrapeMerged_sharedProduct_detailPageFetchedOnce() throws IOException {
+        BatchScraper batch = new BatchScraper(Arrays.asList(BERRIES_URL, CHERRIES_URL), OutputFormat.NDJSON, 2,
+                fetcher());
+
+        String output = scrapeMerged(batch);
+
+        String[] lines = output.split("\n");
+        Assert.assertThat("Every product and the totals should be written", lines.length, CoreMatchers.is(5));
+        Assert.assertThat("The first product is incorrect", lines[0], CoreMatchers.containsString("Strawberries"));
+        Assert.assertThat("The second product is incorrect", lines[1], CoreMatchers.containsString("Shared"));
+        Assert.assertThat("The third product is incorrect", lines[2], CoreMatchers.containsString("Shared"));
+        Assert.assertThat("The fourth product is incorrect", lines[3], CoreMatchers.containsString("Cherries"));
+        Assert.assertThat("The totals should cover every product", lines[4], CoreMatchers.containsString("8.25"));
+        Assert.assertThat("The shared detail page should only be fetched once",
+                fetches.get(SHARED_DETAIL_URL).get(), CoreMatchers.is(1));
+        Assert.assertThat("The details of every product should be held for the run", batch.getDetailsCache().size(),
+                CoreMatchers.is(3));
+    }
+
+    /**
+     * Tests that a category page given more than once is only scraped once.
+     */
+    @Test
+    public void testScrapeMerged_urlRepeated_scrapedOnce() throws IOException {
+        BatchScraper batch = new BatchScraper(Arrays.asList(BERRIES_URL, BERRIES_URL), OutputFormat.NDJSON, 2,
+                fetcher());
+
+        scrapeMerged(batch);
+
+        Assert.assertThat("The category page should only be fetched once", fetches.get(BERRIES_URL).get(),
+                CoreMatchers.is(1));
+    }
+
+    /**
+     * Tests that a category page that can't be scraped is reported once the products of the others have been written.
+     */
+    @Test
+    public void testScrapeMerged_categoryNotFound_othersWrittenThenFailureThrown() {
+        String missingUrl = "http://www.google.com/missing/missing.html";
+        BatchScraper batch = new BatchScraper(Arrays.asList(missingUrl, CHERRIES_URL), OutputFormat.NDJSON, 2,
+                fetcher());
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+
+        try {
+            batch.scrapeMerged(new PrintStream(console, true, StandardCharsets.UTF_8));
+            Assert.fail("The missing category page should be reported");
+        } catch (IOException e) {
+            Assert.assertThat("The missing category page should be named", e.getMessage(),
+                    CoreMatchers.containsString(missingUrl));
+            Assert.assertThat("The number of failures should be given", e.getMessage(),
+                    CoreMatchers.startsWith("1 of 2"));
+        }
+        Assert.assertThat("The products of the other category page should be written",
+                console.toString(StandardCharsets.UTF_8), CoreMatchers.containsString("Cherries"));
+    }
+
+    /**
+     * Tests that the products of each category page are written to their own file, named in the order the category
+     * pages were given.
+     */
+    @Test
+    public void testScrapeToDirectory_fileWrittenForEachCategory() throws IOException {
+        Path directory = Files.createTempDirectory("batch");
+        BatchScraper batch = new BatchScraper(Arrays.asList(BERRIES_URL, CHERRIES_URL), OutputFormat.JSON, 2,
+                fetcher());
+
+        List<Path> written = batch.scrapeToDirectory(directory);
+
+        Assert.assertThat("A file should be written for each category page", written, CoreMatchers
+                .is(Arrays.asList(directory.resolve("1-berries.json"), directory.resolve("2-cherries.json"))));
+        String cherries = new String(Files.readAllBytes(written.get(1)), StandardCharsets.UTF_8);
+        Assert.assertThat("Each file should only hold the products of its category page", cherries,
+                CoreMatchers.not(CoreMatchers.containsString("Strawberries")));
+        Assert.assertThat("Each file should have its own totals", cherries, CoreMatchers.containsString("4.50"));
+
+        for (Path file : written) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private String scrapeMerged(BatchScraper batch) throws IOException {
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        batch.scrapeMerged(new PrintStream(console, true, StandardCharsets.UTF_8));
+        return console.toString(StandardCharsets.UTF_8);
+    }
+
+    private PageFetcher fetcher() {
+        return url -> {
+            fetches.computeIfAbsent(url.toString(), key -> new AtomicInteger()).incrementAndGet();
+            if (!pages.containsKey(url.toString())) {
+                throw new IOException("HTTP error fetching URL. Status=404, URL=" + url);
+            }
+            return new FetchedPage(url,
+                    new ByteArrayInputStream(pages.get(url.toString()).getBytes(StandardCharsets.UTF_8)), "UTF-8");
+        };
+    }
+
+    private static String listing(String productElements) {
+        return "<html><body><ul class=\"productLister\">" + productElements + "</ul></body></html>";
+    }
+
+    private static String productElement(String link, String name, String price) {
+        return "<li class=\"gridItem\"><div class=\"product \"><h3><a href=\"" + link + "\">" + name
+                + "<img src=\"x.jpg\" /></a></h3><p class=\"pricePerUnit\">&pound;" + price
+                + "<abbr title=\"per\">/</abbr>unit</p></div></li>";
+    }
+
+    private static String detailPage(String description) {
+        return "<html><body><div class=\"productContent\"><h3 class=\"productDataItemHeader\">Description</h3>"
+                + "<div class=\"productText\"><p>" + description + "</p></div></div></body></html>";
+    }
+
+}
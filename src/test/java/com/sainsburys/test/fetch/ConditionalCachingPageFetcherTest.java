@@ -0,0 +1,207 @@
+package com.sainsburys.test.fetch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for the {@link ConditionalCachingPageFetcher} class, fetching pages from a local stand-in server that
+ * supports conditional requests.
+ */
+public class ConditionalCachingPageFetcherTest {
+
+    private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+
+    private String serverUrl;
+
+    // The version of the page the server gives out, which is also its ETag
+    private volatile String pageVersion = "v1";
+
+    // The headers of each request the server has been sent
+    private final List<Headers> requests = new CopyOnWriteArrayList<>();
+
+    private ConditionalCachingPageFetcher fetcher;
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/etag", exchange -> {
+            requests.add(exchange.getRequestHeaders());
+            exchange.getResponseHeaders().add("ETag", "\"" + pageVersion + "\"");
+            if (("\"" + pageVersion + "\"").equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified(exchange);
+            } else {
+                respond(exchange, "<html><body>Strawberries " + pageVersion + "</body></html>");
+            }
+        });
+        server.createContext("/dated", exchange -> {
+            requests.add(exchange.getRequestHeaders());
+            exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+            if (LAST_MODIFIED.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+                notModified(exchange);
+            } else {
+                respond(exchange, "<html><body>Blueberries</body></html>");
+            }
+        });
+        server.createContext("/plain", exchange -> {
+            requests.add(exchange.getRequestHeaders());
+            respond(exchange, "<html><body>Cherries</body></html>");
+        });
+        server.createContext("/missing", exchange -> {
+            requests.add(exchange.getRequestHeaders());
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+
+        serverUrl = "http://localhost:" + server.getAddress().getPort();
+        fetcher = new ConditionalCachingPageFetcher(HttpClientPageFetcher.createHttpClient(),
+                temporaryFolder.getRoot().toPath().resolve("pages"));
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    /**
+     * Tests that a page with an ETag is revalidated with If-None-Match when fetched again, and the copy on disk is
+     * read when the server responds that it is not modified.
+     */
+    @Test
+    public void testFetch_etagNotModified_cachedBodyReturned() throws IOException {
+        Assert.assertThat("The body of the page is incorrect", fetchBody("/etag"),
+                CoreMatchers.is("<html><body>Strawberries v1</body></html>"));
+
+        try (FetchedPage page = fetcher.fetch(new URL(serverUrl + "/etag"))) {
+            Assert.assertThat("The cached body of the page is incorrect", readBody(page.getBody()),
+                    CoreMatchers.is("<html><body>Strawberries v1</body></html>"));
+            Assert.assertThat("The cached character set of the page is incorrect", page.getCharset(),
+                    CoreMatchers.is("UTF-8"));
+        }
+        Assert.assertThat("The first request should not be conditional",
+                requests.get(0).getFirst("If-None-Match"), CoreMatchers.nullValue());
+        Assert.assertThat("The second request should send the ETag back",
+                requests.get(1).getFirst("If-None-Match"), CoreMatchers.is("\"v1\""));
+    }
+
+    /**
+     * Tests that a page with a Last-Modified date is revalidated with If-Modified-Since when fetched again.
+     */
+    @Test
+    public void testFetch_lastModifiedNotModified_cachedBodyReturned() throws IOException {
+        fetchBody("/dated");
+
+        Assert.assertThat("The cached body of the page is incorrect", fetchBody("/dated"),
+                CoreMatchers.is("<html><body>Blueberries</body></html>"));
+        Assert.assertThat("The second request should send the date back",
+                requests.get(1).getFirst("If-Modified-Since"), CoreMatchers.is(LAST_MODIFIED));
+    }
+
+    /**
+     * Tests that when the page has changed, the new body is returned and cached in place of the old one.
+     */
+    @Test
+    public void testFetch_pageChanged_newBodyReturnedAndCached() throws IOException {
+        fetchBody("/etag");
+        pageVersion = "v2";
+
+        Assert.assertThat("The changed body of the page is incorrect", fetchBody("/etag"),
+                CoreMatchers.is("<html><body>Strawberries v2</body></html>"));
+        Assert.assertThat("The cached body of the changed page is incorrect", fetchBody("/etag"),
+                CoreMatchers.is("<html><body>Strawberries v2</body></html>"));
+        Assert.assertThat("The last request should send the new ETag back",
+                requests.get(2).getFirst("If-None-Match"), CoreMatchers.is("\"v2\""));
+    }
+
+    /**
+     * Tests that a page closed before all of its body has been read is still cached in full.
+     */
+    @Test
+    public void testFetch_bodyPartlyRead_wholeBodyCached() throws IOException {
+        try (FetchedPage page = fetcher.fetch(new URL(serverUrl + "/etag"))) {
+            page.getBody().read(new byte[6]);
+        }
+
+        Assert.assertThat("The whole body of the page should be cached", fetchBody("/etag"),
+                CoreMatchers.is("<html><body>Strawberries v1</body></html>"));
+        Assert.assertThat("The second request should send the ETag back",
+                requests.get(1).getFirst("If-None-Match"), CoreMatchers.is("\"v1\""));
+    }
+
+    /**
+     * Tests that a page without any validators is not cached, so it is always fetched in full.
+     */
+    @Test
+    public void testFetch_noValidators_notCached() throws IOException {
+        fetchBody("/plain");
+        fetchBody("/plain");
+
+        Assert.assertThat("The second request should not be conditional",
+                requests.get(1).getFirst("If-None-Match"), CoreMatchers.nullValue());
+        Assert.assertThat("The second request should not be conditional",
+                requests.get(1).getFirst("If-Modified-Since"), CoreMatchers.nullValue());
+        try (Stream<Path> cachedFiles = Files.list(temporaryFolder.getRoot().toPath().resolve("pages"))) {
+            Assert.assertThat("No pages should be cached", cachedFiles.count(), CoreMatchers.is(0L));
+        }
+    }
+
+    /**
+     * Tests that an {@link IOException} is thrown when the server does not respond with a successful status.
+     */
+    @Test(expected = IOException.class)
+    public void testFetch_unsuccessfulResponse_ioExceptionThrown() throws IOException {
+        fetcher.fetch(new URL(serverUrl + "/missing"));
+    }
+
+    private String fetchBody(String path) throws IOException {
+        try (FetchedPage page = fetcher.fetch(new URL(serverUrl + path))) {
+            return readBody(page.getBody());
+        }
+    }
+
+    private static String readBody(InputStream body) throws IOException {
+        return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, String content) throws IOException {
+        byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void notModified(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+    }
+
+}
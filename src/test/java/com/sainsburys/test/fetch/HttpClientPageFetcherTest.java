@@ -0,0 +1,137 @@
+package com.sainsburys.test.fetch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for the {@link HttpClientPageFetcher} class, fetching pages from a local stand-in server.
+ */
+public class HttpClientPageFetcherTest {
+
+    private HttpServer server;
+
+    private String serverUrl;
+
+    private HttpClientPageFetcher fetcher;
+
+    // The headers of the last request for the gzipped page
+    private volatile Headers requestHeaders;
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/product", exchange -> {
+            byte[] body = "<html><body>Strawberries</body></html>".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/gzipped", exchange -> {
+            requestHeaders = exchange.getRequestHeaders();
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(gzipped)) {
+                out.write("<html><body>Gzipped strawberries</body></html>".getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, gzipped.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                gzipped.writeTo(out);
+            }
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+
+        serverUrl = "http://localhost:" + server.getAddress().getPort();
+        fetcher = new HttpClientPageFetcher(HttpClientPageFetcher.createHttpClient());
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    /**
+     * Tests that the body and character set of a page are returned when it is fetched successfully.
+     */
+    @Test
+    public void testFetch_successfulResponse_bodyAndCharsetReturned() throws IOException {
+        try (FetchedPage page = fetcher.fetch(new URL(serverUrl + "/product"))) {
+            Assert.assertThat("The character set of the page is incorrect", page.getCharset(),
+                    CoreMatchers.is("UTF-8"));
+            Assert.assertThat("The body of the page is incorrect", readBody(page.getBody()),
+                    CoreMatchers.is("<html><body>Strawberries</body></html>"));
+        }
+    }
+
+    /**
+     * Tests that a page is asked for gzipped, with a User-Agent, and that a gzipped page is decompressed as it is read.
+     */
+    @Test
+    public void testFetch_gzippedResponse_bodyDecompressed() throws IOException {
+        try (FetchedPage page = fetcher.fetch(new URL(serverUrl + "/gzipped"))) {
+            Assert.assertThat("The body of the page should be decompressed", readBody(page.getBody()),
+                    CoreMatchers.is("<html><body>Gzipped strawberries</body></html>"));
+        }
+        Assert.assertThat("The page should be asked for gzipped", requestHeaders.getFirst("Accept-Encoding"),
+                CoreMatchers.containsString("gzip"));
+        Assert.assertThat("A User-Agent should be sent", requestHeaders.getFirst("User-Agent"),
+                CoreMatchers.startsWith("Mozilla/5.0"));
+    }
+
+    /**
+     * Tests that an {@link IOException} is thrown when the server does not respond with a successful status.
+     */
+    @Test(expected = IOException.class)
+    public void testFetch_unsuccessfulResponse_ioExceptionThrown() throws IOException {
+        fetcher.fetch(new URL(serverUrl + "/missing"));
+    }
+
+    /**
+     * Tests that the character set is pulled out of a Content-Type header, ignoring any quotes or other parameters.
+     */
+    @Test
+    public void testGetCharset_charsetGiven_charset() {
+        Assert.assertThat("The character set is incorrect",
+                HttpClientPageFetcher.getCharset("text/html; Charset=\"ISO-8859-1\"; boundary=x"),
+                CoreMatchers.is("ISO-8859-1"));
+    }
+
+    /**
+     * Tests that null is returned when the Content-Type header has no character set, so that it is detected from the
+     * html instead.
+     */
+    @Test
+    public void testGetCharset_noCharset_null() {
+        Assert.assertThat("No character set should be found", HttpClientPageFetcher.getCharset("text/html"),
+                CoreMatchers.nullValue());
+        Assert.assertThat("No character set should be found", HttpClientPageFetcher.getCharset(null),
+                CoreMatchers.nullValue());
+    }
+
+    private static String readBody(InputStream body) throws IOException {
+        return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.sainsburys.test.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for registering the metrics of each stage with JMX through the {@link JmxExporter}.
+ */
+public class JmxExporterTest {
+
+    /**
+     * Tests that the metrics of every stage can be read through the platform MBean server once registered, and that
+     * registering them again does nothing.
+     */
+    @Test
+    public void testRegister_registeredTwice_everyStageReadable() throws JMException {
+        JmxExporter.register();
+        JmxExporter.register();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Stage stage : Stage.values()) {
+            Assert.assertThat("The name of " + stage + " should be readable",
+                    server.getAttribute(JmxExporter.getObjectName(stage), "Name"),
+                    CoreMatchers.is(stage.getMetrics().getName()));
+        }
+
+        Stage.SERIALIZATION.getMetrics().addBytes(10);
+        Assert.assertThat("The bytes read should be up to date", server
+                .getAttribute(JmxExporter.getObjectName(Stage.SERIALIZATION), "Bytes"),
+                CoreMatchers.is(Stage.SERIALIZATION.getMetrics().getBytes()));
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.sainsburys.test.metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for writing the metrics of each stage with the {@link PrometheusExporter}.
+ */
+public class PrometheusExporterTest {
+
+    /**
+     * Tests that every stage has a histogram written, along with its bytes, errors and runs in flight.
+     */
+    @Test
+    public void testWrite_everyStageWritten() throws IOException {
+        StringWriter out = new StringWriter();
+        new PrometheusExporter().write(out);
+        String text = out.toString();
+
+        Assert.assertThat("The histogram should be typed", text,
+                CoreMatchers.containsString("# TYPE scraper_stage_duration_seconds histogram\n"));
+        Assert.assertThat("The bytes should be typed", text,
+                CoreMatchers.containsString("# TYPE scraper_stage_bytes_total counter\n"));
+        Assert.assertThat("The errors should be typed", text,
+                CoreMatchers.containsString("# TYPE scraper_stage_errors_total counter\n"));
+        Assert.assertThat("The runs in flight should be typed", text,
+                CoreMatchers.containsString("# TYPE scraper_stage_in_flight gauge\n"));
+
+        for (Stage stage : Stage.values()) {
+            String label = "{stage=\"" + stage.getMetrics().getName() + "\"";
+            Assert.assertThat("The first bucket of " + stage + " should be written", text, CoreMatchers.containsString(
+                    "scraper_stage_duration_seconds_bucket" + label + ",le=\"6.5536E-5\"} "));
+            Assert.assertThat("The last bucket of " + stage + " should be written", text,
+                    CoreMatchers.containsString("scraper_stage_duration_seconds_bucket" + label + ",le=\"+Inf\"} "));
+            Assert.assertThat("The count of " + stage + " should be written", text,
+                    CoreMatchers.containsString("scraper_stage_duration_seconds_count" + label + "} "));
+            Assert.assertThat("The bytes of " + stage + " should be written", text,
+                    CoreMatchers.containsString("scraper_stage_bytes_total" + label + "} "));
+        }
+    }
+
+    /**
+     * Tests that the buckets of the histogram count every run at or below their upper bound, so the last one holds
+     * every run.
+     */
+    @Test
+    public void testWrite_runsRecorded_bucketsCumulative() throws IOException {
+        StageMetrics metrics = Stage.FIELD_EXTRACTION.getMetrics();
+        metrics.record(1);
+        metrics.record(1_000_000_000);
+
+        StringWriter out = new StringWriter();
+        new PrometheusExporter().write(out);
+
+        long count = metrics.getCount();
+        int longerRunBucket = StageMetrics.bucketOf(1_000_000_000);
+        long atOrBelowLongerRun = 0;
+        for (int i = 0; i <= longerRunBucket; i++) {
+            atOrBelowLongerRun += metrics.getBucketCounts()[i];
+        }
+        Assert.assertThat("The +Inf bucket should hold every run", out.toString(), CoreMatchers.containsString(
+                "scraper_stage_duration_seconds_bucket{stage=\"field_extraction\",le=\"+Inf\"} " + count + "\n"));
+        Assert.assertThat("The count should match the +Inf bucket", out.toString(), CoreMatchers.containsString(
+                "scraper_stage_duration_seconds_count{stage=\"field_extraction\"} " + count + "\n"));
+        Assert.assertThat("The bucket holding the longer run should also hold every shorter run", out.toString(),
+                CoreMatchers.containsString("scraper_stage_duration_seconds_bucket{stage=\"field_extraction\",le=\""
+                        + StageMetrics.getBucketUpperBoundNanos(longerRunBucket) / 1e9 + "\"} " + atOrBelowLongerRun
+                        + "\n"));
+    }
+
+    /**
+     * Tests that the metrics are written to the file given, replacing anything already in it.
+     */
+    @Test
+    public void testWriteTo_fileGiven_metricsWritten() throws IOException {
+        Path file = Files.createTempFile("metrics", ".prom");
+        try {
+            Files.writeString(file, "old");
+
+            new PrometheusExporter().writeTo(file);
+
+            String text = Files.readString(file, StandardCharsets.UTF_8);
+            Assert.assertThat("The file should hold the metrics", text,
+                    CoreMatchers.startsWith("# HELP scraper_stage_duration_seconds"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.sainsburys.test.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link StageMetrics} of a stage of a scrape.
+ */
+public class StageMetricsTest {
+
+    /**
+     * Tests that each time is counted in the smallest bucket whose upper bound holds it, with the longest times counted
+     * in the overflow bucket.
+     */
+    @Test
+    public void testBucketOf_bucketBoundaries_smallestBucketHoldingTimeUsed() {
+        Assert.assertThat("No time at all should be in the first bucket", StageMetrics.bucketOf(0), CoreMatchers.is(0));
+        Assert.assertThat("The upper bound of the first bucket should be in the first bucket",
+                StageMetrics.bucketOf(StageMetrics.getBucketUpperBoundNanos(0)), CoreMatchers.is(0));
+
+        for (int i = 1; i < StageMetrics.BUCKET_COUNT; i++) {
+            long upperBound = StageMetrics.getBucketUpperBoundNanos(i);
+            Assert.assertThat("The upper bound of bucket " + i + " should be in it", StageMetrics.bucketOf(upperBound),
+                    CoreMatchers.is(i));
+            Assert.assertThat("Just over the upper bound of the bucket before should be in bucket " + i,
+                    StageMetrics.bucketOf(StageMetrics.getBucketUpperBoundNanos(i - 1) + 1), CoreMatchers.is(i));
+        }
+
+        Assert.assertThat("A time longer than every bucket should be in the overflow bucket",
+                StageMetrics.bucketOf(StageMetrics.getBucketUpperBoundNanos(StageMetrics.BUCKET_COUNT - 1) + 1),
+                CoreMatchers.is(StageMetrics.BUCKET_COUNT));
+        Assert.assertThat("The longest time should be in the overflow bucket", StageMetrics.bucketOf(Long.MAX_VALUE),
+                CoreMatchers.is(StageMetrics.BUCKET_COUNT));
+    }
+
+    /**
+     * Tests that a run is in flight until it stops, when it is counted in the histogram.
+     */
+    @Test
+    public void testStop_runStopped_countedAndNoLongerInFlight() {
+        StageMetrics metrics = new StageMetrics("test");
+
+        long started = metrics.start();
+        Assert.assertThat("The run should be in flight", metrics.getInFlight(), CoreMatchers.is(1L));
+
+        metrics.stop(started);
+        Assert.assertThat("The run should no longer be in flight", metrics.getInFlight(), CoreMatchers.is(0L));
+        Assert.assertThat("The run should be counted", metrics.getCount(), CoreMatchers.is(1L));
+        Assert.assertThat("The run shouldn't be counted as an error", metrics.getErrorCount(), CoreMatchers.is(0L));
+    }
+
+    /**
+     * Tests that a run that fails is counted as an error, but not in the histogram.
+     */
+    @Test
+    public void testFail_runFailed_errorCountedButNotTimed() {
+        StageMetrics metrics = new StageMetrics("test");
+
+        metrics.fail(metrics.start());
+
+        Assert.assertThat("The run should no longer be in flight", metrics.getInFlight(), CoreMatchers.is(0L));
+        Assert.assertThat("The run should be counted as an error", metrics.getErrorCount(), CoreMatchers.is(1L));
+        Assert.assertThat("The run shouldn't be counted in the histogram", metrics.getCount(), CoreMatchers.is(0L));
+    }
+
+    /**
+     * Tests that the times recorded are totalled, and the percentiles estimated from the upper bounds of their buckets.
+     */
+    @Test
+    public void testRecord_timesRecorded_totalAndPercentilesFromBuckets() {
+        StageMetrics metrics = new StageMetrics("test");
+        for (int i = 0; i < 99; i++) {
+            metrics.record(1_000_000);
+        }
+        metrics.record(1_000_000_000);
+
+        Assert.assertThat("Every time should be counted", metrics.getCount(), CoreMatchers.is(100L));
+        Assert.assertThat("The times should be totalled", metrics.getTotalNanos(), CoreMatchers.is(1_099_000_000L));
+        Assert.assertThat("The longest time should be kept", metrics.getMaxMillis(), CoreMatchers.is(1000.0));
+        Assert.assertThat("The median should be the upper bound of the bucket holding it", metrics.getMedianMillis(),
+                CoreMatchers.is(StageMetrics.getBucketUpperBoundNanos(StageMetrics.bucketOf(1_000_000)) / 1e6));
+        Assert.assertThat("The 99th percentile should be the upper bound of the bucket holding it",
+                metrics.get99thPercentileMillis(),
+                CoreMatchers.is(StageMetrics.getBucketUpperBoundNanos(StageMetrics.bucketOf(1_000_000)) / 1e6));
+
+        long[] counts = metrics.getBucketCounts();
+        Assert.assertThat("The shorter times should share a bucket", counts[StageMetrics.bucketOf(1_000_000)],
+                CoreMatchers.is(99L));
+        Assert.assertThat("The longest time should be in its own bucket", counts[StageMetrics.bucketOf(1_000_000_000)],
+                CoreMatchers.is(1L));
+    }
+
+    /**
+     * Tests that the bytes read and written through the streams wrapped by the metrics are counted.
+     */
+    @Test
+    public void testCountBytes_streamsRead_bytesCounted() throws IOException {
+        StageMetrics metrics = new StageMetrics("test");
+
+        try (InputStream in = metrics.countBytes(new ByteArrayInputStream(new byte[100]))) {
+            in.read();
+            in.read(new byte[10]);
+            in.readAllBytes();
+            in.read();
+        }
+        Assert.assertThat("Every byte read should be counted", metrics.getBytes(), CoreMatchers.is(100L));
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        try (OutputStream out = metrics.countBytes(written)) {
+            out.write(1);
+            out.write(new byte[49]);
+        }
+        Assert.assertThat("Every byte written should be counted", metrics.getBytes(), CoreMatchers.is(150L));
+        Assert.assertThat("Every byte should be written through", written.size(), CoreMatchers.is(50));
+    }
+
+}
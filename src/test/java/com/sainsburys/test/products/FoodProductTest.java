@@ -22,4 +22,32 @@ public class FoodProductTest {
 		Assert.assertThat("The VAT on the product is incorrect", product.getVat(), CoreMatchers.is(2.00));
 	}
 
+	/**
+	 * Tests that a {@link FoodProduct} created from the price in pence and the calories as a number holds the same values.
+	 */
+	@Test
+	public void foodProductCreationTest_pricePenceAndCalories() {
+		FoodProduct product = new FoodProduct("product_name", "product_description", 1000L, 55);
+		Assert.assertThat("The number of calories on the product is incorrect", product.getCalories(), CoreMatchers.is("55"));
+		Assert.assertThat("The price of the product is incorrect", product.getPricePence(), CoreMatchers.is(1000L));
+		Assert.assertThat("The VAT on the product is incorrect", product.getVatPence(), CoreMatchers.is(200L));
+	}
+
+	/**
+	 * Tests that the calories given as a number are held as one, and that calories set as text replace them.
+	 */
+	@Test
+	public void foodProductCaloriesValueTest() {
+		FoodProduct product = new FoodProduct("product_name", "product_description", 1000L, 55);
+		Assert.assertThat("The calories should be held as a number", product.getCaloriesValue(), CoreMatchers.is(55));
+
+		product.setCalories("60");
+		Assert.assertThat("The calories set as text should replace the number", product.getCaloriesValue(),
+				CoreMatchers.is(ProductBatch.NO_CALORIES));
+		Assert.assertThat("The calories set as text should be given back", product.getCalories(), CoreMatchers.is("60"));
+		Assert.assertThat("Calories given as text aren't held as a number",
+				new FoodProduct("product_name", "product_description", "10.00", "55").getCaloriesValue(),
+				CoreMatchers.is(ProductBatch.NO_CALORIES));
+	}
+
 }
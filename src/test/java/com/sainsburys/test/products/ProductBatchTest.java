@@ -0,0 +1,121 @@
+package com.sainsburys.test.products;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link ProductBatch} class.
+ */
+public class ProductBatchTest {
+
+    private ProductBatch batch;
+
+    @Before
+    public void before() {
+        batch = new ProductBatch(1);
+    }
+
+    /**
+     * Tests that the values of each product added are held in the order they were added, growing the batch as needed.
+     */
+    @Test
+    public void testAdd_productsAdded_valuesHeldInOrder() {
+        batch.add(new Product("Product1", "Description1", "10.00"));
+        batch.add(new FoodProduct("FoodProduct1", null, "5.00", "42"));
+        batch.add("Product2", "Description2", 75, ProductBatch.NO_CALORIES);
+
+        Assert.assertThat("The number of products is incorrect", batch.size(), CoreMatchers.is(3));
+        Assert.assertThat("The name of the first product is incorrect", batch.getName(0), CoreMatchers.is("Product1"));
+        Assert.assertThat("The description of the second product should be null", batch.getDescription(1),
+                CoreMatchers.nullValue());
+        Assert.assertThat("The calories of the second product are incorrect", batch.getCalories(1),
+                CoreMatchers.is(42));
+        Assert.assertThat("The first product should not be a food product", batch.isFoodProduct(0),
+                CoreMatchers.is(false));
+        Assert.assertThat("The price of the third product is incorrect", batch.getPricePence(2), CoreMatchers.is(75L));
+        Assert.assertThat("The VAT of the third product is incorrect", batch.getVatPence(2), CoreMatchers.is(15L));
+        Assert.assertThat("The total price is incorrect", batch.getTotalPricePence(), CoreMatchers.is(1575L));
+        Assert.assertThat("The total VAT is incorrect", batch.getTotalVatPence(), CoreMatchers.is(315L));
+    }
+
+    /**
+     * Tests that names and descriptions shared by several products are only held once.
+     */
+    @Test
+    public void testAdd_sharedDescriptions_heldOnce() {
+        for (int i = 0; i < 1000; i++) {
+            batch.add("Product" + (i % 10), "Description", 100, ProductBatch.NO_CALORIES);
+        }
+
+        Assert.assertThat("The number of products is incorrect", batch.size(), CoreMatchers.is(1000));
+        Assert.assertThat("Each distinct name and description should be held once", batch.distinctStringCount(),
+                CoreMatchers.is(11));
+        Assert.assertThat("The name of a product is incorrect", batch.getName(123), CoreMatchers.is("Product3"));
+    }
+
+    /**
+     * Tests that a trimmed batch keeps the values of its products, and still holds shared strings once if more
+     * products are added to it.
+     */
+    @Test
+    public void testTrimToSize_productsKeptAndStillShared() {
+        batch.add("Product1", "Description", 100, ProductBatch.NO_CALORIES);
+        batch.add("Product2", "Description", 200, 42);
+
+        batch.trimToSize();
+
+        Assert.assertThat("The number of products is incorrect", batch.size(), CoreMatchers.is(2));
+        Assert.assertThat("The name of a product is incorrect", batch.getName(1), CoreMatchers.is("Product2"));
+        Assert.assertThat("The calories of a product are incorrect", batch.getCalories(1), CoreMatchers.is(42));
+
+        batch.add("Product1", "Description", 300, ProductBatch.NO_CALORIES);
+        Assert.assertThat("The strings already held should be shared once trimmed", batch.distinctStringCount(),
+                CoreMatchers.is(3));
+        Assert.assertThat("The price of the product added is incorrect", batch.getPricePence(2),
+                CoreMatchers.is(300L));
+    }
+
+    /**
+     * Tests that the products created from the batch have the same values as those added.
+     */
+    @Test
+    public void testGetProduct_productsAdded_sameValues() {
+        batch.add(new Product("Product1", "Description1", "10.00"));
+        batch.add(new FoodProduct("FoodProduct1", "FoodDesc1", "5.00", "42"));
+
+        Product product = batch.getProduct(0);
+        Assert.assertThat("The first product should not be a food product", product,
+                CoreMatchers.not(CoreMatchers.instanceOf(FoodProduct.class)));
+        Assert.assertThat("The name of the first product is incorrect", product.getName(), CoreMatchers.is("Product1"));
+        Assert.assertThat("The price of the first product is incorrect", product.getPricePence(),
+                CoreMatchers.is(1000L));
+
+        Product foodProduct = batch.getProduct(1);
+        Assert.assertThat("The second product should be a food product", foodProduct,
+                CoreMatchers.instanceOf(FoodProduct.class));
+        Assert.assertThat("The calories of the second product are incorrect",
+                ((FoodProduct) foodProduct).getCalories(), CoreMatchers.is("42"));
+        Assert.assertThat("The VAT of the second product is incorrect", foodProduct.getVatPence(),
+                CoreMatchers.is(100L));
+    }
+
+    /**
+     * Tests that a food product can't be added if its calories aren't a whole number.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdd_caloriesNotWholeNumber_illegalArgumentExceptionThrown() {
+        batch.add(new FoodProduct("FoodProduct1", "FoodDesc1", "5.00", "lots"));
+    }
+
+    /**
+     * Tests that a product can't be read from outside of the batch.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetName_indexOutsideBatch_indexOutOfBoundsExceptionThrown() {
+        batch.add(new Product("Product1", "Description1", "10.00"));
+        batch.getName(1);
+    }
+
+}
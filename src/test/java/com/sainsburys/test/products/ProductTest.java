@@ -1,5 +1,7 @@
 package com.sainsburys.test.products;
 
+import java.text.DecimalFormat;
+
 import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
 import org.junit.Test;
@@ -36,4 +38,49 @@ public class ProductTest {
         Assert.assertThat("The VAT on the product is incorrect", product.getVat(), CoreMatchers.is(0.00));
     }
 
+    /**
+     * Tests that prices are parsed into pence, rounding half up on the third decimal place.
+     */
+    @Test
+    public void productCreationTest_pricesParsedToPence() {
+        Assert.assertThat("A price with pence is incorrect", pence("1.75"), CoreMatchers.is(175L));
+        Assert.assertThat("A price with one decimal place is incorrect", pence("1.5"), CoreMatchers.is(150L));
+        Assert.assertThat("A price in whole pounds is incorrect", pence("2"), CoreMatchers.is(200L));
+        Assert.assertThat("A price with a trailing point is incorrect", pence("2."), CoreMatchers.is(200L));
+        Assert.assertThat("A price without pounds is incorrect", pence(".5"), CoreMatchers.is(50L));
+        Assert.assertThat("A price half a penny up is incorrect", pence("0.125"), CoreMatchers.is(13L));
+        Assert.assertThat("A price under half a penny up is incorrect", pence("0.1249"), CoreMatchers.is(12L));
+        Assert.assertThat("An unusual price is incorrect", pence("1e2"), CoreMatchers.is(10000L));
+        Assert.assertThat("A negative price is incorrect", pence("-1.25"), CoreMatchers.is(-125L));
+    }
+
+    /**
+     * Tests that a price that isn't a number can't be used to create a product.
+     */
+    @Test(expected = NumberFormatException.class)
+    public void productCreationTest_invalidPrice() {
+        new Product("product_name", "product_description", "1.2.3");
+    }
+
+    /**
+     * Tests that the VAT is rounded to the nearest penny, in the same way as formatting 20% of the price to two decimal
+     * places.
+     */
+    @Test
+    public void productCreationTest_vatRoundedToNearestPenny() {
+        DecimalFormat df = new DecimalFormat("##.00");
+        for (long pence = 0; pence < 100000; pence++) {
+            String price = String.format("%d.%02d", pence / 100, pence % 100);
+            Product product = new Product("product_name", "product_description", price);
+            Assert.assertThat("The VAT on " + price + " is incorrect", product.getVat(),
+                    CoreMatchers.is(Double.parseDouble(df.format(Double.parseDouble(price) * 0.2))));
+            Assert.assertThat("The price of " + price + " is incorrect", product.getPrice(),
+                    CoreMatchers.is(Double.parseDouble(price)));
+        }
+    }
+
+    private static long pence(String price) {
+        return new Product("product_name", "product_description", price).getPricePence();
+    }
+
 }
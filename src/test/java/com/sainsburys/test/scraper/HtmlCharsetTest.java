@@ -0,0 +1,94 @@
+package com.sainsburys.test.scraper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link HtmlCharset} class.
+ */
+public class HtmlCharsetTest {
+
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    /**
+     * Tests that the character set given by either form of meta tag is used, and that the stream is left at the start
+     * of the page.
+     */
+    @Test
+    public void testDetect_metaTagGiven_metaCharsetUsed() throws IOException {
+        String html = "<html><head><META Charset='windows-1252'></head><body>Cr\u00e8me</body></html>";
+        InputStream in = stream(html.getBytes(WINDOWS_1252));
+
+        Assert.assertThat("The charset of the meta tag should be used", HtmlCharset.detect(in, StandardCharsets.UTF_8),
+                CoreMatchers.is(WINDOWS_1252));
+        Assert.assertThat("The stream should be left at the start of the page", new String(in.readAllBytes(),
+                WINDOWS_1252), CoreMatchers.is(html));
+
+        Assert.assertThat("The charset of the http-equiv meta tag should be used",
+                HtmlCharset.detect(stream(("<meta http-equiv=\"Content-Type\" "
+                        + "content=\"text/html; charset=ISO-8859-1\"><p>Hi</p>").getBytes(StandardCharsets.ISO_8859_1)),
+                        StandardCharsets.UTF_8),
+                CoreMatchers.is(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Tests that a byte order mark is used before any meta tag, and is skipped so it isn't read as part of the page.
+     */
+    @Test
+    public void testDetect_byteOrderMark_bomUsedAndSkipped() throws IOException {
+        byte[] html = "<meta charset=\"windows-1252\"><p>Hi</p>".getBytes(StandardCharsets.UTF_8);
+        byte[] withBom = new byte[html.length + 3];
+        withBom[0] = (byte) 0xEF;
+        withBom[1] = (byte) 0xBB;
+        withBom[2] = (byte) 0xBF;
+        System.arraycopy(html, 0, withBom, 3, html.length);
+        InputStream in = stream(withBom);
+
+        Assert.assertThat("The byte order mark should be used", HtmlCharset.detect(in, WINDOWS_1252),
+                CoreMatchers.is(StandardCharsets.UTF_8));
+        Assert.assertThat("The byte order mark should be skipped", in.readAllBytes(), CoreMatchers.is(html));
+    }
+
+    /**
+     * Tests that the fallback is used when the page doesn't give a character set, or gives one that isn't supported.
+     */
+    @Test
+    public void testDetect_noSupportedCharset_fallbackUsed() throws IOException {
+        Assert.assertThat("The fallback should be used without a meta tag",
+                HtmlCharset.detect(stream("<p>Hi</p>".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8),
+                CoreMatchers.is(StandardCharsets.UTF_8));
+        Assert.assertThat("The fallback should be used for an unknown charset",
+                HtmlCharset.detect(stream("<meta charset=\"made-up\">".getBytes(StandardCharsets.UTF_8)),
+                        StandardCharsets.UTF_8),
+                CoreMatchers.is(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that a meta tag past the start of the page looked at is ignored.
+     */
+    @Test
+    public void testDetect_metaTagPastPrefix_fallbackUsed() throws IOException {
+        StringBuilder html = new StringBuilder("<html><head>");
+        while (html.length() < HtmlCharset.PREFIX_BYTES) {
+            html.append("<!-- padding -->");
+        }
+        html.append("<meta charset=\"windows-1252\"></head></html>");
+
+        Assert.assertThat("The late meta tag should be ignored",
+                HtmlCharset.detect(stream(html.toString().getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8),
+                CoreMatchers.is(StandardCharsets.UTF_8));
+    }
+
+    private static InputStream stream(byte[] bytes) {
+        return new BufferedInputStream(new ByteArrayInputStream(bytes));
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.sainsburys.test.scraper;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link NumericText} class.
+ */
+public class NumericTextTest {
+
+    /**
+     * Tests that the price is found in pence whatever surrounds it on the web page.
+     */
+    @Test
+    public void testExtractPence_pricesAsShown_pence() {
+        Assert.assertThat("A price per unit is incorrect", NumericText.extractPence("£1.75/unit"),
+                CoreMatchers.is(175L));
+        Assert.assertThat("A plain price is incorrect", NumericText.extractPence("9.00"), CoreMatchers.is(900L));
+        Assert.assertThat("A price after symbols is incorrect", NumericText.extractPence("$%9.00"),
+                CoreMatchers.is(900L));
+        Assert.assertThat("A price in whole pounds is incorrect", NumericText.extractPence("£2/unit"),
+                CoreMatchers.is(200L));
+        Assert.assertThat("A price with one decimal place is incorrect", NumericText.extractPence("1.5"),
+                CoreMatchers.is(150L));
+        Assert.assertThat("A price without pounds is incorrect", NumericText.extractPence(".50"),
+                CoreMatchers.is(50L));
+        Assert.assertThat("A price with a trailing point is incorrect", NumericText.extractPence("3.kg"),
+                CoreMatchers.is(300L));
+        Assert.assertThat("A price with a thousands separator is incorrect", NumericText.extractPence("1,234.50"),
+                CoreMatchers.is(123450L));
+    }
+
+    /**
+     * Tests that only the first two decimal places are kept, rounding half up on the third.
+     */
+    @Test
+    public void testExtractPence_moreDecimalPlaces_roundedHalfUp() {
+        Assert.assertThat("Half a penny should be rounded up", NumericText.extractPence("0.125"),
+                CoreMatchers.is(13L));
+        Assert.assertThat("Under half a penny should be rounded down", NumericText.extractPence("0.1249"),
+                CoreMatchers.is(12L));
+    }
+
+    /**
+     * Tests that only the first number is taken when the text holds more than one.
+     */
+    @Test
+    public void testExtractPence_severalNumbers_firstTaken() {
+        Assert.assertThat("The first price should be taken", NumericText.extractPence("£1.75/unit 2 for £3"),
+                CoreMatchers.is(175L));
+    }
+
+    /**
+     * Tests that nothing is found for text without a number, or with one too large to hold.
+     */
+    @Test
+    public void testExtractPence_noNumber_notFound() {
+        Assert.assertThat("Nothing should be found in empty text", NumericText.extractPence(""),
+                CoreMatchers.is((long) NumericText.NOT_FOUND));
+        Assert.assertThat("Nothing should be found without digits", NumericText.extractPence("£./unit"),
+                CoreMatchers.is((long) NumericText.NOT_FOUND));
+        Assert.assertThat("Nothing should be found for a number too large",
+                NumericText.extractPence("12345678901234567"), CoreMatchers.is((long) NumericText.NOT_FOUND));
+    }
+
+    /**
+     * Tests that the calories are found whatever surrounds them on the web page.
+     */
+    @Test
+    public void testExtractWholeNumber_caloriesAsShown_number() {
+        Assert.assertThat("Calories with units are incorrect", NumericText.extractWholeNumber("52kcal"),
+                CoreMatchers.is(52));
+        Assert.assertThat("Plain calories are incorrect", NumericText.extractWholeNumber("55"), CoreMatchers.is(55));
+        Assert.assertThat("Calories with a thousands separator are incorrect",
+                NumericText.extractWholeNumber("1,234 kcal"), CoreMatchers.is(1234));
+        Assert.assertThat("Only the whole number should be taken", NumericText.extractWholeNumber("33.5kcal"),
+                CoreMatchers.is(33));
+    }
+
+    /**
+     * Tests that nothing is found for text without a number, or with one too large to hold.
+     */
+    @Test
+    public void testExtractWholeNumber_noNumber_notFound() {
+        Assert.assertThat("Nothing should be found in empty text", NumericText.extractWholeNumber(""),
+                CoreMatchers.is(NumericText.NOT_FOUND));
+        Assert.assertThat("Nothing should be found without digits", NumericText.extractWholeNumber("kcal"),
+                CoreMatchers.is(NumericText.NOT_FOUND));
+        Assert.assertThat("Nothing should be found for a number too large",
+                NumericText.extractWholeNumber("12345678901kcal"), CoreMatchers.is(NumericText.NOT_FOUND));
+    }
+
+}
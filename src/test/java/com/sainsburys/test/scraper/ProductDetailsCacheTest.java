@@ -0,0 +1,108 @@
+package com.sainsburys.test.scraper;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test class for the {@link ProductDetailsCache}.
+ */
+public class ProductDetailsCacheTest {
+
+    private final long[] now = new long[1];
+
+    private ProductDetailsCache cache;
+
+    private URL strawberries;
+
+    private URL blueberries;
+
+    private URL cherries;
+
+    @Before
+    public void before() throws MalformedURLException {
+        cache = new ProductDetailsCache(2, 10, TimeUnit.SECONDS, () -> now[0]);
+        strawberries = new URL("http://www.google.com/strawberries.html");
+        blueberries = new URL("http://www.google.com/blueberries.html");
+        cherries = new URL("http://www.google.com/cherries.html");
+    }
+
+    /**
+     * Tests that details are found for a page once they have been put in the cache, counting the lookups as a miss
+     * then a hit.
+     */
+    @Test
+    public void testGet_detailsPut_detailsFoundAndHitCounted() {
+        ProductDetails details = new ProductDetails("description", 33);
+
+        Assert.assertThat("Nothing should be found before the details are put", cache.get(strawberries),
+                CoreMatchers.nullValue());
+        cache.put(strawberries, details);
+
+        Assert.assertThat("The details put should be found", cache.get(strawberries), CoreMatchers.is(details));
+        Assert.assertThat("The hit count is incorrect", cache.getHitCount(), CoreMatchers.is(1L));
+        Assert.assertThat("The miss count is incorrect", cache.getMissCount(), CoreMatchers.is(1L));
+        Assert.assertThat("The hit rate is incorrect", cache.getHitRate(), CoreMatchers.is(0.5));
+    }
+
+    /**
+     * Tests that once the cache is full, the details that were least recently used are evicted.
+     */
+    @Test
+    public void testPut_cacheFull_leastRecentlyUsedEvicted() {
+        cache.put(strawberries, new ProductDetails("strawberries", NumericText.NOT_FOUND));
+        cache.put(blueberries, new ProductDetails("blueberries", NumericText.NOT_FOUND));
+
+        // Using the strawberries leaves the blueberries as the least recently used
+        cache.get(strawberries);
+        cache.put(cherries, new ProductDetails("cherries", NumericText.NOT_FOUND));
+
+        Assert.assertThat("The cache should stay at its maximum size", cache.size(), CoreMatchers.is(2));
+        Assert.assertThat("The eviction count is incorrect", cache.getEvictionCount(), CoreMatchers.is(1L));
+        Assert.assertThat("The least recently used details should be evicted", cache.get(blueberries),
+                CoreMatchers.nullValue());
+        Assert.assertThat("The recently used details should be kept", cache.get(strawberries).getDescription(),
+                CoreMatchers.is("strawberries"));
+        Assert.assertThat("The newest details should be kept", cache.get(cherries).getDescription(),
+                CoreMatchers.is("cherries"));
+    }
+
+    /**
+     * Tests that details are no longer found once they have been held for longer than the time to live.
+     */
+    @Test
+    public void testGet_timeToLivePassed_detailsExpired() {
+        cache.put(strawberries, new ProductDetails("description", 33));
+
+        now[0] += TimeUnit.SECONDS.toNanos(9);
+        Assert.assertThat("The details should be found before they expire", cache.get(strawberries),
+                CoreMatchers.notNullValue());
+
+        now[0] += TimeUnit.SECONDS.toNanos(1);
+        Assert.assertThat("The details should not be found once expired", cache.get(strawberries),
+                CoreMatchers.nullValue());
+        Assert.assertThat("The expired details should be removed", cache.size(), CoreMatchers.is(0));
+    }
+
+    /**
+     * Tests that an {@link IllegalArgumentException} is thrown if the cache can't hold any details.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testProductDetailsCache_noEntries_illegalArgumentExceptionThrown() {
+        new ProductDetailsCache(0, 10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Tests that an {@link IllegalArgumentException} is thrown if the details wouldn't be held for any time.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testProductDetailsCache_noTimeToLive_illegalArgumentExceptionThrown() {
+        new ProductDetailsCache(10, 0, TimeUnit.SECONDS);
+    }
+
+}
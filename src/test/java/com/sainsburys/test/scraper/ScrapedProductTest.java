@@ -0,0 +1,61 @@
+package com.sainsburys.test.scraper;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+
+/**
+ * Unit tests for the {@link ScrapedProduct} class.
+ */
+public class ScrapedProductTest {
+
+    /**
+     * Tests that no product is created when no name was scraped, as we don't know what to call the product.
+     */
+    @Test
+    public void testToProduct_noName_null() {
+        ScrapedProduct scraped = new ScrapedProduct(" ", "description", 1000L, 23);
+        Assert.assertThat("No product should be created without a name", scraped.toProduct(),
+                CoreMatchers.nullValue());
+    }
+
+    /**
+     * Tests that a standard {@link Product} is created with the scraped values when no calories were scraped.
+     */
+    @Test
+    public void testToProduct_noCalories_product() {
+        Product result = new ScrapedProduct("name", "description", 1000L, NumericText.NOT_FOUND).toProduct();
+        Assert.assertThat("The product should not be a FoodProduct", result instanceof FoodProduct,
+                CoreMatchers.is(false));
+        Assert.assertThat("The name of the product is incorrect", result.getName(), CoreMatchers.is("name"));
+        Assert.assertThat("The description of the product is incorrect", result.getDescription(),
+                CoreMatchers.is("description"));
+        Assert.assertThat("The price of the product is incorrect", result.getPrice(), CoreMatchers.is(10.00));
+    }
+
+    /**
+     * Tests that a {@link FoodProduct} is created with the scraped values when calories were scraped.
+     */
+    @Test
+    public void testToProduct_calories_foodProduct() {
+        Product result = new ScrapedProduct("name", "description", 1000L, 23).toProduct();
+        Assert.assertThat("The product should be a FoodProduct", result, CoreMatchers.instanceOf(FoodProduct.class));
+        Assert.assertThat("The number of calories on the product is incorrect", ((FoodProduct) result).getCalories(),
+                CoreMatchers.is("23"));
+    }
+
+    /**
+     * Tests that a product is given a price of 0 when no price was scraped.
+     */
+    @Test
+    public void testToProduct_noPrice_zeroPrice() {
+        Product result = new ScrapedProduct("name", "description", NumericText.NOT_FOUND, NumericText.NOT_FOUND)
+                .toProduct();
+        Assert.assertThat("The price of the product is incorrect", result.getPricePence(), CoreMatchers.is(0L));
+        Assert.assertThat("The VAT on the product is incorrect", result.getVatPence(), CoreMatchers.is(0L));
+    }
+
+}
@@ -0,0 +1,842 @@
+package com.sainsburys.test.scraper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sainsburys.test.fetch.FetchedPage;
+import com.sainsburys.test.fetch.PageFetcher;
+import com.sainsburys.test.metrics.PageFetchEvent;
+import com.sainsburys.test.metrics.PageParseEvent;
+import com.sainsburys.test.metrics.Stage;
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
+
+/**
+ * Unit tests for the streaming parse of the web page and each products further information page by the
+ * {@link Scraper}, using real html rather than mocked DOM objects.
+ */
+public class ScraperStreamingTest {
+
+    private static final String WEB_PAGE_URL = "http://www.google.com/berries/";
+
+    private static final String DESCRIPTION = "<h3 class=\"productDataItemHeader\">Description</h3>"
+            + "<div class=\"productText\"><p>by Sainsbury's strawberries</p></div>";
+
+    private static final String ENERGY_TABLE = "<table class=\"nutritionTable\"><tbody><tr><th>Typical Values</th>"
+            + "<th>Per 100g</th></tr><tr><th rowspan=\"2\">Energy</th><td>136kJ</td></tr><tr><td>33kcal</td></tr>"
+            + "</tbody></table>";
+
+    private static final String ENERGY_KCAL_TABLE = "<table class=\"nutritionTable\"><tr><th>Energy kcal</th>"
+            + "<td>52</td></tr></table>";
+
+    /**
+     * Tests that when there are no elements with the class 'product', then no products are returned.
+     */
+    @Test
+    public void testScrapeWebPage_noProductElements_zeroProducts() throws IOException {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing("<li><div class=\"gridItem\"></div></li>"));
+
+        List<Product> result = new Scraper(WEB_PAGE_URL, fetcher(pages)).scrapeWebPage();
+        Assert.assertThat("There should have been no products found via scraping", result.isEmpty(),
+                CoreMatchers.is(true));
+    }
+
+    /**
+     * Tests that a product element without a name isn't turned into a product, and its further information page isn't
+     * fetched.
+     */
+    @Test
+    public void testScrapeWebPage_productElementWithoutName_detailPageNotFetched() throws IOException {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing("<li><div class=\"product\"><p class=\"pricePerUnit\">&pound;1.75</p></div></li>"));
+
+        List<Product> result = new Scraper(WEB_PAGE_URL, url -> {
+            Assert.assertThat("Only the web page should be fetched", url.toString(), CoreMatchers.is(WEB_PAGE_URL));
+            return fetcher(pages).fetch(url);
+        }).scrapeWebPage();
+        Assert.assertThat("There should have been no products found via scraping", result.isEmpty(),
+                CoreMatchers.is(true));
+    }
+
+    /**
+     * Tests that a product is created for each product element, with a food product created for those that have
+     * calories, in the order they appear on the web page.
+     */
+    @Test
+    public void testScrapeWebPage_productElementsFound_productsCreatedInListingOrder() throws IOException {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing(productElement("strawberries.html", "Strawberries", "1.75")
+                + productElement("bags.html", "Bags", "0.10")));
+        pages.put(WEB_PAGE_URL + "strawberries.html", detailPage(DESCRIPTION + ENERGY_TABLE));
+        pages.put(WEB_PAGE_URL + "bags.html", detailPage("<h3>Description</h3><p>Carrier bag</p>"));
+
+        List<Product> result = new Scraper(WEB_PAGE_URL, fetcher(pages)).scrapeWebPage();
+        Assert.assertThat("There should have been 2 products found via scraping", result.size(), CoreMatchers.is(2));
+        Assert.assertThat("The first product should be a food product", result.get(0),
+                CoreMatchers.instanceOf(FoodProduct.class));
+        Assert.assertThat("The name of the first product is incorrect", result.get(0).getName(),
+                CoreMatchers.is("Strawberries"));
+        Assert.assertThat("The calories of the first product are incorrect",
+                ((FoodProduct) result.get(0)).getCalories(), CoreMatchers.is("33"));
+        Assert.assertThat("The second product should not be a food product", result.get(1),
+                CoreMatchers.not(CoreMatchers.instanceOf(FoodProduct.class)));
+        Assert.assertThat("The description of the second product is incorrect", result.get(1).getDescription(),
+                CoreMatchers.is("Carrier bag"));
+        Assert.assertThat("The price of the second product is incorrect", result.get(1).getPrice(),
+                CoreMatchers.is(0.10));
+    }
+
+    /**
+     * Tests that the products scraped can be held in a {@link ProductBatch}, in the order they appear on the web page.
+     */
+    @Test
+    public void testScrapeWebPageToBatch_productElementsFound_batchFilledInListingOrder() throws IOException {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing(productElement("strawberries.html", "Strawberries", "1.75")
+                + productElement("bags.html", "Bags", "0.10")));
+        pages.put(WEB_PAGE_URL + "strawberries.html", detailPage(DESCRIPTION + ENERGY_TABLE));
+        pages.put(WEB_PAGE_URL + "bags.html", detailPage("<h3>Description</h3><p>Carrier bag</p>"));
+
+        ProductBatch result = new Scraper(WEB_PAGE_URL, fetcher(pages)).scrapeWebPageToBatch();
+        Assert.assertThat("There should have been 2 products found via scraping", result.size(), CoreMatchers.is(2));
+        Assert.assertThat("The name of the first product is incorrect", result.getName(0),
+                CoreMatchers.is("Strawberries"));
+        Assert.assertThat("The calories of the first product are incorrect", result.getCalories(0),
+                CoreMatchers.is(33));
+        Assert.assertThat("The second product should not be a food product", result.isFoodProduct(1),
+                CoreMatchers.is(false));
+        Assert.assertThat("The price of the second product is incorrect", result.getPricePence(1),
+                CoreMatchers.is(10L));
+    }
+
+    /**
+     * Tests that when a virtual thread executor is given, the web page and each product detail page are fetched on
+     * virtual threads, and the products are still returned in the order they were found on the web page even if a
+     * later detail page finishes first.
+     */
+    @Test
+    public void testScrapeWebPage_virtualThreadExecutor_fetchedOnVirtualThreadsInListingOrder() throws IOException {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing(productElement("first.html", "First", "1.00")
+                + productElement("second.html", "Second", "2.00")));
+        pages.put(WEB_PAGE_URL + "first.html", detailPage(DESCRIPTION));
+        pages.put(WEB_PAGE_URL + "second.html", detailPage(DESCRIPTION));
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        PageFetcher pageFetcher = url -> {
+            Assert.assertThat("The page should be fetched on a virtual thread", Thread.currentThread().isVirtual(),
+                    CoreMatchers.is(true));
+            if (url.toString().endsWith("first.html")) {
+                // Holds back the first product so the second one is scraped before it
+                sleep(200);
+            }
+            return fetcher(pages).fetch(url);
+        };
+
+        try {
+            List<Product> result = new Scraper(WEB_PAGE_URL, pageFetcher, executor).scrapeWebPage();
+            Assert.assertThat("There should have been 2 products found via scraping", result.size(),
+                    CoreMatchers.is(2));
+            Assert.assertThat("The first product should be first on the page", result.get(0).getName(),
+                    CoreMatchers.is("First"));
+            Assert.assertThat("The second product should be second on the page", result.get(1).getName(),
+                    CoreMatchers.is("Second"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests that when a cache is shared between scrapes, a product detail page is only fetched the first time the
+     * product is found.
+     */
+    @Test
+    public void testScrapeWebPage_detailsCached_detailPageFetchedOnce() throws IOException {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing(productElement("strawberries.html", "Strawberries", "1.75")));
+        pages.put(WEB_PAGE_URL + "strawberries.html", detailPage(DESCRIPTION + ENERGY_TABLE));
+
+        int[] detailPageFetches = new int[1];
+        PageFetcher pageFetcher = url -> {
+            if (!url.toString().equals(WEB_PAGE_URL)) {
+                detailPageFetches[0]++;
+            }
+            return fetcher(pages).fetch(url);
+        };
+        ProductDetailsCache detailsCache = new ProductDetailsCache(10, 1, TimeUnit.HOURS);
+
+        new Scraper(WEB_PAGE_URL, pageFetcher, null, detailsCache).scrapeWebPage();
+        List<Product> result = new Scraper(WEB_PAGE_URL, pageFetcher, null, detailsCache).scrapeWebPage();
+
+        Assert.assertThat("The calories should come from the cached details",
+                ((FoodProduct) result.get(0)).getCalories(), CoreMatchers.is("33"));
+        Assert.assertThat("The detail page should only be fetched once", detailPageFetches[0], CoreMatchers.is(1));
+        Assert.assertThat("The second scrape should have hit the cache", detailsCache.getHitCount(),
+                CoreMatchers.is(1L));
+    }
+
+    /**
+     * Tests that a page the server doesn't give a character set for is read in the one given by its meta tag, rather
+     * than as UTF-8.
+     */
+    @Test
+    public void testScrapeWebPage_charsetOnlyInMetaTag_pageReadInMetaCharset() throws IOException {
+        Charset windows1252 = Charset.forName("windows-1252");
+        Map<String, byte[]> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing(productElement("creme.html", "Cr\u00e8me fra\u00eeche", "1.75"))
+                .replace("<html>", "<html><head><meta charset=\"windows-1252\"></head>").getBytes(windows1252));
+        pages.put(WEB_PAGE_URL + "creme.html", ("<html><head><meta http-equiv=\"Content-Type\" "
+                + "content=\"text/html; charset=windows-1252\"></head>"
+                + detailPage("<h3 class=\"productDataItemHeader\">Description</h3>"
+                        + "<div class=\"productText\"><p>Cr\u00e8me fra\u00eeche \u2013 30% fat</p></div>")
+                        .substring("<html>".length())).getBytes(windows1252));
+
+        List<Product> result = new Scraper(WEB_PAGE_URL, url -> new FetchedPage(url,
+                new ByteArrayInputStream(pages.get(url.toString())), null)).scrapeWebPage();
+
+        Assert.assertThat("The name should be read in the charset of the meta tag", result.get(0).getName(),
+                CoreMatchers.is("Cr\u00e8me fra\u00eeche"));
+        Assert.assertThat("The description should be read in the charset of the meta tag",
+                result.get(0).getDescription(), CoreMatchers.is("Cr\u00e8me fra\u00eeche \u2013 30% fat"));
+    }
+
+    /**
+     * Tests that when another scrape reads a product detail page between this scrape finding it missing from the cache
+     * and starting to read it, the details held by the other scrape are used rather than the page being fetched again.
+     */
+    @Test
+    public void testScrapeWebPage_detailsHeldAfterMiss_detailPageFetchedOnce() throws IOException {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing(productElement("strawberries.html", "Strawberries", "1.75")));
+        pages.put(WEB_PAGE_URL + "strawberries.html", detailPage(DESCRIPTION + ENERGY_TABLE));
+
+        int[] detailPageFetches = new int[1];
+        PageFetcher pageFetcher = url -> {
+            if (!url.toString().equals(WEB_PAGE_URL)) {
+                detailPageFetches[0]++;
+            }
+            return fetcher(pages).fetch(url);
+        };
+        ProductDetailsCache detailsCache = new ProductDetailsCache(10, 1, TimeUnit.HOURS) {
+            private boolean interleaved;
+
+            @Override
+            public synchronized ProductDetails get(URL itemPageUrl) {
+                ProductDetails details = super.get(itemPageUrl);
+                if (!interleaved) {
+                    // Another scrape reads and holds the detail page straight after this lookup missed
+                    interleaved = true;
+                    try {
+                        new Scraper(WEB_PAGE_URL, pageFetcher, null, this).scrapeWebPage();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return details;
+            }
+        };
+
+        List<Product> result = new Scraper(WEB_PAGE_URL, pageFetcher, null, detailsCache).scrapeWebPage();
+
+        Assert.assertThat("The calories should come from the details held by the other scrape",
+                ((FoodProduct) result.get(0)).getCalories(), CoreMatchers.is("33"));
+        Assert.assertThat("The detail page should only be fetched once", detailPageFetches[0], CoreMatchers.is(1));
+        Assert.assertThat("Only the other scrape should have missed the cache", detailsCache.getMissCount(),
+                CoreMatchers.is(1L));
+    }
+
+    /**
+     * Tests that when the same product detail page is wanted by two products at once, it is only fetched once and both
+     * products are given its details.
+     */
+    @Test
+    public void testScrapeWebPage_sameDetailPageConcurrently_detailPageFetchedOnce() throws IOException {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing(productElement("shared.html", "First", "1.00")
+                + productElement("shared.html", "Second", "2.00")));
+        pages.put(WEB_PAGE_URL + "shared.html", detailPage(DESCRIPTION + ENERGY_TABLE));
+
+        int[] detailPageFetches = new int[1];
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        PageFetcher pageFetcher = url -> {
+            if (!url.toString().equals(WEB_PAGE_URL)) {
+                synchronized (detailPageFetches) {
+                    detailPageFetches[0]++;
+                }
+                // Holds the detail page open so the second product asks for it whilst it is still being fetched
+                sleep(300);
+            }
+            return fetcher(pages).fetch(url);
+        };
+
+        try {
+            List<Product> result = new Scraper(WEB_PAGE_URL, pageFetcher, executor).scrapeWebPage();
+            Assert.assertThat("There should have been 2 products found via scraping", result.size(),
+                    CoreMatchers.is(2));
+            Assert.assertThat("The second product should share the calories of the detail page",
+                    ((FoodProduct) result.get(1)).getCalories(), CoreMatchers.is("33"));
+            synchronized (detailPageFetches) {
+                Assert.assertThat("The detail page should only be fetched once", detailPageFetches[0],
+                        CoreMatchers.is(1));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests that with a bounded pool of detail fetch threads, the detail pages are fetched at the same time but no more
+     * than the pool allows, the products are still returned in listing order when a later detail page finishes first,
+     * and the pool is shut down once the scrape has finished.
+     */
+    @Test
+    public void testScrapeWebPage_boundedDetailFetchThreads_productsInListingOrder() throws Exception {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing(productElement("first.html", "First", "1.00")
+                + productElement("second.html", "Second", "2.00") + productElement("third.html", "Third", "3.00")));
+        pages.put(WEB_PAGE_URL + "first.html", detailPage(DESCRIPTION));
+        pages.put(WEB_PAGE_URL + "second.html", detailPage(DESCRIPTION));
+        pages.put(WEB_PAGE_URL + "third.html", detailPage(DESCRIPTION));
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger mostInFlight = new AtomicInteger();
+        List<Thread> fetchThreads = new CopyOnWriteArrayList<>();
+        PageFetcher pageFetcher = url -> {
+            if (!url.toString().equals(WEB_PAGE_URL)) {
+                fetchThreads.add(Thread.currentThread());
+                mostInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    // Holds back the first product so the ones after it finish first
+                    sleep(url.toString().endsWith("first.html") ? 300 : 100);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+            return fetcher(pages).fetch(url);
+        };
+
+        List<Product> result = new Scraper(WEB_PAGE_URL, pageFetcher, 2).scrapeWebPage();
+
+        Assert.assertThat("There should have been 3 products found via scraping", result.size(), CoreMatchers.is(3));
+        Assert.assertThat("The first product should be first on the page", result.get(0).getName(),
+                CoreMatchers.is("First"));
+        Assert.assertThat("The second product should be second on the page", result.get(1).getName(),
+                CoreMatchers.is("Second"));
+        Assert.assertThat("The third product should be third on the page", result.get(2).getName(),
+                CoreMatchers.is("Third"));
+        Assert.assertThat("The detail pages should be fetched two at a time", mostInFlight.get(), CoreMatchers.is(2));
+        for (Thread fetchThread : fetchThreads) {
+            fetchThread.join(5000);
+            Assert.assertThat("The pool should be shut down once the scrape has finished", fetchThread.isAlive(),
+                    CoreMatchers.is(false));
+        }
+    }
+
+    /**
+     * Tests that when scraping one detail page after another, each product is handed on in listing order as soon as it
+     * has been scraped, before the detail pages of the products after it are fetched.
+     */
+    @Test
+    public void testScrapeWebPage_productConsumer_productsHandedOnAsScraped() throws IOException {
+        Map<String, String> pages = twoProductPages();
+        List<String> events = new ArrayList<>();
+
+        new Scraper(WEB_PAGE_URL, url -> {
+            events.add("fetched " + url.toString().substring(WEB_PAGE_URL.length()));
+            return fetcher(pages).fetch(url);
+        }).scrapeWebPage(product -> events.add("handed on " + product.getName()));
+
+        Assert.assertThat("The products should be handed on as they are scraped", events, CoreMatchers.is(List.of(
+                "fetched ", "fetched first.html", "handed on First", "fetched second.html", "handed on Second")));
+    }
+
+    /**
+     * Tests that scraping the web page asynchronously gives back the products in the order they appear on the web
+     * page, even if a later detail page finishes first.
+     */
+    @Test
+    public void testScrapeWebPageAsync_productsScraped_productsInListingOrder() throws Exception {
+        Map<String, String> pages = twoProductPages();
+
+        CompletableFuture<List<Product>> result = new Scraper(WEB_PAGE_URL, delayFirst(fetcher(pages)),
+                Executors.newVirtualThreadPerTaskExecutor()).scrapeWebPageAsync();
+        List<Product> products = result.get(5, TimeUnit.SECONDS);
+
+        Assert.assertThat("There should have been 2 products found via scraping", products.size(),
+                CoreMatchers.is(2));
+        Assert.assertThat("The first product should be first on the page", products.get(0).getName(),
+                CoreMatchers.is("First"));
+        Assert.assertThat("The second product should be second on the page", products.get(1).getName(),
+                CoreMatchers.is("Second"));
+    }
+
+    /**
+     * Tests that scraping the web page asynchronously fails with an {@link IOException} when a detail page can't be
+     * fetched.
+     */
+    @Test
+    public void testScrapeWebPageAsync_detailPageMissing_ioExceptionGiven() throws Exception {
+        Map<String, String> pages = twoProductPages();
+        pages.remove(WEB_PAGE_URL + "second.html");
+
+        try {
+            new Scraper(WEB_PAGE_URL, fetcher(pages)).scrapeWebPageAsync().get(5, TimeUnit.SECONDS);
+            Assert.fail("The scrape should have failed");
+        } catch (ExecutionException e) {
+            Assert.assertThat("The failure should be an IOException", e.getCause(),
+                    CoreMatchers.instanceOf(IOException.class));
+        }
+    }
+
+    /**
+     * Tests that each product is published as soon as its detail page has been read, so a product whose detail page
+     * finishes first is published first, and that the subscriber is told once every product has been published.
+     */
+    @Test
+    public void testPublishWebPage_productsScraped_publishedInCompletionOrder() throws Exception {
+        Map<String, String> pages = twoProductPages();
+        List<String> published = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+
+        new Scraper(WEB_PAGE_URL, delayFirst(fetcher(pages)), Executors.newVirtualThreadPerTaskExecutor())
+                .publishWebPage().subscribe(new Flow.Subscriber<Product>() {
+                    private Flow.Subscription subscription;
+
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        this.subscription = subscription;
+                        subscription.request(1);
+                    }
+
+                    @Override
+                    public void onNext(Product product) {
+                        published.add(product.getName());
+                        subscription.request(1);
+                    }
+
+                    @Override
+                    public void onError(Throwable failure) {
+                        completed.completeExceptionally(failure);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        completed.complete(null);
+                    }
+                });
+
+        completed.get(5, TimeUnit.SECONDS);
+        Assert.assertThat("The products should be published as their detail pages complete", published,
+                CoreMatchers.is(List.of("Second", "First")));
+    }
+
+    /**
+     * Tests that once the subscriber cancels, the detail pages that haven't been started yet aren't fetched.
+     */
+    @Test
+    public void testPublishWebPage_subscriptionCancelled_remainingDetailPagesNotFetched() throws Exception {
+        StringBuilder productElements = new StringBuilder();
+        Map<String, String> pages = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            productElements.append(productElement("product" + i + ".html", "Product " + i, "1.00"));
+            pages.put(WEB_PAGE_URL + "product" + i + ".html", detailPage(DESCRIPTION));
+        }
+        pages.put(WEB_PAGE_URL, listing(productElements.toString()));
+
+        AtomicInteger detailPageFetches = new AtomicInteger();
+        PageFetcher pageFetcher = url -> {
+            if (!url.toString().equals(WEB_PAGE_URL)) {
+                detailPageFetches.incrementAndGet();
+                sleep(100);
+            }
+            return fetcher(pages).fetch(url);
+        };
+        CountDownLatch cancelled = new CountDownLatch(1);
+
+        new Scraper(WEB_PAGE_URL, pageFetcher).publishWebPage().subscribe(new Flow.Subscriber<Product>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Product product) {
+                subscription.cancel();
+                cancelled.countDown();
+            }
+
+            @Override
+            public void onError(Throwable failure) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        Assert.assertThat("The subscriber should have been given a product", await(cancelled), CoreMatchers.is(true));
+        // Gives the scrape time to fetch the rest of the detail pages, one after another, if it was going to
+        Thread.sleep(600);
+        Assert.assertThat("Only the detail pages started before cancelling should be fetched",
+                detailPageFetches.get() <= 2, CoreMatchers.is(true));
+    }
+
+    /**
+     * Tests that the detail page of a product is fetched as soon as its element has been parsed, whilst the rest of
+     * the web page is still being read.
+     */
+    @Test
+    public void testScrapeWebPage_productElementParsed_detailPageFetchedBeforeWebPageRead() throws IOException {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL + "first.html", detailPage(DESCRIPTION));
+
+        CountDownLatch detailPageFetched = new CountDownLatch(1);
+        boolean[] fetchedBeforeWebPageRead = new boolean[1];
+
+        // Enough padding follows the product that the parser has it before reaching the rest of the web page
+        byte[] start = ("<html><body><ul>" + productElement("first.html", "First", "1.00") + "<!--"
+                + " ".repeat(8192) + "-->").getBytes(StandardCharsets.UTF_8);
+        InputStream restOfPage = new InputStream() {
+            private InputStream rest;
+
+            @Override
+            public int read() throws IOException {
+                if (null == rest) {
+                    // Holds the rest of the web page back until the detail page has been fetched, or gives up
+                    fetchedBeforeWebPageRead[0] = await(detailPageFetched);
+                    rest = new ByteArrayInputStream("</ul></body></html>".getBytes(StandardCharsets.UTF_8));
+                }
+                return rest.read();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        PageFetcher pageFetcher = url -> {
+            if (url.toString().equals(WEB_PAGE_URL)) {
+                return new FetchedPage(url, new SequenceInputStream(new ByteArrayInputStream(start), restOfPage),
+                        "UTF-8");
+            }
+            detailPageFetched.countDown();
+            return fetcher(pages).fetch(url);
+        };
+
+        try {
+            List<Product> result = new Scraper(WEB_PAGE_URL, pageFetcher, executor).scrapeWebPage();
+            Assert.assertThat("There should have been 1 product found via scraping", result.size(),
+                    CoreMatchers.is(1));
+            Assert.assertThat("The detail page should be fetched before the web page has been read",
+                    fetchedBeforeWebPageRead[0], CoreMatchers.is(true));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests that the description and calories are found when the nutrition table has an 'Energy' row.
+     */
+    @Test
+    public void testGetProductDetails_energyRow_descriptionAndCaloriesFound() throws IOException {
+        ProductDetails result = getProductDetails(page(DESCRIPTION + ENERGY_TABLE));
+        Assert.assertThat("The description is incorrect", result.getDescription(),
+                CoreMatchers.is("by Sainsbury's strawberries"));
+        Assert.assertThat("The calories are incorrect", result.getCalories(), CoreMatchers.is(33));
+    }
+
+    /**
+     * Tests that the description and calories are found when the nutrition table has an 'Energy kcal' row.
+     */
+    @Test
+    public void testGetProductDetails_energyKcalRow_descriptionAndCaloriesFound() throws IOException {
+        ProductDetails result = getProductDetails(page(DESCRIPTION + ENERGY_KCAL_TABLE));
+        Assert.assertThat("The description is incorrect", result.getDescription(),
+                CoreMatchers.is("by Sainsbury's strawberries"));
+        Assert.assertThat("The calories are incorrect", result.getCalories(), CoreMatchers.is(52));
+    }
+
+    /**
+     * Tests that only the description is found for a page without a nutrition table.
+     */
+    @Test
+    public void testGetProductDetails_noNutritionTable_descriptionOnly() throws IOException {
+        ProductDetails result = getProductDetails(page(DESCRIPTION + "<h3>Size</h3><div>400g</div>"));
+        Assert.assertThat("The description is incorrect", result.getDescription(),
+                CoreMatchers.is("by Sainsbury's strawberries"));
+        Assert.assertThat("There should be no calories", result.getCalories(),
+                CoreMatchers.is(NumericText.NOT_FOUND));
+    }
+
+    /**
+     * Tests that once the description and calories have been found, reading stops rather than continuing through the
+     * rest of the page. Only the read ahead buffered by the parser is taken from the remainder of the page.
+     */
+    @Test
+    public void testGetProductDetails_bothFound_restOfPageNotRead() throws IOException {
+        byte[] start = ("<html><body>" + DESCRIPTION + ENERGY_TABLE).getBytes(StandardCharsets.UTF_8);
+        byte[] padding = "<p>padding</p>".getBytes(StandardCharsets.UTF_8);
+        int restOfPageLength = 1024 * 1024;
+        int[] restOfPageRead = new int[1];
+
+        InputStream restOfPage = new InputStream() {
+            @Override
+            public int read() {
+                if (restOfPageRead[0] >= restOfPageLength) {
+                    return -1;
+                }
+                return padding[restOfPageRead[0]++ % padding.length];
+            }
+        };
+
+        ProductDetails result = getProductDetails(
+                new SequenceInputStream(new ByteArrayInputStream(start), restOfPage));
+        Assert.assertThat("The calories are incorrect", result.getCalories(), CoreMatchers.is(33));
+        Assert.assertThat("Most of the rest of the page should not have been read",
+                restOfPageRead[0] < restOfPageLength / 10, CoreMatchers.is(true));
+    }
+
+    /**
+     * Tests that the fetch and parse of the web page and each products further information page, and the values
+     * pulled out of them, are counted against the metrics of their stages.
+     */
+    @Test
+    public void testScrapeWebPage_productScraped_stagesMeasured() throws IOException {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing(productElement("measured.html", "Measured", "1.75")));
+        pages.put(WEB_PAGE_URL + "measured.html", detailPage(DESCRIPTION + ENERGY_TABLE));
+
+        long listingFetches = Stage.LISTING_FETCH.getMetrics().getCount();
+        long listingBytes = Stage.LISTING_FETCH.getMetrics().getBytes();
+        long listingParses = Stage.LISTING_PARSE.getMetrics().getCount();
+        long detailFetches = Stage.DETAIL_FETCH.getMetrics().getCount();
+        long detailBytes = Stage.DETAIL_FETCH.getMetrics().getBytes();
+        long detailParses = Stage.DETAIL_PARSE.getMetrics().getCount();
+        long extractions = Stage.FIELD_EXTRACTION.getMetrics().getCount();
+
+        new Scraper(WEB_PAGE_URL, fetcher(pages)).scrapeWebPage();
+
+        Assert.assertThat("The web page should be fetched once", Stage.LISTING_FETCH.getMetrics().getCount(),
+                CoreMatchers.is(listingFetches + 1));
+        Assert.assertThat("Every byte of the web page should be counted", Stage.LISTING_FETCH.getMetrics().getBytes(),
+                CoreMatchers.is(listingBytes + pages.get(WEB_PAGE_URL).length()));
+        Assert.assertThat("The web page should be parsed once", Stage.LISTING_PARSE.getMetrics().getCount(),
+                CoreMatchers.is(listingParses + 1));
+        Assert.assertThat("The detail page should be fetched once", Stage.DETAIL_FETCH.getMetrics().getCount(),
+                CoreMatchers.is(detailFetches + 1));
+        Assert.assertThat("The bytes of the detail page should be counted",
+                Stage.DETAIL_FETCH.getMetrics().getBytes() > detailBytes, CoreMatchers.is(true));
+        Assert.assertThat("The detail page should be parsed once", Stage.DETAIL_PARSE.getMetrics().getCount(),
+                CoreMatchers.is(detailParses + 1));
+        Assert.assertThat("The description and calories should each be pulled out once",
+                Stage.FIELD_EXTRACTION.getMetrics().getCount(), CoreMatchers.is(extractions + 2));
+    }
+
+    /**
+     * Tests that a web page that can't be fetched is counted as an error of the fetch, and is no longer in flight.
+     */
+    @Test
+    public void testScrapeWebPage_webPageNotFound_fetchErrorCounted() {
+        long errors = Stage.LISTING_FETCH.getMetrics().getErrorCount();
+        long inFlight = Stage.LISTING_FETCH.getMetrics().getInFlight();
+
+        try {
+            new Scraper(WEB_PAGE_URL, fetcher(new HashMap<>())).scrapeWebPage();
+            Assert.fail("The web page shouldn't have been found");
+        } catch (IOException e) {
+            // Expected, as there are no pages
+        }
+
+        Assert.assertThat("The failed fetch should be counted", Stage.LISTING_FETCH.getMetrics().getErrorCount(),
+                CoreMatchers.is(errors + 1));
+        Assert.assertThat("The failed fetch should no longer be in flight",
+                Stage.LISTING_FETCH.getMetrics().getInFlight(), CoreMatchers.is(inFlight));
+    }
+
+    /**
+     * Tests that the fetch and parse of each page are recorded as Flight Recorder events, with the bytes read from the
+     * web page.
+     */
+    @Test
+    public void testScrapeWebPage_recording_pageEventsRecorded() throws IOException {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing(productElement("recorded.html", "Recorded", "1.75")));
+        pages.put(WEB_PAGE_URL + "recorded.html", detailPage(DESCRIPTION + ENERGY_TABLE));
+
+        List<RecordedEvent> events = record(() -> new Scraper(WEB_PAGE_URL, fetcher(pages)).scrapeWebPage());
+
+        RecordedEvent listingFetch = findEvent(events, "com.sainsburys.test.PageFetch", WEB_PAGE_URL);
+        Assert.assertThat("The web page fetch should be recorded against its stage", listingFetch.getString("stage"),
+                CoreMatchers.is("listing_fetch"));
+        Assert.assertThat("Every byte of the web page should be recorded", listingFetch.getLong("bytes"),
+                CoreMatchers.is((long) pages.get(WEB_PAGE_URL).length()));
+        Assert.assertThat("The web page fetch should have succeeded", listingFetch.getBoolean("succeeded"),
+                CoreMatchers.is(true));
+
+        RecordedEvent detailParse = findEvent(events, "com.sainsburys.test.PageParse", WEB_PAGE_URL + "recorded.html");
+        Assert.assertThat("The detail page parse should be recorded against its stage", detailParse.getString("stage"),
+                CoreMatchers.is("detail_parse"));
+        Assert.assertThat("The detail page parse should have succeeded", detailParse.getBoolean("succeeded"),
+                CoreMatchers.is(true));
+    }
+
+    /**
+     * Tests that a web page that can't be fetched is recorded as a failed fetch event, saying why it failed.
+     */
+    @Test
+    public void testScrapeWebPage_webPageNotFound_failedFetchRecorded() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            try {
+                new Scraper(WEB_PAGE_URL, fetcher(new HashMap<>())).scrapeWebPage();
+                Assert.fail("The web page shouldn't have been found");
+            } catch (IOException e) {
+                // Expected, as there are no pages
+            }
+        });
+
+        RecordedEvent fetch = findEvent(events, "com.sainsburys.test.PageFetch", WEB_PAGE_URL);
+        Assert.assertThat("The fetch should have failed", fetch.getBoolean("succeeded"), CoreMatchers.is(false));
+        Assert.assertThat("Why the fetch failed should be recorded", fetch.getString("failure"),
+                CoreMatchers.containsString(WEB_PAGE_URL));
+    }
+
+    /**
+     * Records the page events of the scraper, without any threshold, whilst the scrape given runs.
+     */
+    private static List<RecordedEvent> record(RecordedScrape scrape) throws IOException {
+        Path file = Files.createTempFile("scrape", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PageFetchEvent.class).withoutThreshold();
+            recording.enable(PageParseEvent.class).withoutThreshold();
+            recording.start();
+            scrape.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Finds the event of the type given for a page, as other tests may be scraping whilst the events are recorded.
+     */
+    private static RecordedEvent findEvent(List<RecordedEvent> events, String eventName, String url) {
+        for (RecordedEvent event : events) {
+            if (eventName.equals(event.getEventType().getName()) && url.equals(event.getString("url"))) {
+                return event;
+            }
+        }
+        throw new AssertionError("No " + eventName + " event was recorded for " + url);
+    }
+
+    private interface RecordedScrape {
+
+        void run() throws IOException;
+
+    }
+
+    private static String listing(String productElements) {
+        return "<html><body><ul class=\"productLister\">" + productElements + "</ul></body></html>";
+    }
+
+    private static String productElement(String link, String name, String price) {
+        return "<li class=\"gridItem\"><div class=\"product \"><h3><a href=\"" + link + "\">" + name
+                + "<img src=\"x.jpg\" /></a></h3><p class=\"pricePerUnit\">&pound;" + price
+                + "<abbr title=\"per\">/</abbr>unit</p></div></li>";
+    }
+
+    private static String detailPage(String content) {
+        return "<html><body><div class=\"productContent\">" + content + "</div></body></html>";
+    }
+
+    private static Map<String, String> twoProductPages() {
+        Map<String, String> pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, listing(productElement("first.html", "First", "1.00")
+                + productElement("second.html", "Second", "2.00")));
+        pages.put(WEB_PAGE_URL + "first.html", detailPage(DESCRIPTION));
+        pages.put(WEB_PAGE_URL + "second.html", detailPage(DESCRIPTION));
+        return pages;
+    }
+
+    private static PageFetcher delayFirst(PageFetcher pageFetcher) {
+        return url -> {
+            if (url.toString().endsWith("first.html")) {
+                // Holds back the first product so the second one is scraped before it
+                sleep(200);
+            }
+            return pageFetcher.fetch(url);
+        };
+    }
+
+    private static PageFetcher fetcher(Map<String, String> pages) {
+        return url -> {
+            if (!pages.containsKey(url.toString())) {
+                throw new IOException("HTTP error fetching URL. Status=404, URL=" + url);
+            }
+            return new FetchedPage(url,
+                    new ByteArrayInputStream(pages.get(url.toString()).getBytes(StandardCharsets.UTF_8)), "UTF-8");
+        };
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static boolean await(CountDownLatch latch) throws IOException {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static InputStream page(String content) {
+        return new ByteArrayInputStream(
+                ("<html><body><div class=\"productContent\">" + content + "</div><div class=\"footer\"></div>"
+                        + "</body></html>").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ProductDetails getProductDetails(InputStream body) throws IOException {
+        Scraper scraper = new Scraper("http://www.google.com", url -> new FetchedPage(url, body, "UTF-8"));
+        return scraper.getProductDetails(new URL("http://www.google.com/images"));
+    }
+
+}
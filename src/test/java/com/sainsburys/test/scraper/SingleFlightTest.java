@@ -0,0 +1,149 @@
+package com.sainsburys.test.scraper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test class for the {@link SingleFlight}.
+ */
+public class SingleFlightTest {
+
+    private final SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests that when several threads ask for the same key at once, only one load is run and every thread is given its
+     * result.
+     */
+    @Test
+    public void testLoad_concurrentLoadsOfSameKey_loadedOnceAndShared() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        Object value = new Object();
+
+        Future<Object> first = executor.submit(() -> singleFlight.load("key", () -> {
+            loads.incrementAndGet();
+            loadStarted.countDown();
+            awaitQuietly(releaseLoad);
+            return value;
+        }));
+        Assert.assertThat("The first load should have started", loadStarted.await(5, TimeUnit.SECONDS),
+                CoreMatchers.is(true));
+
+        List<Future<Object>> waiting = new ArrayList<>();
+        List<Thread> waitingThreads = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiting.add(executor.submit(() -> {
+                waitingThreads.add(Thread.currentThread());
+                return singleFlight.load("key", () -> {
+                    loads.incrementAndGet();
+                    return new Object();
+                });
+            }));
+        }
+        awaitWaiting(waitingThreads, 3);
+        releaseLoad.countDown();
+
+        Assert.assertThat("The first thread should get the value loaded", first.get(5, TimeUnit.SECONDS),
+                CoreMatchers.is(value));
+        for (Future<Object> waiter : waiting) {
+            Assert.assertThat("Every waiting thread should get the same value", waiter.get(5, TimeUnit.SECONDS),
+                    CoreMatchers.sameInstance(value));
+        }
+        Assert.assertThat("The value should only have been loaded once", loads.get(), CoreMatchers.is(1));
+        Assert.assertThat("Nothing should be left in flight", singleFlight.inFlightCount(), CoreMatchers.is(0));
+    }
+
+    /**
+     * Tests that a thread waiting on a load that fails is given the failure as an {@link IOException}.
+     */
+    @Test
+    public void testLoad_sharedLoadFails_ioExceptionThrownToWaiters() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+
+        Future<Object> first = executor.submit(() -> singleFlight.load("key", () -> {
+            loadStarted.countDown();
+            awaitQuietly(releaseLoad);
+            throw new IOException("HTTP error fetching URL");
+        }));
+        Assert.assertThat("The first load should have started", loadStarted.await(5, TimeUnit.SECONDS),
+                CoreMatchers.is(true));
+        List<Thread> waitingThreads = new CopyOnWriteArrayList<>();
+        Future<Object> waiter = executor.submit(() -> {
+            waitingThreads.add(Thread.currentThread());
+            return singleFlight.load("key", Object::new);
+        });
+        awaitWaiting(waitingThreads, 1);
+        releaseLoad.countDown();
+
+        assertFailedWith(first, "HTTP error fetching URL");
+        assertFailedWith(waiter, "HTTP error fetching URL");
+    }
+
+    /**
+     * Tests that once a load has finished, the next request for the key loads it again.
+     */
+    @Test
+    public void testLoad_loadFinished_keyLoadedAgain() throws IOException {
+        Object first = singleFlight.load("key", Object::new);
+        Object second = singleFlight.load("key", Object::new);
+
+        Assert.assertThat("A finished load should not be reused", second,
+                CoreMatchers.not(CoreMatchers.sameInstance(first)));
+    }
+
+    /**
+     * Waits for the threads given to be parked, which they will be once they are waiting on the load in flight.
+     */
+    private static void awaitWaiting(List<Thread> threads, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline
+                && (threads.size() < count || threads.stream().anyMatch(t -> Thread.State.WAITING != t.getState()))) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void assertFailedWith(Future<Object> load, String message) throws Exception {
+        try {
+            load.get(5, TimeUnit.SECONDS);
+            Assert.fail("The load should have failed");
+        } catch (ExecutionException e) {
+            Assert.assertThat("The failure should be an IOException", e.getCause(),
+                    CoreMatchers.instanceOf(IOException.class));
+            Assert.assertThat("The message of the failure is incorrect", e.getCause().getMessage(),
+                    CoreMatchers.is(message));
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) throws IOException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+}
@@ -3,11 +3,8 @@ package com.sainsburys.test.scraper;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.List;
 
 import org.hamcrest.CoreMatchers;
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
@@ -15,13 +12,10 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
-import com.sainsburys.test.products.FoodProduct;
-import com.sainsburys.test.products.Product;
+import com.sainsburys.test.fetch.PageFetcher;
 
-import mockit.Deencapsulation;
 import mockit.Expectations;
 import mockit.Mocked;
-import mockit.Verifications;
 
 /**
  * Unit test class for the {@link Scraper} test.
@@ -43,288 +37,129 @@ public class WebScraperTest {
     }
 
     /**
-     * Tests an {@link IOException} is caught and thrown when {@link Jsoup} is unable to get the web page DOM for the
-     * {@link URL} given.
+     * Tests an {@link IOException} is caught and thrown when the web page can't be fetched for the {@link URL} given.
      */
     @Test(expected = IOException.class)
-    public void testScrapeWebPage_ioExceptionGettingPage_ioExceptionCaughtAndThrown(@Mocked Connection connection)
+    public void testScrapeWebPage_ioExceptionGettingPage_ioExceptionCaughtAndThrown(@Mocked PageFetcher pageFetcher)
             throws IOException {
 
-        new Expectations(Jsoup.class) {
-            {
-                Jsoup.connect(Deencapsulation.getField(scraper, "webPageUrl").toString());
-                result = connection;
-
-                connection.get();
-                result = new IOException("Error getting web page DOM");
-            }
-        };
-
-        scraper.scrapeWebPage();
-    }
-
-    /**
-     * Tests that when there are no elements with the class 'product', then no java product instances are created.
-     */
-    @Test
-    public void testScrapeWebPage_noProductElements_zeroProductObjects(@Mocked Connection connection,
-            @Mocked Product product, @Mocked FoodProduct foodProduct) throws IOException {
-
-        new Expectations(Jsoup.class) {
-            {
-                Jsoup.connect(Deencapsulation.getField(scraper, "webPageUrl").toString());
-                result = connection;
-
-                connection.get();
-                result = document;
-
-                document.getElementsByClass("product");
-                result = new Elements();
-            }
-        };
+        Scraper fetcherScraper = new Scraper("http://www.google.com", pageFetcher);
 
-        List<Product> result = scraper.scrapeWebPage();
-        Assert.assertThat("There should have been no products found via scraping", result.isEmpty(),
-                CoreMatchers.is(true));
-
-        new Verifications() {
+        new Expectations() {
             {
-                new Product(anyString, anyString, anyString);
-                times = 0;
-
-                new FoodProduct(anyString, anyString, anyString, anyString);
-                times = 0;
+                pageFetcher.fetch(new URL("http://www.google.com"));
+                result = new IOException("HTTP error fetching URL");
             }
         };
 
+        fetcherScraper.scrapeWebPage();
     }
 
     /**
-     * Tests that no product objects are created if when trying to scrape the product elements found, no name is found
-     * and therefore we don't know what to call the product.
+     * Tests that an {@link IllegalArgumentException} is thrown if less than one thread is given to fetch the product
+     * detail pages.
      */
-    @Test
-    public void testScrapeWebPage_productElementsFoundNoName_zeroProductObjects(@Mocked Connection connection,
-            @Mocked Element productElement, @Mocked Product product, @Mocked FoodProduct foodProduct)
-            throws IOException {
-
-        new Expectations(scraper, Jsoup.class) {
-            {
-                Jsoup.connect(Deencapsulation.getField(scraper, "webPageUrl").toString());
-                result = connection;
-
-                connection.get();
-                result = document;
-
-                document.getElementsByClass("product");
-                result = new Elements(productElement);
-
-                // Acts as a verification
-                scraper.scrapeProductElement(productElement);
-            }
-        };
-
-        List<Product> result = scraper.scrapeWebPage();
-        Assert.assertThat("There should have been no products found via scraping", result.isEmpty(),
-                CoreMatchers.is(true));
-
-        new Verifications() {
-            {
-                new Product(anyString, anyString, anyString);
-                times = 0;
-
-                new FoodProduct(anyString, anyString, anyString, anyString);
-                times = 0;
-            }
-        };
+    @Test(expected = IllegalArgumentException.class)
+    public void testScraper_noDetailFetchThreads_illegalArgumentExceptionThrown() throws MalformedURLException {
+        new Scraper("http://www.google.com", 0);
     }
 
     /**
-     * Tests that if a name and a price are the only things found from the product element, a standard product is
-     * created to hold the information.
+     * Tests that when no errors are thrown, the attributes required are scraped from the products further information
+     * page and returned with those found on the web page for the product.
      */
     @Test
-    public void testScrapeWebPage_productElementsFoundNamePriceFound_productObjectCreated(@Mocked Connection connection,
-            @Mocked Element productElement, @Mocked Product product, @Mocked FoodProduct foodProduct)
-            throws IOException {
+    public void testScrapeProductDetails_allAttributesScrapedAndReturned() throws IOException {
 
-        Deencapsulation.setField(scraper, "name", "productName");
-        Deencapsulation.setField(scraper, "price", "10.00");
-
-        new Expectations(scraper, Jsoup.class) {
+        new Expectations(scraper) {
             {
-                Jsoup.connect(Deencapsulation.getField(scraper, "webPageUrl").toString());
-                result = connection;
-
-                connection.get();
-                result = document;
+                scraper.getProductDetails(new URL("http://www.google.com/images"));
+                result = new ProductDetails("description", 45);
 
-                document.getElementsByClass("product");
-                result = new Elements(productElement);
-
-                // Acts as a verification
-                scraper.scrapeProductElement(productElement);
             }
         };
 
-        List<Product> result = scraper.scrapeWebPage();
-        Assert.assertThat("There should have been 1 product found via scraping", result.size(), CoreMatchers.is(1));
-        Assert.assertThat("The instance of the product found should be Product", result.get(0),
-                CoreMatchers.instanceOf(Product.class));
-
-        new Verifications() {
-            {
-                new Product("productName", null, "10.00");
+        ScrapedProduct result = scraper.scrapeProductDetails("productName", "/images", 1000L);
 
-                new FoodProduct(anyString, anyString, anyString, anyString);
-                times = 0;
-            }
-        };
+        Assert.assertThat("The name of the Product is incorrect", result.getName(), CoreMatchers.is("productName"));
+        Assert.assertThat("The price of the Product is incorrect", result.getPricePence(), CoreMatchers.is(1000L));
+        Assert.assertThat("The description of the Product is incorrect", result.getDescription(),
+                CoreMatchers.is("description"));
+        Assert.assertThat("The number of calories of the Product is incorrect", result.getCalories(),
+                CoreMatchers.is(45));
     }
 
     /**
-     * Tests that if a name and a price are the only things found from the product element, a standard product is
-     * created to hold the information.
+     * Tests that an {@link IOException} is caught and thrown if the link found for the products further information
+     * page creates a malformed URL when put relatively against the starting URL.
      */
-    @Test
-    public void testScrapeWebPage_productElementsFoundNamePriceCaloriesFound_productObjectCreated(
-            @Mocked Connection connection, @Mocked Element productElement, @Mocked Product product,
-            @Mocked FoodProduct foodProduct) throws IOException {
-
-        Deencapsulation.setField(scraper, "name", "productName");
-        Deencapsulation.setField(scraper, "price", "10.00");
-        Deencapsulation.setField(scraper, "calories", "23");
-
-        new Expectations(scraper, Jsoup.class) {
-            {
-                Jsoup.connect(Deencapsulation.getField(scraper, "webPageUrl").toString());
-                result = connection;
-
-                connection.get();
-                result = document;
-
-                document.getElementsByClass("product");
-                result = new Elements(productElement);
-
-                // Acts as a verification
-                scraper.scrapeProductElement(productElement);
-            }
-        };
-
-        List<Product> result = scraper.scrapeWebPage();
-        Assert.assertThat("There should have been 1 product found via scraping", result.size(), CoreMatchers.is(1));
-        Assert.assertThat("The instance of the product found should be FoodProduct", result.get(0),
-                CoreMatchers.instanceOf(FoodProduct.class));
-
-        new Verifications() {
-            {
-                new Product("productName", null, "10.00");
-                times = 0;
+    @Test(expected = IOException.class)
+    public void testScrapeProductDetails_malformedExceptionCreatingNewUrl_ioExceptionThrown() throws IOException {
 
-                new FoodProduct("productName", null, "10.00", "23");
-            }
-        };
+        // A link with an unknown protocol can't be put together with the starting URL
+        scraper.scrapeProductDetails("productName", "unknown://images", 1000L);
     }
 
     /**
-     * Tests that when no errors are thrown, the attributes required are scraped from the web page url, and the products
-     * further information page and stored on the scraper instance.
+     * Tests an {@link IOException} is caught and thrown when the products further information page can't be fetched.
      */
-    @Test
-    public void testScrapeProductElement_allAttributesScrapedAndStored(@Mocked Connection connection)
-            throws IOException {
+    @Test(expected = IOException.class)
+    public void testScrapeProductDetails_ioExceptionGettingPage_ioExceptionThrown() throws IOException {
 
-        new Expectations(scraper, Jsoup.class) {
+        new Expectations(scraper) {
             {
-                scraper.setNameAndGetForwardLink(productElement);
-                result = "/images";
-
-                scraper.getPrice(productElement);
-                result = "10.00";
-
-                Jsoup.connect("http://www.google.com/images");
-                result = connection;
-
-                connection.get();
-                result = document;
-
-                scraper.getDescription(document);
-                result = "description";
-
-                scraper.getCalories(document);
-                result = "45";
+                scraper.getProductDetails(new URL("http://www.google.com/images"));
+                result = new IOException("Exception getting web page");
 
             }
         };
 
-        scraper.scrapeProductElement(productElement);
-
-        Assert.assertThat("The price of the Product is incorrect", Deencapsulation.getField(scraper, "price"),
-                CoreMatchers.is("10.00"));
-        Assert.assertThat("The description of the Product is incorrect",
-                Deencapsulation.getField(scraper, "description"), CoreMatchers.is("description"));
-        Assert.assertThat("The number of calories of the Product is incorrect",
-                Deencapsulation.getField(scraper, "calories"), CoreMatchers.is("45"));
+        scraper.scrapeProductDetails("productName", "/images", 1000L);
     }
 
     /**
-     * Tests that an {@link IOException} is caught and thrown if the link found for the products further information
-     * page creates a malformed URL when put relatively against the starting URL.
+     * Tests that null is returned is there are no href elements found in the element passed in.
      */
-    @Test(expected = IOException.class)
-    public void testScrapeProductElement_malformedExceptionCreatingNewUrl_ioExceptionThrown(
-            @Mocked Connection connection) throws IOException {
+    @Test
+    public void testGetName_noHrefElements_null() {
 
-        new Expectations(scraper, URL.class) {
+        new Expectations() {
             {
-                scraper.setNameAndGetForwardLink(productElement);
-                result = "/images";
-
-                scraper.getPrice(productElement);
-                result = "10.00";
-
-                new URL(Deencapsulation.getField(scraper, "webPageUrl"), "/images");
-                result = new MalformedURLException("Malformed URL");
-
+                productElement.select("a[href]");
+                result = new Elements();
             }
         };
 
-        scraper.scrapeProductElement(productElement);
+        String result = scraper.getName(productElement);
+        Assert.assertThat("Null should be returned as no elements found", result, CoreMatchers.nullValue());
     }
 
     /**
-     * Tests an {@link IOException} is caught and thrown when {@link Jsoup} is unable to get the web page DOM for the
-     * {@link URL} given.
+     * Tests that the name is returned from the text of the first href element found within the element passed in.
      */
-    @Test(expected = IOException.class)
-    public void testScrapeProductElement_ioExceptionGettingConnection_ioExceptionThrown(@Mocked Connection connection)
-            throws IOException {
+    @Test
+    public void testGetName_hrefElements_name(@Mocked Element hrefElement) {
 
-        new Expectations(scraper, Jsoup.class) {
+        new Expectations() {
             {
-                scraper.setNameAndGetForwardLink(productElement);
-                result = "/images";
-
-                scraper.getPrice(productElement);
-                result = "10.00";
-
-                Jsoup.connect("http://www.google.com/images");
-                result = connection;
-
-                connection.get();
-                result = new IOException("Exception getting web page");
+                productElement.select("a[href]");
+                result = new Elements(hrefElement);
 
+                hrefElement.text();
+                result = "product_name";
             }
         };
 
-        scraper.scrapeProductElement(productElement);
+        String result = scraper.getName(productElement);
+        Assert.assertThat("The name returned from the href element was incorrect", result,
+                CoreMatchers.is("product_name"));
     }
 
     /**
      * Tests that null is returned is there are no href elements found in the element passed in.
      */
     @Test
-    public void testSetNameAndGetForwardLink_noHrefElements_null() {
+    public void testGetForwardLink_noHrefElements_null() {
 
         new Expectations() {
             {
@@ -333,44 +168,57 @@ public class WebScraperTest {
             }
         };
 
-        String result = scraper.setNameAndGetForwardLink(productElement);
+        String result = scraper.getForwardLink(productElement);
         Assert.assertThat("Null should be returned as no elements found", result, CoreMatchers.nullValue());
     }
 
     /**
-     * Tests that the link is returned from the first href element found within the element is passed in, and the name
-     * is set.
+     * Tests that the link is returned from the first href element found within the element is passed in.
      */
     @Test
-    public void testSetNameAndGetForwardLink_hrefElements_link(@Mocked Element hrefElement) {
+    public void testGetForwardLink_hrefElements_link(@Mocked Element hrefElement) {
 
         new Expectations() {
             {
                 productElement.select("a[href]");
                 result = new Elements(hrefElement);
 
-                hrefElement.text();
-                result = "product_name";
-
                 hrefElement.attr("href");
                 result = "relative_link";
             }
         };
 
-        String result = scraper.setNameAndGetForwardLink(productElement);
+        String result = scraper.getForwardLink(productElement);
         Assert.assertThat("The link returned from the href element was incorrect", result,
                 CoreMatchers.is("relative_link"));
-        Assert.assertThat("The name set in the class is inocrrect", Deencapsulation.getField(scraper, "name"),
-                CoreMatchers.is("product_name"));
     }
 
     /**
-     * Tests that null is returned is there are no
+     * Tests that the first href element found within the element passed in is returned, only selecting them once.
+     */
+    @Test
+    public void testGetLinkToDetails_hrefElements_firstLink(@Mocked Element hrefElement,
+            @Mocked Element otherHrefElement) {
+
+        new Expectations() {
+            {
+                productElement.select("a[href]");
+                result = new Elements(hrefElement, otherHrefElement);
+                times = 1;
+            }
+        };
+
+        Element result = scraper.getLinkToDetails(productElement);
+        Assert.assertThat("The first href element should be returned", result, CoreMatchers.sameInstance(hrefElement));
+    }
+
+    /**
+     * Tests that no price is returned if there are no
      * <p>
      * elements with pricePerUnit on them found in the element passed in.
      */
     @Test
-    public void testGetPrice_noPricePerUnitElements_null() {
+    public void testGetPricePence_noPricePerUnitElements_notFound() {
         new Expectations() {
             {
                 productElement.select("p.pricePerUnit");
@@ -378,15 +226,16 @@ public class WebScraperTest {
             }
         };
 
-        String result = scraper.getPrice(productElement);
-        Assert.assertThat("Null should be returned as no elements found", result, CoreMatchers.nullValue());
+        long result = scraper.getPricePence(productElement);
+        Assert.assertThat("No price should be returned as no elements found", result,
+                CoreMatchers.is((long) NumericText.NOT_FOUND));
     }
 
     /**
      * Test the correct price is returned from the pricePerUnit element if one is found on the element passed in.
      */
     @Test
-    public void testGetPrice_pricePerUnitElement_price(@Mocked Element priceElement) {
+    public void testGetPricePence_pricePerUnitElement_price(@Mocked Element priceElement) {
 
         new Expectations() {
             {
@@ -398,9 +247,9 @@ public class WebScraperTest {
             }
         };
 
-        String result = scraper.getPrice(productElement);
+        long result = scraper.getPricePence(productElement);
         Assert.assertThat("The price returned from the pricePerUnit element was incorrect", result,
-                CoreMatchers.is("9.00"));
+                CoreMatchers.is(900L));
     }
 
     /**
@@ -408,7 +257,7 @@ public class WebScraperTest {
      * numbers should be returned regardless of any other characters.
      */
     @Test
-    public void testGetPrice_pricePerUnitElement_priceStrippedToValue(@Mocked Element priceElement) {
+    public void testGetPricePence_pricePerUnitElement_priceStrippedToValue(@Mocked Element priceElement) {
 
         new Expectations() {
             {
@@ -420,9 +269,9 @@ public class WebScraperTest {
             }
         };
 
-        String result = scraper.getPrice(productElement);
+        long result = scraper.getPricePence(productElement);
         Assert.assertThat("The price returned from the pricePerUnit element was incorrect", result,
-                CoreMatchers.is("9.00"));
+                CoreMatchers.is(900L));
     }
 
     /**
@@ -481,6 +330,9 @@ public class WebScraperTest {
                 descElement.siblingElements();
                 result = new Elements(siblingElemnt);
 
+                descElement.nextElementSibling();
+                result = siblingElemnt;
+
                 siblingElemnt.text();
                 result = "description";
             }
@@ -491,10 +343,10 @@ public class WebScraperTest {
     }
 
     /**
-     * Tests that null is returned when there is no element on the page with the class 'nutrionalTable'.
+     * Tests that no calories are returned when there is no element on the page with the class 'nutrionalTable'.
      */
     @Test
-    public void testGetCalories_noNutritionalTable_null() {
+    public void testGetCalories_noNutritionalTable_notFound() {
 
         new Expectations() {
             {
@@ -503,17 +355,17 @@ public class WebScraperTest {
             }
         };
 
-        String result = scraper.getCalories(document);
-        Assert.assertThat("Null should be returned as no elements found with the class 'nutirionTable'", result,
-                CoreMatchers.nullValue());
+        int result = scraper.getCalories(document);
+        Assert.assertThat("No calories should be returned as no elements found with the class 'nutirionTable'", result,
+                CoreMatchers.is(NumericText.NOT_FOUND));
     }
 
     /**
-     * Tests that null is returned when there an element on the page with the class 'nutrionalTable' but it does not
+     * Tests that no calories are returned when there an element on the page with the class 'nutrionalTable' but it does not
      * contain a row with the text 'Energy' or 'Energy kcal'.
      */
     @Test
-    public void testGetCalories_nutritionalTableNoEnergyRow_null(@Mocked Element nutritionTable,
+    public void testGetCalories_nutritionalTableNoEnergyRow_notFound(@Mocked Element nutritionTable,
             @Mocked Element tableRow) {
 
         new Expectations() {
@@ -529,18 +381,18 @@ public class WebScraperTest {
             }
         };
 
-        String result = scraper.getCalories(document);
+        int result = scraper.getCalories(document);
         Assert.assertThat(
-                "Null should be returned as the element found with the class 'nutirionTable' does not have a th element with 'Energy' or 'Energy kcal'",
-                result, CoreMatchers.nullValue());
+                "No calories should be returned as the element found with the class 'nutirionTable' does not have a th element with 'Energy' or 'Energy kcal'",
+                result, CoreMatchers.is(NumericText.NOT_FOUND));
     }
 
     /**
-     * Tests that null is returned when there an element on the page with the class 'nutrionalTable' that has a th row
+     * Tests that no calories are returned when there an element on the page with the class 'nutrionalTable' that has a th row
      * with the text 'Energy', but its parent has no sibling elements.
      */
     @Test
-    public void testGetCalories_nutritionalTableEnergyRowNoSiblingElements_null(@Mocked Element nutritionTable,
+    public void testGetCalories_nutritionalTableEnergyRowNoSiblingElements_notFound(@Mocked Element nutritionTable,
             @Mocked Element tableRow, @Mocked Element parentElement) {
 
         new Expectations() {
@@ -562,10 +414,10 @@ public class WebScraperTest {
             }
         };
 
-        String result = scraper.getCalories(document);
+        int result = scraper.getCalories(document);
         Assert.assertThat(
-                "Null should be returned as the element found with the class 'nutirionTable' has a th element with 'Energy' or 'Energy kcal' but has no sibling elements",
-                result, CoreMatchers.nullValue());
+                "No calories should be returned as the element found with the class 'nutirionTable' has a th element with 'Energy' or 'Energy kcal' but has no sibling elements",
+                result, CoreMatchers.is(NumericText.NOT_FOUND));
     }
 
     /**
@@ -594,13 +446,16 @@ public class WebScraperTest {
                 parentElement.siblingElements();
                 result = new Elements(calorieElement);
 
+                parentElement.nextElementSibling().child(0);
+                result = calorieElement;
+
                 calorieElement.text();
                 result = "55";
             }
         };
 
-        String result = scraper.getCalories(document);
-        Assert.assertThat("The number of calories returned is incorrect", result, CoreMatchers.is("55"));
+        int result = scraper.getCalories(document);
+        Assert.assertThat("The number of calories returned is incorrect", result, CoreMatchers.is(55));
     }
 
     /**
@@ -630,21 +485,24 @@ public class WebScraperTest {
                 parentElement.siblingElements();
                 result = new Elements(calorieElement);
 
+                parentElement.nextElementSibling().child(0);
+                result = calorieElement;
+
                 calorieElement.text();
                 result = "55kcal";
             }
         };
 
-        String result = scraper.getCalories(document);
-        Assert.assertThat("The number of calories returned is incorrect", result, CoreMatchers.is("55"));
+        int result = scraper.getCalories(document);
+        Assert.assertThat("The number of calories returned is incorrect", result, CoreMatchers.is(55));
     }
 
     /**
-     * Tests that null is returned when there an element on the page with the class 'nutrionalTable'has a th row that
+     * Tests that no calories are returned when there an element on the page with the class 'nutrionalTable'has a th row that
      * contains the text 'Energy kcal' but has no sibling elements.
      */
     @Test
-    public void testGetCalories_nutritionalTableEnergyKcalRowNoSiblingElements_null(
+    public void testGetCalories_nutritionalTableEnergyKcalRowNoSiblingElements_notFound(
             @Mocked Element nutritionTable, @Mocked Element tableRow) {
 
         new Expectations() {
@@ -663,10 +521,10 @@ public class WebScraperTest {
             }
         };
 
-        String result = scraper.getCalories(document);
+        int result = scraper.getCalories(document);
         Assert.assertThat(
-                "Null should be returned as the element found with the class 'nutirionTable' has a th element with 'Energy' or 'Energy kcal' but has no sibling elements",
-                result, CoreMatchers.nullValue());
+                "No calories should be returned as the element found with the class 'nutirionTable' has a th element with 'Energy' or 'Energy kcal' but has no sibling elements",
+                result, CoreMatchers.is(NumericText.NOT_FOUND));
     }
 
     /**
@@ -692,13 +550,16 @@ public class WebScraperTest {
                 tableRow.siblingElements();
                 result = new Elements(calorieElement);
 
+                tableRow.nextElementSibling();
+                result = calorieElement;
+
                 calorieElement.text();
                 result = "55";
             }
         };
 
-        String result = scraper.getCalories(document);
-        Assert.assertThat("The number of calories returned is incorrect", result, CoreMatchers.is("55"));
+        int result = scraper.getCalories(document);
+        Assert.assertThat("The number of calories returned is incorrect", result, CoreMatchers.is(55));
     }
 
     /**
@@ -724,13 +585,16 @@ public class WebScraperTest {
                 tableRow.siblingElements();
                 result = new Elements(calorieElement);
 
+                tableRow.nextElementSibling();
+                result = calorieElement;
+
                 calorieElement.text();
                 result = "55kcal";
             }
         };
 
-        String result = scraper.getCalories(document);
-        Assert.assertThat("The number of calories returned is incorrect", result, CoreMatchers.is("55"));
+        int result = scraper.getCalories(document);
+        Assert.assertThat("The number of calories returned is incorrect", result, CoreMatchers.is(55));
     }
 
 }
@@ -0,0 +1,168 @@
+package com.sainsburys.test.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sainsburys.test.scraper.SingleFlight;
+
+/**
+ * Unit test class for the {@link ScrapeResultCache}.
+ */
+public class ScrapeResultCacheTest {
+
+    private static final String KEY = "JSON http://www.google.com/berries/";
+
+    private final long[] now = new long[1];
+
+    // The refreshes handed to the executor, which are only run when the test says so
+    private final List<Runnable> refreshes = new ArrayList<>();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private ScrapeResultCache cache;
+
+    @Before
+    public void before() {
+        cache = new ScrapeResultCache(2, 10, 20, TimeUnit.SECONDS, refreshes::add, () -> now[0]);
+    }
+
+    /**
+     * Tests that a result is loaded once, and sent back from the cache whilst it is fresh.
+     */
+    @Test
+    public void testGet_fresh_loadedOnce() throws IOException {
+        Assert.assertThat("The result should be loaded", text(cache.get(KEY, loader())), CoreMatchers.is("result 1"));
+        now[0] = TimeUnit.SECONDS.toNanos(9);
+
+        Assert.assertThat("The fresh result should be sent back", text(cache.get(KEY, loader())),
+                CoreMatchers.is("result 1"));
+        Assert.assertThat("The result should only be loaded once", loads.get(), CoreMatchers.is(1));
+        Assert.assertThat("The hit count is incorrect", cache.getHitCount(), CoreMatchers.is(1L));
+        Assert.assertThat("The miss count is incorrect", cache.getMissCount(), CoreMatchers.is(1L));
+        Assert.assertThat("Nothing should be refreshed", refreshes.isEmpty(), CoreMatchers.is(true));
+    }
+
+    /**
+     * Tests that a stale result is sent back straight away with a single refresh started, and that the refreshed
+     * result is sent back once it has finished.
+     */
+    @Test
+    public void testGet_stale_sentBackAndRefreshedOnce() throws IOException {
+        cache.get(KEY, loader());
+        now[0] = TimeUnit.SECONDS.toNanos(15);
+
+        Assert.assertThat("The stale result should be sent back", text(cache.get(KEY, loader())),
+                CoreMatchers.is("result 1"));
+        Assert.assertThat("The stale result should still be sent back whilst refreshing",
+                text(cache.get(KEY, loader())), CoreMatchers.is("result 1"));
+        Assert.assertThat("Only one refresh should be started", refreshes.size(), CoreMatchers.is(1));
+        Assert.assertThat("Nothing should be loaded until the refresh runs", loads.get(), CoreMatchers.is(1));
+
+        refreshes.get(0).run();
+
+        Assert.assertThat("The refreshed result should be sent back", text(cache.get(KEY, loader())),
+                CoreMatchers.is("result 2"));
+        Assert.assertThat("The stale hit count is incorrect", cache.getStaleHitCount(), CoreMatchers.is(2L));
+    }
+
+    /**
+     * Tests that a failed refresh keeps the stale result, and that the next request starts another refresh.
+     */
+    @Test
+    public void testGet_refreshFailed_staleKeptAndRefreshedAgain() throws IOException {
+        cache.get(KEY, loader());
+        now[0] = TimeUnit.SECONDS.toNanos(15);
+
+        cache.get(KEY, () -> {
+            throw new IOException("HTTP error fetching URL. Status=500");
+        });
+        refreshes.get(0).run();
+
+        Assert.assertThat("The failed refresh should be counted", cache.getRefreshFailureCount(),
+                CoreMatchers.is(1L));
+        Assert.assertThat("The stale result should still be sent back", text(cache.get(KEY, loader())),
+                CoreMatchers.is("result 1"));
+        Assert.assertThat("Another refresh should be started", refreshes.size(), CoreMatchers.is(2));
+    }
+
+    /**
+     * Tests that a result older than the stale window is loaded again before it is sent back.
+     */
+    @Test
+    public void testGet_expired_loadedAgain() throws IOException {
+        cache.get(KEY, loader());
+        now[0] = TimeUnit.SECONDS.toNanos(30);
+
+        Assert.assertThat("The result should be loaded again", text(cache.get(KEY, loader())),
+                CoreMatchers.is("result 2"));
+        Assert.assertThat("Nothing should be refreshed in the background", refreshes.isEmpty(),
+                CoreMatchers.is(true));
+        Assert.assertThat("The miss count is incorrect", cache.getMissCount(), CoreMatchers.is(2L));
+    }
+
+    /**
+     * Tests that when another request loads a result between this request finding it too old and starting to load it,
+     * the result loaded by the other request is sent back rather than being loaded again.
+     */
+    @Test
+    public void testGet_loadedAfterMiss_loadedOnce() throws IOException {
+        boolean[] interleaved = new boolean[1];
+        ScrapeResultCache[] interleavedCache = new ScrapeResultCache[1];
+        interleavedCache[0] = new ScrapeResultCache(2, 10, 20, TimeUnit.SECONDS, refreshes::add, () -> {
+            if (now[0] > 0 && !interleaved[0]) {
+                // Another request loads the result whilst this one is looking at how old its copy is
+                interleaved[0] = true;
+                try {
+                    interleavedCache[0].get(KEY, loader());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return now[0];
+        });
+        interleavedCache[0].get(KEY, loader());
+        now[0] = TimeUnit.SECONDS.toNanos(30);
+
+        Assert.assertThat("The result loaded by the other request should be sent back",
+                text(interleavedCache[0].get(KEY, loader())), CoreMatchers.is("result 2"));
+        Assert.assertThat("The result should only be loaded again once", loads.get(), CoreMatchers.is(2));
+        Assert.assertThat("The miss count is incorrect", interleavedCache[0].getMissCount(), CoreMatchers.is(2L));
+    }
+
+    /**
+     * Tests that a failed load isn't held, so the next request loads again.
+     */
+    @Test
+    public void testGet_loadFailed_notHeld() throws IOException {
+        try {
+            cache.get(KEY, () -> {
+                throw new IOException("HTTP error fetching URL. Status=404");
+            });
+            Assert.fail("The failed load should be thrown");
+        } catch (IOException e) {
+            // Expected, as there was nothing to send back instead
+        }
+
+        Assert.assertThat("Nothing should be held", cache.size(), CoreMatchers.is(0));
+        Assert.assertThat("The result should be loaded", text(cache.get(KEY, loader())), CoreMatchers.is("result 1"));
+    }
+
+    private SingleFlight.Loader<byte[]> loader() {
+        return () -> ("result " + loads.incrementAndGet()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] result) {
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+}
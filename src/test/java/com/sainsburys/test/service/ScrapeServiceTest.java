@@ -0,0 +1,265 @@
+package com.sainsburys.test.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hamcrest.CoreMatchers;
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+import org.skyscreamer.jsonassert.JSONCompareMode;
+
+import com.sainsburys.test.fetch.FetchedPage;
+import com.sainsburys.test.fetch.PageFetcher;
+import com.sainsburys.test.scraper.ProductDetailsCache;
+
+/**
+ * Unit tests for the {@link ScrapeService} class, serving pages from memory rather than over the network.
+ */
+public class ScrapeServiceTest {
+
+    private static final String WEB_PAGE_URL = "http://www.google.com/berries/";
+
+    private static final String LISTING = "<html><body><ul class=\"productLister\"><li class=\"gridItem\">"
+            + "<div class=\"product \"><h3><a href=\"served.html\">Served<img src=\"x.jpg\" /></a></h3>"
+            + "<p class=\"pricePerUnit\">&pound;1.75<abbr title=\"per\">/</abbr>unit</p></div></li></ul></body></html>";
+
+    private static final String DETAIL_PAGE = "<html><body><div class=\"productContent\">"
+            + "<h3 class=\"productDataItemHeader\">Description</h3><div class=\"productText\"><p>Served berries</p></div>"
+            + "</div></body></html>";
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private Map<String, String> pages;
+
+    private ScrapeService service;
+
+    @Before
+    public void before() {
+        pages = new HashMap<>();
+        pages.put(WEB_PAGE_URL, LISTING);
+        pages.put(WEB_PAGE_URL + "served.html", DETAIL_PAGE);
+    }
+
+    @After
+    public void after() {
+        if (null != service) {
+            service.close();
+        }
+    }
+
+    /**
+     * Tests that a scrape requested is served as JSON with the products found on the web page.
+     */
+    @Test
+    public void testScrape_webPageFound_productsServed() throws IOException, InterruptedException, JSONException {
+        startService(fetcher(), 1, 0);
+
+        HttpResponse<String> response = get(
+                ScrapeService.SCRAPE_PATH + "?url=" + URLEncoder.encode(WEB_PAGE_URL, StandardCharsets.UTF_8));
+
+        Assert.assertThat("The scrape should succeed", response.statusCode(), CoreMatchers.is(200));
+        Assert.assertThat("The products should be served as JSON",
+                response.headers().firstValue("Content-Type").orElse(""),
+                CoreMatchers.startsWith("application/json"));
+        JSONAssert.assertEquals("The product scraped should be served",
+                "{result:[{title:\"Served\", unit_price:\"1.75\", description:\"Served berries\"}], total:{gross:\"1.75\", vat:\"0.35\"}}",
+                response.body(), JSONCompareMode.LENIENT);
+    }
+
+    /**
+     * Tests that a request without the URL to scrape is rejected as a bad request.
+     */
+    @Test
+    public void testScrape_urlMissing_badRequest() throws IOException, InterruptedException {
+        startService(fetcher(), 1, 0);
+
+        Assert.assertThat("The request should be rejected", get(ScrapeService.SCRAPE_PATH).statusCode(),
+                CoreMatchers.is(400));
+    }
+
+    /**
+     * Tests that a URL that isn't a http or https one is rejected as a bad request, rather than failing the request.
+     */
+    @Test
+    public void testScrape_urlNotHttp_badRequest() throws IOException, InterruptedException {
+        startService(fetcher(), 1, 0);
+
+        for (String url : new String[] { "file:///etc/passwd", "ftp://www.google.com/berries/", "www.google.com" }) {
+            HttpResponse<String> response = get(
+                    ScrapeService.SCRAPE_PATH + "?url=" + URLEncoder.encode(url, StandardCharsets.UTF_8));
+            Assert.assertThat("The request to scrape " + url + " should be rejected", response.statusCode(),
+                    CoreMatchers.is(400));
+            Assert.assertThat("Why the request was rejected should be given", response.body(),
+                    CoreMatchers.containsString("http and https"));
+        }
+    }
+
+    /**
+     * Tests that a web page that can't be fetched is reported as a bad gateway.
+     */
+    @Test
+    public void testScrape_webPageNotFound_badGateway() throws IOException, InterruptedException {
+        pages.clear();
+        startService(fetcher(), 1, 0);
+
+        HttpResponse<String> response = get(
+                ScrapeService.SCRAPE_PATH + "?url=" + URLEncoder.encode(WEB_PAGE_URL, StandardCharsets.UTF_8));
+
+        Assert.assertThat("The failed scrape should be reported", response.statusCode(), CoreMatchers.is(502));
+        Assert.assertThat("Why the scrape failed should be given", response.body(),
+                CoreMatchers.containsString("Status=404"));
+    }
+
+    /**
+     * Tests that a request is turned away whilst the most scrapes allowed are already running, and that scrapes are
+     * admitted again once they have finished.
+     */
+    @Test
+    public void testScrape_tooManyScrapes_serviceUnavailable() throws Exception {
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PageFetcher inMemory = fetcher();
+        startService(url -> {
+            if (WEB_PAGE_URL.equals(url.toString()) && release.getCount() > 0) {
+                fetching.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            return inMemory.fetch(url);
+        }, 1, 0);
+        String path = ScrapeService.SCRAPE_PATH + "?url=" + URLEncoder.encode(WEB_PAGE_URL, StandardCharsets.UTF_8);
+
+        CompletableFuture<HttpResponse<String>> running = client.sendAsync(request(path),
+                HttpResponse.BodyHandlers.ofString());
+        Assert.assertThat("The first scrape should have started", fetching.await(5, TimeUnit.SECONDS),
+                CoreMatchers.is(true));
+
+        HttpResponse<String> rejected = get(path);
+        Assert.assertThat("The second scrape should be turned away", rejected.statusCode(), CoreMatchers.is(503));
+        Assert.assertThat("The client should be told when to try again",
+                rejected.headers().firstValue("Retry-After").isPresent(), CoreMatchers.is(true));
+
+        release.countDown();
+        Assert.assertThat("The first scrape should finish", running.get(5, TimeUnit.SECONDS).statusCode(),
+                CoreMatchers.is(200));
+        Assert.assertThat("Scrapes should be admitted again", get(path).statusCode(), CoreMatchers.is(200));
+    }
+
+    /**
+     * Tests that with a result cache, a category page asked for again is sent back without being scraped again, and
+     * that each format is held on its own.
+     */
+    @Test
+    public void testScrape_resultCached_webPageFetchedOnce() throws IOException, InterruptedException {
+        AtomicInteger listingFetches = new AtomicInteger();
+        PageFetcher inMemory = fetcher();
+        service = new ScrapeService(url -> {
+            if (WEB_PAGE_URL.equals(url.toString())) {
+                listingFetches.incrementAndGet();
+            }
+            return inMemory.fetch(url);
+        }, 0, 1, 0, TimeUnit.MILLISECONDS, new ScrapeResultCache(10, 1, 1, TimeUnit.MINUTES));
+        service.start();
+        String path = ScrapeService.SCRAPE_PATH + "?url=" + URLEncoder.encode(WEB_PAGE_URL, StandardCharsets.UTF_8);
+
+        String first = get(path).body();
+        HttpResponse<String> second = get(path);
+
+        Assert.assertThat("The cached scrape should succeed", second.statusCode(), CoreMatchers.is(200));
+        Assert.assertThat("The same products should be sent back", second.body(), CoreMatchers.is(first));
+        Assert.assertThat("The web page should only be fetched once", listingFetches.get(), CoreMatchers.is(1));
+
+        get(path + "&format=ndjson");
+        Assert.assertThat("Another format should be scraped on its own", listingFetches.get(), CoreMatchers.is(2));
+    }
+
+    /**
+     * Tests that the details of a product are shared between scrapes, so its detail page is only fetched by the first,
+     * and that the hits and misses of the details cache are served with the metrics.
+     */
+    @Test
+    public void testScrape_detailsShared_detailPageFetchedOnce() throws IOException, InterruptedException {
+        AtomicInteger detailPageFetches = new AtomicInteger();
+        PageFetcher inMemory = fetcher();
+        service = new ScrapeService(url -> {
+            if (!WEB_PAGE_URL.equals(url.toString())) {
+                detailPageFetches.incrementAndGet();
+            }
+            return inMemory.fetch(url);
+        }, 0, 1, 0, TimeUnit.MILLISECONDS, null, new ProductDetailsCache(10, 1, TimeUnit.MINUTES));
+        service.start();
+        String path = ScrapeService.SCRAPE_PATH + "?url=" + URLEncoder.encode(WEB_PAGE_URL, StandardCharsets.UTF_8);
+
+        get(path);
+        Assert.assertThat("The second scrape should succeed", get(path).statusCode(), CoreMatchers.is(200));
+
+        Assert.assertThat("The detail page should only be fetched once", detailPageFetches.get(), CoreMatchers.is(1));
+        String metrics = get(ScrapeService.METRICS_PATH).body();
+        Assert.assertThat("The hits of the details cache should be served", metrics,
+                CoreMatchers.containsString("scraper_details_cache_hits_total 1\n"));
+        Assert.assertThat("The misses of the details cache should be served", metrics,
+                CoreMatchers.containsString("scraper_details_cache_misses_total 1\n"));
+    }
+
+    /**
+     * Tests that the metrics of each stage are served in the Prometheus text format.
+     */
+    @Test
+    public void testMetrics_metricsServed() throws IOException, InterruptedException {
+        startService(fetcher(), 1, 0);
+
+        HttpResponse<String> response = get(ScrapeService.METRICS_PATH);
+
+        Assert.assertThat("The metrics should be served", response.statusCode(), CoreMatchers.is(200));
+        Assert.assertThat("The metrics of the stages should be given", response.body(),
+                CoreMatchers.containsString("scraper_stage_duration_seconds"));
+    }
+
+    private void startService(PageFetcher pageFetcher, int maxConcurrentScrapes, long admissionTimeoutMillis)
+            throws IOException {
+        service = new ScrapeService(pageFetcher, 0, maxConcurrentScrapes, admissionTimeoutMillis,
+                TimeUnit.MILLISECONDS);
+        service.start();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return client.send(request(path), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest request(String path) {
+        return HttpRequest.newBuilder(URI.create(service.getBaseUrl() + path)).timeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    private PageFetcher fetcher() {
+        return url -> {
+            if (!pages.containsKey(url.toString())) {
+                throw new IOException("HTTP error fetching URL. Status=404, URL=" + url);
+            }
+            return new FetchedPage(url,
+                    new ByteArrayInputStream(pages.get(url.toString()).getBytes(StandardCharsets.UTF_8)), "UTF-8");
+        };
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.sainsburys.test.transform;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
+
+/**
+ * Unit tests for the {@link BinaryProductsReader} class.
+ */
+public class BinaryProductsReaderTest {
+
+    private List<Product> products;
+
+    @Before
+    public void before() {
+        products = new ArrayList<>();
+        products.add(new Product("Product1", "Description1", "10.00"));
+        products.add(new FoodProduct("FoodProduct1", "Cherries & \"stones\" é", "5.00", "42"));
+        products.add(new Product("Product2", null, "0.75"));
+        products.add(new FoodProduct("FoodProduct2", "Description1", "1234567.89", "0"));
+    }
+
+    /**
+     * Tests that the products read back are the same as those written, giving the same JSON, followed by their
+     * totals.
+     */
+    @Test
+    public void testReadProduct_productsWritten_sameProductsRead() throws IOException {
+        List<Product> read = new ArrayList<>();
+        try (BinaryProductsReader reader = new BinaryProductsReader(new ByteArrayInputStream(write()))) {
+            Product product;
+            while (null != (product = reader.readProduct())) {
+                read.add(product);
+            }
+
+            Assert.assertThat("The total price is incorrect", reader.getTotalPricePence(), CoreMatchers.is(123458364L));
+            Assert.assertThat("The total VAT is incorrect", reader.getTotalVatPence(), CoreMatchers.is(24691673L));
+        }
+
+        Assert.assertThat("The products read are different to those written",
+                new TransformToJson().createJsonForProducts(read).toString(),
+                CoreMatchers.is(new TransformToJson().createJsonForProducts(products).toString()));
+    }
+
+    /**
+     * Tests that the products can be read straight into a batch.
+     */
+    @Test
+    public void testReadBatch_productsWritten_sameProductsRead() throws IOException {
+        ProductBatch batch = new BinaryProductsReader(new ByteArrayInputStream(write())).readBatch();
+
+        Assert.assertThat("The number of products read is incorrect", batch.size(), CoreMatchers.is(4));
+        Assert.assertThat("The description of the second product is incorrect", batch.getDescription(1),
+                CoreMatchers.is("Cherries & \"stones\" é"));
+        Assert.assertThat("The third product should have no description", batch.getDescription(2),
+                CoreMatchers.nullValue());
+        Assert.assertThat("The calories of the fourth product are incorrect", batch.getCalories(3),
+                CoreMatchers.is(0));
+        Assert.assertThat("The price of the fourth product is incorrect", batch.getPricePence(3),
+                CoreMatchers.is(123456789L));
+    }
+
+    /**
+     * Tests that an {@link IOException} is thrown for bytes that weren't written by a {@link BinaryProductsWriter}.
+     */
+    @Test(expected = IOException.class)
+    public void testReadProduct_notBinaryProducts_ioExceptionThrown() throws IOException {
+        new BinaryProductsReader(new ByteArrayInputStream("{\"result\":[]}".getBytes())).readProduct();
+    }
+
+    /**
+     * Tests that an {@link EOFException} is thrown if the products end before their totals.
+     */
+    @Test(expected = EOFException.class)
+    public void testReadBatch_truncated_eofExceptionThrown() throws IOException {
+        byte[] written = write();
+        new BinaryProductsReader(new ByteArrayInputStream(Arrays.copyOf(written, written.length - 4))).readBatch();
+    }
+
+    /**
+     * Tests that an {@link IOException} is thrown, rather than a runtime exception or a huge allocation, for a string
+     * whose length is negative once decoded, or longer than any string written.
+     */
+    @Test
+    public void testReadProduct_corruptStringLength_ioExceptionThrown() {
+        // Ten bytes with every bit set decodes to -1
+        assertCorrupt("A negative string length", BinaryProductsWriter.STRING_TAG, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF,
+                0xFF, 0xFF, 0xFF, 0x01);
+        // Decodes to just under 2 GB
+        assertCorrupt("A string length that is too long", BinaryProductsWriter.STRING_TAG, 0xFF, 0xFF, 0xFF, 0xFF,
+                0x07);
+        assertCorrupt("A string length past the end", BinaryProductsWriter.STRING_TAG, 0x10, 'a');
+    }
+
+    /**
+     * Tests that an {@link IOException} is thrown for a product referring to a string number that is negative once
+     * decoded, or hasn't been written.
+     */
+    @Test
+    public void testReadProduct_corruptStringNumber_ioExceptionThrown() {
+        assertCorrupt("A negative string number", BinaryProductsWriter.PRODUCT_TAG, BinaryProductsWriter.HAS_NAME, 0xFF,
+                0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01, 0x00);
+        assertCorrupt("A string number not written", BinaryProductsWriter.PRODUCT_TAG, BinaryProductsWriter.HAS_NAME,
+                0x05, 0x00);
+    }
+
+    /**
+     * Tests that an {@link IOException} is thrown for a product whose calories are too many to be held.
+     */
+    @Test
+    public void testReadProduct_corruptCalories_ioExceptionThrown() {
+        assertCorrupt("Negative calories", BinaryProductsWriter.PRODUCT_TAG, BinaryProductsWriter.HAS_CALORIES, 0x00,
+                0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01);
+    }
+
+    /**
+     * Tests that an {@link IllegalStateException} is thrown if the totals are asked for before every product has been
+     * read.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testGetTotalPricePence_productsLeftToRead_illegalStateExceptionThrown() throws IOException {
+        BinaryProductsReader reader = new BinaryProductsReader(new ByteArrayInputStream(write()));
+        reader.readProduct();
+        reader.getTotalPricePence();
+    }
+
+    /**
+     * Asserts that the records given, written after a valid header, can't be read and fail with an
+     * {@link IOException}.
+     */
+    private static void assertCorrupt(String reason, int... records) {
+        ByteArrayOutputStream corrupt = new ByteArrayOutputStream();
+        corrupt.writeBytes(BinaryProductsWriter.MAGIC);
+        corrupt.write(BinaryProductsWriter.VERSION);
+        for (int record : records) {
+            corrupt.write(record);
+        }
+
+        try {
+            new BinaryProductsReader(new ByteArrayInputStream(corrupt.toByteArray())).readProduct();
+            Assert.fail(reason + " should be rejected");
+        } catch (IOException e) {
+            // Expected, as the documented failure for products that can't be read
+        }
+    }
+
+    private byte[] write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryProductsWriter writer = new BinaryProductsWriter(out)) {
+            for (Product product : products) {
+                writer.writeProduct(product);
+            }
+        }
+        return out.toByteArray();
+    }
+
+}
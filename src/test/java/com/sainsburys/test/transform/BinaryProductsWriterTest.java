@@ -0,0 +1,94 @@
+package com.sainsburys.test.transform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+
+/**
+ * Unit tests for the {@link BinaryProductsWriter} class.
+ */
+public class BinaryProductsWriterTest {
+
+    private ByteArrayOutputStream out;
+
+    private BinaryProductsWriter writer;
+
+    @Before
+    public void before() {
+        out = new ByteArrayOutputStream();
+        writer = new BinaryProductsWriter(out);
+    }
+
+    /**
+     * Tests that a product is written as its strings, then the product referring to them, then the totals.
+     */
+    @Test
+    public void testWriteProduct_foodProduct_writtenInFormat() throws IOException {
+        writer.writeProduct(new FoodProduct("Kiwi", null, "1.50", "300"));
+        writer.finish();
+
+        byte[] expected = { 'S', 'B', 'P', 'R', 1,
+                // The name
+                1, 4, 'K', 'i', 'w', 'i',
+                // The product, flagged with a name and calories, 150p zigzag encoded as 300 and 300 kcal
+                2, 5, 0, (byte) 0xAC, 0x02, (byte) 0xAC, 0x02,
+                // The totals of 150p and 30p, zigzag encoded
+                3, (byte) 0xAC, 0x02, 60 };
+        Assert.assertThat("The bytes written are incorrect", out.toByteArray(), CoreMatchers.is(expected));
+    }
+
+    /**
+     * Tests that a name or description shared by several products is only written once.
+     */
+    @Test
+    public void testWriteProduct_sharedDescription_writtenOnce() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            writer.writeProduct(new Product("Product" + i, "A description shared by every product", "1.00"));
+        }
+        writer.finish();
+
+        String written = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+        Assert.assertThat("The description should only be written once",
+                written.indexOf("shared") == written.lastIndexOf("shared"), CoreMatchers.is(true));
+    }
+
+    /**
+     * Tests that the products are written in less space than the same products as JSON.
+     */
+    @Test
+    public void testWriteProduct_manyProducts_smallerThanJson() throws IOException {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            products.add(new FoodProduct("Product" + (i % 50), "Description" + (i % 10), (i % 20) + ".75", "" + i));
+        }
+        for (Product product : products) {
+            writer.writeProduct(product);
+        }
+        writer.finish();
+
+        int jsonLength = new TransformToJson().createJsonForProducts(products).toString()
+                .getBytes(StandardCharsets.UTF_8).length;
+        Assert.assertThat("The binary format should be a fraction of the size of the JSON",
+                out.size() * 5 < jsonLength, CoreMatchers.is(true));
+    }
+
+    /**
+     * Tests that an {@link IllegalStateException} is thrown if a product is written once the writer is finished.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testWriteProduct_alreadyFinished_illegalStateExceptionThrown() throws IOException {
+        writer.finish();
+        writer.writeProduct(new Product("Product1", "Description1", "10.00"));
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.sainsburys.test.transform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sainsburys.test.metrics.Stage;
+import com.sainsburys.test.metrics.StageMetrics;
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
+
+/**
+ * Unit tests for the {@link JsonProductsWriter} class.
+ */
+public class JsonProductsWriterTest {
+
+    private List<Product> products;
+
+    private StringWriter out;
+
+    private JsonProductsWriter writer;
+
+    @Before
+    public void before() {
+        products = new ArrayList<>();
+        products.add(new Product("Product1", "Description1", "10.00"));
+        products.add(new FoodProduct("FoodProduct1", "Cherries & \"stones\" <b>/</b> é", "5.00", "42"));
+        products.add(new Product("Product2", null, "0.75"));
+
+        out = new StringWriter();
+        writer = new JsonProductsWriter(out);
+    }
+
+    /**
+     * Tests that the JSON written one product at a time is exactly the same as the JSON created for all of the
+     * products at once.
+     */
+    @Test
+    public void testWriteProduct_productsWritten_sameJsonAsTransformToJson() throws IOException {
+        for (Product product : products) {
+            writer.writeProduct(product);
+        }
+        writer.finish();
+
+        Assert.assertThat("The JSON written is different to the JSON created",
+                out.toString(), CoreMatchers.is(new TransformToJson().createJsonForProducts(products).toString()));
+    }
+
+    /**
+     * Tests that the JSON written for a batch of products is exactly the same as the JSON created for the products as
+     * objects.
+     */
+    @Test
+    public void testWriteProducts_batchWritten_sameJsonAsTransformToJson() throws IOException {
+        ProductBatch batch = new ProductBatch();
+        for (Product product : products) {
+            batch.add(product);
+        }
+        writer.writeProducts(batch);
+        writer.finish();
+
+        Assert.assertThat("The JSON written is different to the JSON created",
+                out.toString(), CoreMatchers.is(new TransformToJson().createJsonForProducts(products).toString()));
+    }
+
+    /**
+     * Tests that when no products are written, an empty result array and zero totals are written.
+     */
+    @Test
+    public void testFinish_noProductsWritten_emptyResultWritten() throws IOException {
+        writer.finish();
+
+        Assert.assertThat("The JSON written is different to the JSON created",
+                out.toString(), CoreMatchers.is(new TransformToJson().createJsonForProducts(new ArrayList<>())
+                        .toString()));
+    }
+
+    /**
+     * Tests that the first product is written as soon as it is given, before the writer is finished.
+     */
+    @Test
+    public void testWriteProduct_firstProduct_writtenStraightAway() throws IOException {
+        writer.writeProduct(products.get(0));
+
+        Assert.assertThat("The first product should have been written", out.toString(),
+                CoreMatchers.startsWith("{\"result\":[{"));
+    }
+
+    /**
+     * Tests that an {@link IllegalStateException} is thrown if a product is written once the writer is finished.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testWriteProduct_alreadyFinished_illegalStateExceptionThrown() throws IOException {
+        writer.finish();
+        writer.writeProduct(products.get(0));
+    }
+
+    /**
+     * Tests that each call to a writer created for an output format is timed, and the bytes it writes counted, against
+     * the serialization stage.
+     */
+    @Test
+    public void testCreateWriter_productsWritten_serializationMeasured() throws IOException {
+        StageMetrics metrics = Stage.SERIALIZATION.getMetrics();
+        long calls = metrics.getCount();
+        long bytes = metrics.getBytes();
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        ProductsWriter measuredWriter = OutputFormat.JSON.createWriter(written, StandardCharsets.UTF_8);
+        measuredWriter.writeProduct(products.get(0));
+        measuredWriter.writeProduct(products.get(1));
+        measuredWriter.finish();
+
+        Assert.assertThat("Each call to the writer should be timed", metrics.getCount(), CoreMatchers.is(calls + 3));
+        Assert.assertThat("Every byte written should be counted", metrics.getBytes(),
+                CoreMatchers.is(bytes + written.size()));
+    }
+
+}
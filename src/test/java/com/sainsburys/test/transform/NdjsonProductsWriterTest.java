@@ -0,0 +1,106 @@
+package com.sainsburys.test.transform;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hamcrest.CoreMatchers;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
+
+/**
+ * Unit tests for the {@link NdjsonProductsWriter} class.
+ */
+public class NdjsonProductsWriterTest {
+
+    private List<Product> products;
+
+    private StringWriter out;
+
+    private NdjsonProductsWriter writer;
+
+    @Before
+    public void before() {
+        products = new ArrayList<>();
+        products.add(new Product("Product1", "Description1", "10.00"));
+        products.add(new FoodProduct("FoodProduct1", "Cherries & \"stones\"\non two lines", "5.00", "42"));
+        products.add(new Product("Product2", null, "0.75"));
+
+        out = new StringWriter();
+        writer = new NdjsonProductsWriter(out);
+    }
+
+    /**
+     * Tests that each product is written on its own line as the same JSON created for it by {@link TransformToJson},
+     * followed by a line holding the totals.
+     */
+    @Test
+    public void testWriteProduct_productsWritten_oneLinePerProductThenTotals() throws IOException {
+        for (Product product : products) {
+            writer.writeProduct(product);
+        }
+        writer.finish();
+
+        assertLines(out.toString());
+    }
+
+    /**
+     * Tests that the lines written for a batch of products are the same as those written for the products as objects.
+     */
+    @Test
+    public void testWriteProducts_batchWritten_oneLinePerProductThenTotals() throws IOException {
+        ProductBatch batch = new ProductBatch();
+        for (Product product : products) {
+            batch.add(product);
+        }
+        writer.writeProducts(batch);
+        writer.finish();
+
+        assertLines(out.toString());
+    }
+
+    /**
+     * Tests that when no products are written, only the line holding zero totals is written.
+     */
+    @Test
+    public void testFinish_noProductsWritten_totalsLineWritten() throws IOException {
+        writer.finish();
+
+        Assert.assertThat("Only the totals should have been written", out.toString(),
+                CoreMatchers.is("{\"total\":{\"gross\":\"0.00\",\"vat\":\"0.00\"}}\n"));
+    }
+
+    /**
+     * Tests that an {@link IllegalStateException} is thrown if a product is written once the writer is finished.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testWriteProduct_alreadyFinished_illegalStateExceptionThrown() throws IOException {
+        writer.finish();
+        writer.writeProduct(products.get(0));
+    }
+
+    private void assertLines(String written) {
+        TransformToJson transformer = new TransformToJson();
+        JSONObject document = transformer.createJsonForProducts(products);
+
+        Assert.assertThat("Every line should be ended with a line feed", written.endsWith("\n"),
+                CoreMatchers.is(true));
+        String[] lines = written.split("\n");
+        Assert.assertThat("There should be a line for each product and one for the totals", lines.length,
+                CoreMatchers.is(products.size() + 1));
+        for (int i = 0; i < products.size(); i++) {
+            Assert.assertThat("The line written for product " + i + " is incorrect", lines[i],
+                    CoreMatchers.is(transformer.createProductJson(products.get(i)).toString()));
+        }
+        Assert.assertThat("The totals line is incorrect", lines[products.size()],
+                CoreMatchers.is("{\"total\":" + document.optJSONObject("total").toString() + "}"));
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.sainsburys.test.transform;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sainsburys.test.products.FoodProduct;
+import com.sainsburys.test.products.Product;
+
+/**
+ * Unit tests for the {@link ProductJsonEncoder} class, checking that its JSON is exactly the same as that created by
+ * the {@link TransformToJson} class.
+ */
+public class ProductJsonEncoderTest {
+
+    private ProductJsonEncoder encoder;
+
+    @Before
+    public void before() {
+        encoder = new ProductJsonEncoder();
+    }
+
+    /**
+     * Tests that products are encoded with the same keys, in the same order, as the {@link TransformToJson} class,
+     * leaving out those without a value.
+     */
+    @Test
+    public void testEncodeProduct_productsWithAndWithoutValues_sameJsonAsTransformToJson() {
+        assertSameJson(new Product("Product1", "Description1", "10.00"));
+        assertSameJson(new Product("Product1", null, "10.00"));
+        assertSameJson(new Product(null, null, null));
+        assertSameJson(new FoodProduct("FoodProduct1", "FoodDesc1", "5.00", "42"));
+        assertSameJson(new FoodProduct("FoodProduct1", null, "5.00", null));
+        assertSameJson(new FoodProduct("", "", "0.5", ""));
+    }
+
+    /**
+     * Tests that every character is escaped in the same way as the {@link TransformToJson} class, including a '/'
+     * on its own and after a '<'.
+     */
+    @Test
+    public void testEncodeProduct_everyCharacter_escapedSameAsTransformToJson() {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            char character = (char) c;
+            assertSameJson(new Product("a" + character + "b", "<" + character + "</" + character, "1.00"));
+        }
+    }
+
+    /**
+     * Tests that amounts of money in pence are formatted as pounds in the same way as {@code String.format}.
+     */
+    @Test
+    public void testEncodeTotal_amountsInPence_formattedSameAsStringFormat() {
+        long[] amounts = { 0, 1, 9, 10, 99, 100, 101, 1999, 100000000000L, -1, -99, -100, -12345 };
+        for (long amount : amounts) {
+            assertSameMoney(amount);
+        }
+        for (long pence = 0; pence < 200000; pence++) {
+            assertSameMoney(pence);
+        }
+    }
+
+    /**
+     * Tests that the buffer is emptied once the JSON has been taken, so it can be used again.
+     */
+    @Test
+    public void testTakeJson_jsonTaken_bufferReused() {
+        encoder.append("[").encodeTotal(100, 200).append(']');
+        Assert.assertThat("The JSON taken is incorrect", encoder.takeJson(),
+                CoreMatchers.is("[{\"gross\":\"1.00\",\"vat\":\"2.00\"}]"));
+        Assert.assertThat("The buffer should be empty once taken", encoder.takeJson(), CoreMatchers.is(""));
+    }
+
+    private void assertSameJson(Product product) {
+        Assert.assertThat("The JSON encoded is different to the JSON created",
+                encoder.encodeProduct(product).takeJson(),
+                CoreMatchers.is(new TransformToJson().createProductJson(product).toString()));
+    }
+
+    private void assertSameMoney(long pence) {
+        Assert.assertThat("The amount " + pence + " was formatted differently",
+                encoder.encodeTotal(pence, -pence).takeJson(),
+                CoreMatchers.is("{\"gross\":\"" + String.format("%.2f", pence / 100.0) + "\",\"vat\":\""
+                        + String.format("%.2f", -pence / 100.0) + "\"}"));
+    }
+
+}
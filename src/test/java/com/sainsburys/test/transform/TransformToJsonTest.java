@@ -1,8 +1,15 @@
 package com.sainsburys.test.transform;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 import org.hamcrest.CoreMatchers;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -12,10 +19,12 @@ import org.junit.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
 
+import com.sainsburys.test.metrics.ProductSerializedEvent;
+import com.sainsburys.test.metrics.Stage;
 import com.sainsburys.test.products.FoodProduct;
 import com.sainsburys.test.products.Product;
+import com.sainsburys.test.products.ProductBatch;
 
-import mockit.Deencapsulation;
 import mockit.Expectations;
 import mockit.Mocked;
 
@@ -56,6 +65,69 @@ public class TransformToJsonTest {
                 result, JSONCompareMode.LENIENT);
     }
 
+    /**
+     * Verifies that the totals of one call aren't carried over to the next, so the same instance can be reused.
+     */
+    @Test
+    public void testCreateJsonForProducts_calledTwice_sameJsonCreated() {
+        String first = transformer.createJsonForProducts(products).toString();
+        String second = transformer.createJsonForProducts(products).toString();
+
+        Assert.assertThat("The JSON created the second time is incorrect", second, CoreMatchers.is(first));
+    }
+
+    /**
+     * Verifies that creating the JSON for the products, on a single thread or split across threads, is timed once per
+     * call against the serialization stage.
+     */
+    @Test
+    public void testCreateJsonForProducts_bothModes_serializationMeasuredOncePerCall() {
+        long calls = Stage.SERIALIZATION.getMetrics().getCount();
+
+        transformer.createJsonForProducts(products);
+        transformer.createJsonForProductsInParallel(products);
+
+        Assert.assertThat("Each call should be timed once", Stage.SERIALIZATION.getMetrics().getCount(),
+                CoreMatchers.is(calls + 2));
+    }
+
+    /**
+     * Verifies that the JSON created with the products split across threads is the same as that created on a single
+     * thread, with the products in the same order.
+     */
+    @Test
+    public void testCreateJsonForProductsInParallel_manyProducts_sameJsonAsSingleThread() {
+        List<Product> manyProducts = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            if (0 == i % 3) {
+                manyProducts.add(new FoodProduct("FoodProduct" + i, "FoodDesc" + i, (i % 500) + ".99", "" + i));
+            } else {
+                manyProducts.add(new Product("Product" + i, "Description" + i, (i % 700) + ".05"));
+            }
+        }
+
+        JSONObject result = transformer.createJsonForProductsInParallel(manyProducts);
+
+        Assert.assertThat("The JSON created in parallel is incorrect", result.toString(),
+                CoreMatchers.is(transformer.createJsonForProducts(manyProducts).toString()));
+    }
+
+    /**
+     * Verifies that the same JSON is created for a batch of products as for the products as objects.
+     */
+    @Test
+    public void testCreateJsonForProducts_batch_sameJsonAsProducts() {
+        ProductBatch batch = new ProductBatch();
+        for (Product productInBatch : products) {
+            batch.add(productInBatch);
+        }
+
+        JSONObject result = transformer.createJsonForProducts(batch);
+
+        Assert.assertThat("The JSON created for the batch is incorrect", result.toString(),
+                CoreMatchers.is(new TransformToJson().createJsonForProducts(products).toString()));
+    }
+
     /**
      * Verifies that correct JSON with the fields expected is created for the given input.
      */
@@ -76,10 +148,7 @@ public class TransformToJsonTest {
 
         new Expectations(transformer) {
             {
-                new JSONObject();
-                result = resultObj;
-
-                transformer.createTotalJson();
+                transformer.createTotalJson(anyLong, anyLong);
                 result = resultObj;
 
                 resultObj.put("result", any);
@@ -93,8 +162,7 @@ public class TransformToJsonTest {
     }
 
     /**
-     * Tests the correct JSON is returned for a given {@link Product} and the correct totals are set in the rolling
-     * totals.
+     * Tests the correct JSON is returned for a given {@link Product}.
      */
     @Test
     public void testCreateProductJson_product_jsonWithProductInfo() throws JSONException {
@@ -104,11 +172,6 @@ public class TransformToJsonTest {
         JSONAssert.assertEquals("The JSONObject returned was not what was expected.",
                 "{title:\"Product1\", unit_price:\"10.00\", description:\"Description1\"}",
                 result, JSONCompareMode.LENIENT);
-
-        Assert.assertThat("The totalPrice is incorrect", Deencapsulation.getField(transformer, "totalPrice"),
-                CoreMatchers.is(10.00));
-        Assert.assertThat("The totalPrice is incorrect", Deencapsulation.getField(transformer, "totalVat"),
-                CoreMatchers.is(2.00));
     }
 
     /**
@@ -120,9 +183,6 @@ public class TransformToJsonTest {
 
         new Expectations() {
             {
-                new JSONObject();
-                result = jsonObj;
-
                 jsonObj.put(anyString, any);
                 result = new JSONException("JSON Excpetion");
             }
@@ -134,8 +194,7 @@ public class TransformToJsonTest {
     }
 
     /**
-     * Tests the correct JSON is returned for a given {@link FoodProduct} and the correct totals are set in the rolling
-     * totals.
+     * Tests the correct JSON is returned for a given {@link FoodProduct}.
      */
     @Test
     public void testCreateProductJson_foodProduct_jsonWithProductInfo() throws JSONException {
@@ -145,11 +204,6 @@ public class TransformToJsonTest {
         JSONAssert.assertEquals("The JSONObject returned was not what was expected.",
                 "{title:\"FoodProduct1\", kcal_per_100g:\"42\", unit_price:\"5.00\", description:\"FoodDesc1\"}",
                 result, JSONCompareMode.LENIENT);
-
-        Assert.assertThat("The totalPrice is incorrect", Deencapsulation.getField(transformer, "totalPrice"),
-                CoreMatchers.is(5.00));
-        Assert.assertThat("The totalPrice is incorrect", Deencapsulation.getField(transformer, "totalVat"),
-                CoreMatchers.is(1.00));
     }
 
     /**
@@ -161,9 +215,6 @@ public class TransformToJsonTest {
 
         new Expectations() {
             {
-                new JSONObject();
-                result = jsonObj;
-
                 jsonObj.put(anyString, any);
                 result = new JSONException("JSON Excpetion");
             }
@@ -184,30 +235,52 @@ public class TransformToJsonTest {
 
         new Expectations() {
             {
-                new JSONObject();
-                result = jsonObj;
-
                 jsonObj.put(anyString, any);
                 result = new JSONException("JSON Excpetion");
             }
         };
 
-        JSONObject result = transformer.createTotalJson();
+        JSONObject result = transformer.createTotalJson(1500, 300);
 
         JSONAssert.assertEquals("The JSONObject returned was not what was expected", "{}", result,
                 JSONCompareMode.LENIENT);
 
     }
 
+    /**
+     * Tests that each product turned into JSON is recorded as a Flight Recorder event when they are being recorded.
+     */
+    @Test
+    public void testCreateJsonForProducts_recording_productEventsRecorded() throws IOException {
+        List<RecordedEvent> events;
+        Path file = Files.createTempFile("transform", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ProductSerializedEvent.class).withoutThreshold();
+            recording.start();
+            transformer.createJsonForProducts(products);
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        List<String> recorded = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if ("JSONObject".equals(event.getString("format"))) {
+                recorded.add(event.getString("product") + ":" + event.getBoolean("foodProduct"));
+            }
+        }
+        Assert.assertThat("Both products should be recorded", recorded,
+                CoreMatchers.hasItems("Product1:false", "FoodProduct1:true"));
+    }
+
     /**
      * Tests that the correct expected {@link JSONObject} is created for the total pricing with the values given.
      */
     @Test
     public void testCreateTotalJson() throws JSONException {
-        Deencapsulation.setField(transformer, "totalPrice", 15.00);
-        Deencapsulation.setField(transformer, "totalVat", 3.00);
-
-        JSONObject result = transformer.createTotalJson();
+        JSONObject result = transformer.createTotalJson(1500, 300);
 
         JSONAssert.assertEquals("The JSONObject returned was not what was expected", "{gross:\"15.00\", vat:\"3.00\"}",
                 result, JSONCompareMode.LENIENT);